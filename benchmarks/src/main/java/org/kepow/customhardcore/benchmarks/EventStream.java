@@ -0,0 +1,20 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.io.IOException;
+
+/**
+ * Interface of a stream of events replayed by the simulator, in the order
+ * of their ticks.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public interface EventStream
+{
+    /**
+     * Gets the next event.
+     * @return The next event, or null if the stream has ended.
+     * @throws IOException
+     */
+    SimulatedEvent next() throws IOException;
+}
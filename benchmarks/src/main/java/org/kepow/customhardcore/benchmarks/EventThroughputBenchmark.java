@@ -0,0 +1,152 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.inventory.ItemStack;
+import org.kepow.customhardcore.CustomHardcore;
+import org.kepow.customhardcore.PluginState;
+import org.kepow.customhardcore.StubServer;
+import org.kepow.customhardcore.WorldConfig;
+import org.kepow.customhardcore.WorldManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the event handlers of online players: a death followed by a
+ * respawn, and a change to another world of the same world group, called
+ * the way the server calls them. Players die in turn and have more lives
+ * than the benchmark takes, such that every death costs a life and
+ * broadcasts it, and players stay in their world group.
+ *
+ * Before sessions, every handler resolved the world manager of a player
+ * from the world the player is in, and enforcing banishment resolved it
+ * again. worldLookup() measures that chain, sessionLookup() the session
+ * lookup the handlers use now.
+ *
+ * @author Thomas Churchman
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventThroughputBenchmark
+{
+    @Param({ "1", "100", "10000" })
+    public int groups;
+
+    @Param({ "100", "10000" })
+    public int players;
+
+    private static final int WORLDS_PER_GROUP = 3;
+
+    private CustomHardcore plugin;
+    private Player[] online;
+    private World[][] worlds;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        YamlConfiguration config = Fixtures.config("binary", groups, WORLDS_PER_GROUP);
+        for(int group = 0; group < groups; group++)
+        {
+            config.set("worldConfig.groups." + Fixtures.groupName(group) + ".config.lives", Integer.MAX_VALUE);
+        }
+        plugin = Fixtures.startPlugin(config);
+
+        StubServer server = StubServer.get();
+        server.world("world");
+        worlds = new World[groups][WORLDS_PER_GROUP];
+        for(int group = 0; group < groups; group++)
+        {
+            for(int world = 0; world < WORLDS_PER_GROUP; world++)
+            {
+                worlds[group][world] = server.world(Fixtures.worldName(group, world));
+            }
+        }
+
+        online = new Player[players];
+        for(int i = 0; i < players; i++)
+        {
+            online[i] = server.join("Player" + i, Fixtures.uuid(i), worlds[i % groups][0]);
+            plugin.onPlayerJoinEvent(new PlayerJoinEvent(online[i], null));
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        for(Player player : online)
+        {
+            StubServer.get().quit(player);
+        }
+        Fixtures.stopPlugin(plugin);
+    }
+
+    private Player nextPlayer()
+    {
+        next = next + 1 < players ? next + 1 : 0;
+        return online[next];
+    }
+
+    @Benchmark
+    public PlayerRespawnEvent deathAndRespawn()
+    {
+        Player player = nextPlayer();
+        plugin.onPlayerDeath(new PlayerDeathEvent(player, new ArrayList<ItemStack>(), 0, "Player died"));
+
+        PlayerRespawnEvent event = new PlayerRespawnEvent(player, player.getLocation(), false);
+        plugin.onPlayerRespawnEvent(event);
+        return event;
+    }
+
+    @Benchmark
+    public Player changeWorld()
+    {
+        Player player = nextPlayer();
+        World from = player.getWorld();
+        World[] group = worlds[next % groups];
+        player.teleport(new Location(from == group[0] ? group[1] : group[0], 0, 65, 0));
+        plugin.onPlayerChangedWorldEvent(new PlayerChangedWorldEvent(player, from));
+        return player;
+    }
+
+    @Benchmark
+    public WorldManager worldLookup()
+    {
+        Player player = nextPlayer();
+        WorldConfig worldConfig = PluginState.getWorldConfig();
+        Map<String, WorldManager> managers = plugin.getWorldManagers();
+        return managers.get(worldConfig.getGroupFromWorld(player.getWorld()));
+    }
+
+    @Benchmark
+    public WorldManager sessionLookup()
+    {
+        return plugin.getSession(nextPlayer()).getWorldManager();
+    }
+}
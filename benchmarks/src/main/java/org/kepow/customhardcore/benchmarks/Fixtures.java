@@ -0,0 +1,189 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.kepow.customhardcore.CustomHardcore;
+import org.kepow.customhardcore.Messages;
+import org.kepow.customhardcore.StubServer;
+import org.kepow.customhardcore.TimeFormatter;
+
+/**
+ * Class that sets up the plugin and its data for the benchmarks and the
+ * event simulator. World group i is named "group{i}" and consists of the
+ * worlds "group{i}_world{j}"; all other worlds belong to the default group,
+ * which does not have hardcore mode enabled. Player i has a UUID derived
+ * from i, such that runs are reproducible.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public final class Fixtures
+{
+    private Fixtures()
+    {
+    }
+
+    /**
+     * Gets the name of a world group.
+     * @param group The index of the world group.
+     * @return The name of the world group.
+     */
+    public static String groupName(int group)
+    {
+        return "group" + group;
+    }
+
+    /**
+     * Gets the name of a world of a world group.
+     * @param group The index of the world group.
+     * @param world The index of the world in the group.
+     * @return The name of the world.
+     */
+    public static String worldName(int group, int world)
+    {
+        return "group" + group + "_world" + world;
+    }
+
+    /**
+     * Gets the UUID of a player.
+     * @param player The index of the player.
+     * @return The UUID of the player.
+     */
+    public static UUID uuid(long player)
+    {
+        // Spread the bits like random UUIDs, which the player store hashes
+        long z = player * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new UUID(z ^ (z >>> 31), player);
+    }
+
+    /**
+     * Builds a plugin configuration.
+     * @param storage The storage type.
+     * @param groups The number of hardcore world groups.
+     * @param worldsPerGroup The number of worlds in each world group.
+     * @return The configuration.
+     */
+    public static YamlConfiguration config(String storage, int groups, int worldsPerGroup)
+    {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("storage", storage);
+        config.set("timings", false);
+        config.set("metricsFile", false);
+        config.set("notifyExpiry", true);
+        config.set("worldConfig.groups.default.alias", "Default");
+        config.set("worldConfig.groups.default.config.enabled", false);
+        for(int group = 0; group < groups; group++)
+        {
+            List<String> worlds = new ArrayList<String>();
+            for(int world = 0; world < worldsPerGroup; world++)
+            {
+                worlds.add(worldName(group, world));
+            }
+
+            String path = "worldConfig.groups." + groupName(group);
+            config.set(path + ".alias", "Group " + group);
+            config.set(path + ".worlds", worlds);
+            config.set(path + ".config.enabled", true);
+            config.set(path + ".config.lives", 3);
+            config.set(path + ".config.banishTime", 1.0);
+            config.set(path + ".config.lifeRegenerationTime", 1.0);
+        }
+        return config;
+    }
+
+    /**
+     * Creates an empty data folder in a new temporary directory.
+     * @return The data folder.
+     * @throws IOException
+     */
+    public static File createDataFolder() throws IOException
+    {
+        File folder = new File(Files.createTempDirectory("customhardcore").toFile(), "CustomHardcore");
+        if(!folder.mkdir())
+        {
+            throw new IOException("Could not create " + folder);
+        }
+        return folder;
+    }
+
+    /**
+     * Starts the plugin with a new data folder on the stub server, which
+     * is cleared first.
+     * @param config The plugin configuration.
+     * @return The plugin.
+     * @throws IOException
+     */
+    public static CustomHardcore startPlugin(YamlConfiguration config) throws IOException
+    {
+        return startPlugin(createDataFolder(), config);
+    }
+
+    /**
+     * Starts the plugin on the stub server, which is cleared first.
+     * @param dataFolder The data folder of the plugin.
+     * @param config The plugin configuration, written to config.yml.
+     * @return The plugin.
+     * @throws IOException
+     */
+    public static CustomHardcore startPlugin(File dataFolder, YamlConfiguration config) throws IOException
+    {
+        config.save(new File(dataFolder, "config.yml"));
+
+        // A server loads the plugin classes anew; drop what a previous run cached
+        Messages.invalidate();
+        TimeFormatter.invalidate();
+
+        StubServer server = StubServer.get();
+        server.reset();
+        return server.startPlugin(dataFolder);
+    }
+
+    /**
+     * Stops the plugin, saving its data, and deletes its data folder.
+     * @param plugin The plugin.
+     */
+    public static void stopPlugin(CustomHardcore plugin)
+    {
+        plugin.onDisable();
+        delete(plugin.getDataFolder().getParentFile());
+    }
+
+    /**
+     * Deletes a file or directory.
+     * @param file The file or directory.
+     */
+    public static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if(children != null)
+        {
+            for(File child : children)
+            {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Gets the heap in use after garbage collection.
+     * @return The heap in use in bytes.
+     */
+    public static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
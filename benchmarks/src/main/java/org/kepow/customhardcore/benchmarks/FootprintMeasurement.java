@@ -0,0 +1,108 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.kepow.customhardcore.PlayerStore;
+import org.kepow.customhardcore.StubServer;
+
+/**
+ * Measures the heap a world group takes to hold the state of its players
+ * in memory, in the player store and in the three maps keyed by
+ * OfflinePlayer it replaced. Every player has deaths, a banishment and a
+ * regeneration start time, which the maps hold as separate entries.
+ *
+ * The heap in use is measured after garbage collection, before and after
+ * filling each layout; the maps retain the UUIDs of their players, the
+ * store does not. The OfflinePlayer objects of the stub server are smaller
+ * than those of a real server, so the figures of the maps are a lower
+ * bound.
+ *
+ * Run with the number of players as argument (1,000,000 by default) and
+ * a heap large enough to hold both layouts, for example:
+ * java -Xmx4g -cp target/benchmarks.jar org.kepow.customhardcore.benchmarks.FootprintMeasurement 1000000
+ *
+ * @author Thomas Churchman
+ *
+ */
+public final class FootprintMeasurement
+{
+    private FootprintMeasurement()
+    {
+    }
+
+    public static void main(String[] args)
+    {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        StubServer.get();
+
+        long before = Fixtures.usedHeap();
+        List<Map<OfflinePlayer, ?>> maps = fillMaps(players);
+        long mapsBytes = Fixtures.usedHeap() - before;
+        checkSize(maps.get(0).size(), players);
+        maps = null;
+
+        before = Fixtures.usedHeap();
+        PlayerStore store = fillStore(players);
+        long storeBytes = Fixtures.usedHeap() - before;
+        checkSize(store.size(), players);
+
+        System.out.println(String.format("%-12s %12s %12s %18s", "Layout", "Players", "Bytes", "Bytes per player"));
+        report("maps", players, mapsBytes);
+        report("store", players, storeBytes);
+        System.out.println(String.format("The store takes %.1f times less heap.", (double) mapsBytes / storeBytes));
+    }
+
+    private static List<Map<OfflinePlayer, ?>> fillMaps(int players)
+    {
+        Map<OfflinePlayer, Integer> deaths = new HashMap<OfflinePlayer, Integer>();
+        Map<OfflinePlayer, Long> banishedUntil = new HashMap<OfflinePlayer, Long>();
+        Map<OfflinePlayer, Long> regenerationStartTime = new HashMap<OfflinePlayer, Long>();
+        for(int i = 0; i < players; i++)
+        {
+            OfflinePlayer player = Bukkit.getOfflinePlayer(Fixtures.uuid(i));
+            deaths.put(player, i % 3);
+            banishedUntil.put(player, 2000000000L + i);
+            regenerationStartTime.put(player, 1400000000L + i);
+        }
+        List<Map<OfflinePlayer, ?>> maps = new ArrayList<Map<OfflinePlayer, ?>>();
+        maps.add(deaths);
+        maps.add(banishedUntil);
+        maps.add(regenerationStartTime);
+        return maps;
+    }
+
+    private static PlayerStore fillStore(int players)
+    {
+        PlayerStore store = new PlayerStore();
+        for(int i = 0; i < players; i++)
+        {
+            int slot = store.insert(Fixtures.uuid(i));
+            store.setDeaths(slot, i % 3);
+            store.setBanishedUntil(slot, 2000000000L + i);
+            store.setRegenerationStartTime(slot, 1400000000L + i);
+        }
+        return store;
+    }
+
+    /**
+     * Checks the number of players a layout holds, which also keeps the
+     * layout reachable until it has been measured.
+     */
+    private static void checkSize(int size, int players)
+    {
+        if(size != players)
+        {
+            throw new IllegalStateException("The layout holds " + size + " of " + players + " players");
+        }
+    }
+
+    private static void report(String layout, int players, long bytes)
+    {
+        System.out.println(String.format("%-12s %12d %12d %18.1f", layout, players, bytes, (double) bytes / players));
+    }
+}
@@ -0,0 +1,117 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.kepow.customhardcore.CustomHardcore;
+import org.kepow.customhardcore.FormattedTime;
+import org.kepow.customhardcore.TimeFormatter;
+import org.kepow.customhardcore.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks preparing the messages sent on every death: the broadcast of
+ * a death, and of a banishment with its end time. The ...ByReplacing()
+ * benchmarks prepare the same messages with the string-replacing renderer
+ * the message templates replaced.
+ *
+ * @author Thomas Churchman
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessagesBenchmark
+{
+    private CustomHardcore plugin;
+    private FormattedTime time;
+    private int lives;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        plugin = Fixtures.startPlugin(Fixtures.config("yaml", 1, 1));
+        time = TimeFormatter.format(1400000000L);
+
+        // Both renderers must prepare the same messages, for the same lives
+        String died = died();
+        lives = 0;
+        if(!died.equals(diedByReplacing()) || !banished().equals(banishedByReplacing()))
+        {
+            throw new IllegalStateException("The renderers prepare different messages");
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.stopPlugin(plugin);
+    }
+
+    @Benchmark
+    public String died()
+    {
+        lives = (lives + 1) % 3;
+        return Utils.prepareMessage("broadcasts.died",
+            "%worldGroup", "group0",
+            "%worldGroupAlias", "Group 0",
+            "%player", "Player",
+            "%lives", lives);
+    }
+
+    @Benchmark
+    public String diedByReplacing()
+    {
+        lives = (lives + 1) % 3;
+        return StringReplaceRenderer.prepareMessage("broadcasts.died",
+            "%worldGroup", "group0",
+            "%worldGroupAlias", "Group 0",
+            "%player", "Player",
+            "%lives", lives);
+    }
+
+    @Benchmark
+    public String banished()
+    {
+        return Utils.prepareMessage("broadcasts.banished",
+            "%worldGroup", "group0",
+            "%worldGroupAlias", "Group 0",
+            "%player", "Player",
+            "%days", 1.0,
+            "%year", time.getYear(),
+            "%month", time.getMonth(),
+            "%day", time.getDay(),
+            "%hours", time.getHours(),
+            "%minutes", time.getMinutes(),
+            "%seconds", time.getSeconds());
+    }
+
+    @Benchmark
+    public String banishedByReplacing()
+    {
+        return StringReplaceRenderer.prepareMessage("broadcasts.banished",
+            "%worldGroup", "group0",
+            "%worldGroupAlias", "Group 0",
+            "%player", "Player",
+            "%days", 1.0,
+            "%year", time.getYear(),
+            "%month", time.getMonth(),
+            "%day", time.getDay(),
+            "%hours", time.getHours(),
+            "%minutes", time.getMinutes(),
+            "%seconds", time.getSeconds());
+    }
+}
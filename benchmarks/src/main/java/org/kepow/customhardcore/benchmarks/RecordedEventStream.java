@@ -0,0 +1,68 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Class that reads a recorded stream of events from a file, with an event
+ * on every line as described in {@link SimulatedEvent}. Empty lines and
+ * lines starting with "#" are skipped.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class RecordedEventStream implements EventStream
+{
+    private final File file;
+    private final BufferedReader reader;
+    private int lineNumber;
+    private long lastTick;
+
+    /**
+     * Constructor.
+     * @param file The file to read the events from.
+     * @throws IOException
+     */
+    public RecordedEventStream(File file) throws IOException
+    {
+        this.file = file;
+        this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    }
+
+    public SimulatedEvent next() throws IOException
+    {
+        String line;
+        while((line = reader.readLine()) != null)
+        {
+            lineNumber++;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#"))
+            {
+                continue;
+            }
+
+            SimulatedEvent event;
+            try
+            {
+                event = SimulatedEvent.parse(line);
+            }
+            catch(IllegalArgumentException e)
+            {
+                throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+            }
+
+            if(event.getTick() < lastTick)
+            {
+                throw new IOException(file + ":" + lineNumber + ": Events must be in the order of their ticks");
+            }
+            lastTick = event.getTick();
+            return event;
+        }
+
+        reader.close();
+        return null;
+    }
+}
@@ -0,0 +1,133 @@
+package org.kepow.customhardcore.benchmarks;
+
+/**
+ * Class that represents an event of a player replayed by the simulator.
+ * In a recorded event stream, every event is a line of the form
+ * "{tick} {type} {player} [{world}]", for example "20 join Alice world"
+ * or "35 death Alice". Joins and world changes name the world the player
+ * joins or moves to; the other events do not name a world.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public final class SimulatedEvent
+{
+    /**
+     * The types of events.
+     */
+    public enum Type
+    {
+        JOIN, CHANGEWORLD, DEATH, RESPAWN, QUIT;
+
+        /**
+         * Gets whether events of this type name a world.
+         * @return True if events of this type name a world, false otherwise.
+         */
+        public boolean hasWorld()
+        {
+            return this == JOIN || this == CHANGEWORLD;
+        }
+    }
+
+    private final long tick;
+    private final Type type;
+    private final String player;
+    private final String world;
+
+    /**
+     * Constructor.
+     * @param tick The tick the event happens in.
+     * @param type The type of the event.
+     * @param player The name of the player.
+     * @param world The name of the world the player joins or moves to, or
+     * null if the type of the event does not name a world.
+     */
+    public SimulatedEvent(long tick, Type type, String player, String world)
+    {
+        this.tick = tick;
+        this.type = type;
+        this.player = player;
+        this.world = world;
+    }
+
+    /**
+     * Parses an event from a line of a recorded event stream.
+     * @param line The line.
+     * @return The event.
+     * @throws IllegalArgumentException If the line is not an event.
+     */
+    public static SimulatedEvent parse(String line)
+    {
+        String[] fields = line.trim().split("\\s+");
+        if(fields.length < 3)
+        {
+            throw new IllegalArgumentException("Expected a tick, type and player: " + line);
+        }
+
+        long tick;
+        Type type;
+        try
+        {
+            tick = Long.parseLong(fields[0]);
+            type = Type.valueOf(fields[1].toUpperCase());
+        }
+        catch(IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Expected a tick, type and player: " + line);
+        }
+
+        if(fields.length != (type.hasWorld() ? 4 : 3))
+        {
+            throw new IllegalArgumentException(type.hasWorld() ? "Expected a world: " + line : "Expected no world: " + line);
+        }
+        return new SimulatedEvent(tick, type, fields[2], type.hasWorld() ? fields[3] : null);
+    }
+
+    /**
+     * Gets the tick the event happens in.
+     * @return The tick.
+     */
+    public long getTick()
+    {
+        return tick;
+    }
+
+    /**
+     * Gets the type of the event.
+     * @return The type.
+     */
+    public Type getType()
+    {
+        return type;
+    }
+
+    /**
+     * Gets the name of the player.
+     * @return The name of the player.
+     */
+    public String getPlayer()
+    {
+        return player;
+    }
+
+    /**
+     * Gets the name of the world the player joins or moves to.
+     * @return The name of the world, or null if the type of the event
+     * does not name a world.
+     */
+    public String getWorld()
+    {
+        return world;
+    }
+
+    /**
+     * Gets the event as a line of a recorded event stream.
+     * @return The line.
+     */
+    @Override
+    public String toString()
+    {
+        String line = tick + " " + type.name().toLowerCase() + " " + player;
+        return world == null ? line : line + " " + world;
+    }
+}
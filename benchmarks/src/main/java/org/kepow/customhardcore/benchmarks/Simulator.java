@@ -0,0 +1,422 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.inventory.ItemStack;
+import org.kepow.customhardcore.CustomHardcore;
+import org.kepow.customhardcore.LatencyHistogram;
+import org.kepow.customhardcore.SaveStatistics;
+import org.kepow.customhardcore.StubServer;
+import org.kepow.customhardcore.Timings;
+
+/**
+ * Class that stress-tests the plugin from the command line. It starts the
+ * plugin on the stub server, and replays a synthetic or recorded stream
+ * of joins, world changes, deaths, respawns and quits through the event
+ * handlers, tick by tick, as fast as the plugin handles them. The server
+ * ticks between the events of consecutive ticks, which runs the tasks of
+ * the plugin, such as saving.
+ *
+ * The events are called the way the server calls them: logins are checked
+ * before players join, players are dead from dying until respawning, and
+ * every change of a player's world, including those by the plugin, is
+ * followed by a world change event.
+ *
+ * At the end, it reports the throughput, the time the main thread spent
+ * in every tick, the timings of the event handlers and saves, and the
+ * growth of the heap. The time spent checking logins is not part of the
+ * tick time, as the server checks logins off the main thread.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public final class Simulator
+{
+    private static final long TICK_BUDGET = 50000000L;
+    private static final int MAX_TELEPORTS = 8;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String USAGE =
+        "Usage: java -cp benchmarks.jar org.kepow.customhardcore.benchmarks.Simulator [options]\n"
+        + "  --groups N          world groups (1000)\n"
+        + "  --worlds N          worlds per world group (2)\n"
+        + "  --players N         online players (10000)\n"
+        + "  --deaths N          deaths per second (10000)\n"
+        + "  --world-changes N   world changes per second (1000)\n"
+        + "  --joins N           players quitting, and new players joining, per second (100)\n"
+        + "  --seconds N         seconds of server time to simulate (120)\n"
+        + "  --lives N           lives in every world group (3)\n"
+        + "  --storage TYPE      yaml, sqlite or binary (binary)\n"
+        + "  --seed N            seed of the random events (1)\n"
+        + "  --replay FILE       replay the events recorded in FILE instead of random events\n"
+        + "  --record FILE       record the replayed events to FILE\n"
+        + "  --help              show these options";
+
+    private final StubServer server;
+    private final CustomHardcore plugin;
+    private final Map<String, Player> online = new HashMap<String, Player>();
+    private final long[] counts = new long[SimulatedEvent.Type.values().length];
+    private long ignored;
+    private long deniedLogins;
+    private long loginNanos;
+
+    private Simulator(StubServer server, CustomHardcore plugin)
+    {
+        this.server = server;
+        this.plugin = plugin;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Map<String, String> options = new LinkedHashMap<String, String>();
+        for(String name : new String[] { "groups", "worlds", "players", "deaths", "world-changes",
+            "joins", "seconds", "lives", "storage", "seed", "replay", "record" })
+        {
+            options.put(name, null);
+        }
+        for(int i = 0; i < args.length; i += 2)
+        {
+            if(args[i].equals("--help"))
+            {
+                System.out.println(USAGE);
+                return;
+            }
+            String name = args[i].startsWith("--") ? args[i].substring(2) : "";
+            if(!options.containsKey(name) || i + 1 >= args.length)
+            {
+                System.err.println(USAGE);
+                System.exit(1);
+            }
+            options.put(name, args[i + 1]);
+        }
+
+        int groups;
+        int worlds;
+        int players;
+        double deaths;
+        double worldChanges;
+        double joins;
+        long seconds;
+        int lives;
+        long seed;
+        try
+        {
+            groups = Integer.parseInt(option(options, "groups", "1000"));
+            worlds = Integer.parseInt(option(options, "worlds", "2"));
+            players = Integer.parseInt(option(options, "players", "10000"));
+            deaths = Double.parseDouble(option(options, "deaths", "10000"));
+            worldChanges = Double.parseDouble(option(options, "world-changes", "1000"));
+            joins = Double.parseDouble(option(options, "joins", "100"));
+            seconds = Long.parseLong(option(options, "seconds", "120"));
+            lives = Integer.parseInt(option(options, "lives", "3"));
+            seed = Long.parseLong(option(options, "seed", "1"));
+        }
+        catch(NumberFormatException e)
+        {
+            System.err.println("Expected a number: " + e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        String storage = option(options, "storage", "binary");
+
+        YamlConfiguration config = Fixtures.config(storage, groups, worlds);
+        config.set("timings", true);
+        for(int group = 0; group < groups; group++)
+        {
+            config.set("worldConfig.groups." + Fixtures.groupName(group) + ".config.lives", lives);
+        }
+
+        long start = System.nanoTime();
+        CustomHardcore plugin = Fixtures.startPlugin(config);
+        System.out.println(String.format("Started the plugin with %d world groups in %.1f ms.",
+            groups, (System.nanoTime() - start) / 1e6));
+
+        // The worlds of the world groups, and the world banished players are sent to
+        StubServer server = StubServer.get();
+        server.world("world");
+        for(int group = 0; group < groups; group++)
+        {
+            for(int world = 0; world < worlds; world++)
+            {
+                server.world(Fixtures.worldName(group, world));
+            }
+        }
+
+        EventStream events;
+        if(options.get("replay") != null)
+        {
+            events = new RecordedEventStream(new File(options.get("replay")));
+        }
+        else
+        {
+            events = new SyntheticEventStream(seed, groups, worlds, players, deaths, worldChanges, joins,
+                seconds * SyntheticEventStream.TICKS_PER_SECOND);
+        }
+
+        Writer record = null;
+        if(options.get("record") != null)
+        {
+            record = new OutputStreamWriter(new FileOutputStream(options.get("record")), UTF_8);
+        }
+
+        try
+        {
+            new Simulator(server, plugin).run(events, record);
+        }
+        catch(IOException e)
+        {
+            System.err.println("Could not replay the events: " + e.getMessage());
+            System.exit(1);
+        }
+        finally
+        {
+            if(record != null)
+            {
+                record.close();
+            }
+            server.shutdown();
+        }
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue)
+    {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Replays a stream of events, stops the plugin and reports the results.
+     * @param events The events.
+     * @param record The writer to record the events to, or null.
+     * @throws IOException
+     */
+    private void run(EventStream events, Writer record) throws IOException
+    {
+        long heapBefore = Fixtures.usedHeap();
+        long peakHeap = heapBefore;
+        Timings.reset();
+
+        LatencyHistogram tickTimes = new LatencyHistogram();
+        long overBudget = 0;
+        long mainThreadNanos = 0;
+        long tick = 0;
+        long start = System.nanoTime();
+
+        SimulatedEvent event = events.next();
+        while(event != null)
+        {
+            long tickNanos = 0;
+            loginNanos = 0;
+            while(event != null && event.getTick() <= tick)
+            {
+                if(record != null)
+                {
+                    record.write(event + "\n");
+                }
+
+                long eventStart = System.nanoTime();
+                dispatch(event);
+                tickNanos += System.nanoTime() - eventStart;
+
+                event = events.next();
+            }
+
+            long tasksStart = System.nanoTime();
+            server.tick();
+            tickNanos += System.nanoTime() - tasksStart - loginNanos;
+
+            tickTimes.record(tickNanos);
+            mainThreadNanos += tickNanos;
+            if(tickNanos > TICK_BUDGET)
+            {
+                overBudget++;
+            }
+
+            tick++;
+            if(tick % SyntheticEventStream.TICKS_PER_SECOND == 0)
+            {
+                Runtime runtime = Runtime.getRuntime();
+                peakHeap = Math.max(peakHeap, runtime.totalMemory() - runtime.freeMemory());
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long heapAfter = Fixtures.usedHeap();
+
+        // Stopping the plugin writes a final save, and waits until all saves are written
+        long shutdownStart = System.nanoTime();
+        plugin.onDisable();
+        long shutdown = System.nanoTime() - shutdownStart;
+
+        long total = 0;
+        for(long count : counts)
+        {
+            total += count;
+        }
+
+        System.out.println(String.format("Simulated %d ticks (%.1f s of server time) in %.1f s.",
+            tick, (double) tick / SyntheticEventStream.TICKS_PER_SECOND, elapsed / 1e9));
+        StringBuilder types = new StringBuilder();
+        for(SimulatedEvent.Type type : SimulatedEvent.Type.values())
+        {
+            types.append(types.length() > 0 ? ", " : "").append(type.name().toLowerCase()).append(' ').append(counts[type.ordinal()]);
+        }
+        System.out.println(String.format("Events:     %s; %d ignored, %d logins denied", types, ignored, deniedLogins));
+        System.out.println(String.format("Throughput: %d events in %.2f s of main thread time, %.0f events per second",
+            total, mainThreadNanos / 1e9, total / (mainThreadNanos / 1e9)));
+        System.out.println(String.format("Tick time:  median %.2f ms, 99th percentile %.2f ms, max %.2f ms; %d of %d ticks over %d ms",
+            tickTimes.getPercentile(50) / 1e6, tickTimes.getPercentile(99) / 1e6, tickTimes.getMax() / 1e6,
+            overBudget, tick, TICK_BUDGET / 1000000));
+        System.out.println(String.format("Heap:       %.1f MB after starting, %.1f MB at the end (%+.1f MB), at most %.1f MB",
+            heapBefore / 1e6, heapAfter / 1e6, (heapAfter - heapBefore) / 1e6, peakHeap / 1e6));
+
+        SaveStatistics saves = plugin.getSaveStatistics();
+        System.out.println(String.format("Saves:      %d written, %d skipped, %d records, %.1f kB; last write %.1f ms; stopping took %.1f ms",
+            saves.getSaves(), saves.getSkippedSaves(), saves.getRecordsWritten(), saves.getBytesWritten() / 1e3,
+            saves.getLastSaveMillis(), shutdown / 1e6));
+
+        System.out.println(String.format("%-24s %10s %12s %12s %12s", "Timings (us)", "Count", "Median", "99th", "Max"));
+        for(Timings.Entry entry : Timings.getEntries())
+        {
+            LatencyHistogram histogram = entry.getHistogram();
+            if(histogram.getCount() > 0)
+            {
+                System.out.println(String.format("%-24s %10d %12.1f %12.1f %12.1f", entry.getName(), histogram.getCount(),
+                    histogram.getPercentile(50) / 1e3, histogram.getPercentile(99) / 1e3, histogram.getMax() / 1e3));
+            }
+        }
+
+        Fixtures.delete(plugin.getDataFolder().getParentFile());
+    }
+
+    /**
+     * Calls the event handlers for an event. Events of players that are
+     * not online, and joins of players that are, are ignored.
+     * @param event The event.
+     */
+    private void dispatch(SimulatedEvent event)
+    {
+        Player player = online.get(event.getPlayer());
+        if((player == null) != (event.getType() == SimulatedEvent.Type.JOIN))
+        {
+            ignored++;
+            return;
+        }
+        counts[event.getType().ordinal()]++;
+
+        switch(event.getType())
+        {
+            case JOIN:
+                join(event.getPlayer(), server.world(event.getWorld()));
+                break;
+            case CHANGEWORLD:
+                changeWorld(player, server.world(event.getWorld()));
+                break;
+            case DEATH:
+                die(player);
+                break;
+            case RESPAWN:
+                respawn(player);
+                break;
+            case QUIT:
+                quit(player);
+                break;
+        }
+    }
+
+    private void join(String name, World world)
+    {
+        UUID uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(UTF_8));
+
+        long start = System.nanoTime();
+        AsyncPlayerPreLoginEvent login = new AsyncPlayerPreLoginEvent(name, InetAddress.getLoopbackAddress(), uuid);
+        plugin.onAsyncPlayerPreLoginEvent(login);
+        loginNanos += System.nanoTime() - start;
+        if(login.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED)
+        {
+            deniedLogins++;
+            return;
+        }
+
+        Player player = server.join(name, uuid, world);
+        online.put(name, player);
+        plugin.onPlayerJoinEvent(new PlayerJoinEvent(player, name + " joined the game"));
+        followTeleports(player, world);
+    }
+
+    private void changeWorld(Player player, World world)
+    {
+        World from = player.getWorld();
+        if(world != from)
+        {
+            player.teleport(new Location(world, 0, 65, 0));
+            followTeleports(player, from);
+        }
+    }
+
+    private void die(Player player)
+    {
+        World world = player.getWorld();
+        server.setDead(player, true);
+        plugin.onPlayerDeath(new PlayerDeathEvent(player, new ArrayList<ItemStack>(), 0, player.getName() + " died"));
+        followTeleports(player, world);
+    }
+
+    private void respawn(Player player)
+    {
+        World world = player.getWorld();
+        PlayerRespawnEvent event = new PlayerRespawnEvent(player, player.getLocation(), false);
+        plugin.onPlayerRespawnEvent(event);
+        server.setDead(player, false);
+        if(event.getRespawnLocation().getWorld() != world)
+        {
+            player.teleport(event.getRespawnLocation());
+        }
+        followTeleports(player, world);
+    }
+
+    private void quit(Player player)
+    {
+        plugin.onPlayerQuitEvent(new PlayerQuitEvent(player, player.getName() + " left the game"));
+        server.quit(player);
+        online.remove(player.getName());
+    }
+
+    /**
+     * Calls a world change event for every time a player changed worlds,
+     * as the server does when a player is teleported to another world,
+     * including teleports by the event handlers.
+     * @param player The player.
+     * @param from The world the player was in.
+     */
+    private void followTeleports(Player player, World from)
+    {
+        for(int i = 0; i < MAX_TELEPORTS && player.getWorld() != from; i++)
+        {
+            World to = player.getWorld();
+            plugin.onPlayerChangedWorldEvent(new PlayerChangedWorldEvent(player, from));
+            from = to;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.kepow.customhardcore.CustomHardcore;
+import org.kepow.customhardcore.PlayerRecord;
+import org.kepow.customhardcore.PluginState;
+import org.kepow.customhardcore.StorageBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks starting the plugin on a data folder that holds stored
+ * players: opening the storage and indexing the banishments of every
+ * world group. The players are spread evenly over the world groups, and
+ * one in ten is banished.
+ *
+ * @author Thomas Churchman
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class StartupBenchmark
+{
+    private static final int GROUPS = 10;
+
+    @Param({ "yaml", "binary" })
+    public String storage;
+
+    @Param({ "10000", "100000", "1000000" })
+    public int players;
+
+    private File dataFolder;
+    private YamlConfiguration config;
+    private CustomHardcore plugin;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        dataFolder = Fixtures.createDataFolder();
+        config = Fixtures.config(storage, GROUPS, 1);
+        CustomHardcore plugin = Fixtures.startPlugin(dataFolder, config);
+
+        StorageBackend backend = PluginState.getStorage();
+        for(int group = 0; group < GROUPS; group++)
+        {
+            List<PlayerRecord> records = new ArrayList<PlayerRecord>();
+            for(int i = group; i < players; i += GROUPS)
+            {
+                long banishedUntil = i % 10 == 0 ? 2000000000L : PlayerRecord.NONE;
+                records.add(new PlayerRecord(Fixtures.uuid(i), i % 3, banishedUntil, 1400000000L));
+            }
+            backend.upsertPlayers(Fixtures.groupName(group), records);
+        }
+        backend.flush();
+        plugin.onDisable();
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop()
+    {
+        plugin.onDisable();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        Fixtures.delete(dataFolder.getParentFile());
+    }
+
+    @Benchmark
+    public CustomHardcore start() throws IOException
+    {
+        plugin = Fixtures.startPlugin(dataFolder, config);
+        return plugin;
+    }
+}
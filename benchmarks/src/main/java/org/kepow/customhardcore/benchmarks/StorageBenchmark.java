@@ -0,0 +1,124 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.kepow.customhardcore.CustomHardcore;
+import org.kepow.customhardcore.PlayerRecord;
+import org.kepow.customhardcore.PluginState;
+import org.kepow.customhardcore.StorageBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the storage backends with players spread evenly over the
+ * world groups: saving the changes of 100 players of a world group, as a
+ * save does, loading a player, as the first event of a player does, and
+ * scanning a world group, as indexing its banishments does.
+ *
+ * @author Thomas Churchman
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class StorageBenchmark
+{
+    private static final int CHANGED_PLAYERS = 100;
+
+    @Param({ "yaml", "sqlite", "binary" })
+    public String storage;
+
+    @Param({ "10", "1000", "100000" })
+    public int players;
+
+    @Param({ "1", "100" })
+    public int groups;
+
+    private CustomHardcore plugin;
+    private StorageBackend backend;
+    private UUID[] uuids;
+    private int next;
+    private int deaths;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        plugin = Fixtures.startPlugin(Fixtures.config(storage, groups, 1));
+        backend = PluginState.getStorage();
+
+        uuids = new UUID[players];
+        List<List<PlayerRecord>> records = new ArrayList<List<PlayerRecord>>();
+        for(int group = 0; group < groups; group++)
+        {
+            records.add(new ArrayList<PlayerRecord>());
+        }
+        for(int i = 0; i < players; i++)
+        {
+            uuids[i] = Fixtures.uuid(i);
+            records.get(i % groups).add(new PlayerRecord(uuids[i], 1, PlayerRecord.NONE, 1400000000L));
+        }
+        for(int group = 0; group < groups; group++)
+        {
+            backend.upsertPlayers(Fixtures.groupName(group), records.get(group));
+        }
+        backend.flush();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.stopPlugin(plugin);
+    }
+
+    @Benchmark
+    public void save() throws IOException
+    {
+        deaths = deaths % 2 + 1;
+        List<PlayerRecord> changed = new ArrayList<PlayerRecord>(CHANGED_PLAYERS);
+        for(int i = 0; i < CHANGED_PLAYERS; i++)
+        {
+            next = next + groups < players ? next + groups : 0;
+            changed.add(new PlayerRecord(uuids[next], deaths, PlayerRecord.NONE, 1400000000L));
+        }
+        backend.upsertPlayers(Fixtures.groupName(0), changed);
+        backend.flush();
+    }
+
+    @Benchmark
+    public PlayerRecord loadPlayer() throws IOException
+    {
+        next = next + groups < players ? next + groups : 0;
+        return backend.loadPlayer(Fixtures.groupName(0), uuids[next]);
+    }
+
+    @Benchmark
+    public int scan() throws IOException
+    {
+        final int[] count = new int[1];
+        backend.scan(Fixtures.groupName(0), new StorageBackend.Visitor()
+        {
+            public void visit(PlayerRecord record)
+            {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+}
@@ -0,0 +1,206 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bukkit.ChatColor;
+import org.kepow.customhardcore.PluginState;
+import org.kepow.customhardcore.Utils;
+
+/**
+ * Class that renders messages the way the plugin did before messages were
+ * compiled into templates: by looking the message up in messages.yml and
+ * replacing its switches, placeholders and color codes one by one. It is
+ * kept unchanged to compare the template renderer against.
+ *
+ * @author Thomas Churchman
+ *
+ */
+final class StringReplaceRenderer
+{
+    private StringReplaceRenderer()
+    {
+    }
+    
+    /**
+     * Prepare a message string for outputting.
+     * @param message The message string key (without the "messages." prefix) to use.
+     * @param replacementsArray An array of consecutive {String, Object} pairs, e.g. {"%value", 2.06}.
+     * @return The prepared message string.
+     */
+    static String prepareMessage(String message, Object... replacementsArray)
+    {
+        HashMap<String, Object> replacements = new HashMap<String, Object>();
+
+        // Feed replacements and replaceWiths into the replacement map.
+        if(replacementsArray.length % 2 == 0)
+        {
+            for(int i = 0; i < replacementsArray.length; i+=2)
+            {
+                String replace = (String) replacementsArray[i];
+                replacements.put(replace, replacementsArray[i+1]);
+            }
+        }
+
+        // Get placeholder message.
+        String placeholder = PluginState.getMessagesCustomConfig().getCustomConfig().getString("messages." + message);
+        if(placeholder == null)
+        {
+            placeholder = "String not found: " + message;
+        }
+
+        // First parse the message for any potential &word|dependent% occurrences.
+        // The words are replaced with the value the word codes for (in config.yml)
+        // with the given switch (e.g., "&currency|1%" could code for "%currencySingular"). 
+        String placeholderCopy = placeholder; 
+
+        // Find all &...|...% occurrences
+        Pattern pattern = Pattern.compile("&[a-zA-Z]+\\|[a-zA-Z]+%");
+        Matcher m = pattern.matcher(placeholder);
+
+        while(m.find())
+        {   // For every occurrence:
+            // Find the part of the string that matched
+            String match = m.group(0);
+
+            // Removed the first (&) and last (%) parts of the string and
+            // then split the string on |
+            String[] matches = match.substring(1, match.length()-1).split("\\|");
+
+            // The first part is the word we're finding the value for
+            String word = matches[0];
+            // The second part is the case of the word we want (e.g., case "1" of currency)
+            String dependent = matches[1];
+
+
+            if(replacements.containsKey("%" + dependent))
+            {   // We know the value of the case
+                Object obj = replacements.get("%" + dependent);
+                String replaceWith = null;
+
+                // Find the type of the case's value and generate the case value to use
+                if(obj instanceof Integer)
+                {
+                    int val = (Integer) obj;
+                    replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + "." + val);
+                } 
+                else if(obj instanceof Double)
+                {
+                    double val = Utils.round((Double) obj, PluginState.getMessagesCustomConfig().getCustomConfig().getInt("display.numDecimals"));
+
+                    if ((val == Math.floor(val)) && !Double.isInfinite(val)) {
+                        int floor = (int) Math.floor(val);
+                        replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + "." + floor);
+                    }
+                }
+                else
+                {
+                    String val = obj.toString();
+                    replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + "." + val);
+                }
+
+                // No (existing) case found, default to case "other"
+                if(replaceWith == null)
+                {
+                    replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + ".other");
+                }
+
+                placeholderCopy = placeholderCopy.replace(match, replaceWith);
+            }
+            else
+            {   // We don't know the value of the case, default to "other".
+                String replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + ".other");
+                if(replaceWith != null)
+                {
+                    placeholderCopy = placeholderCopy.replace(match, replaceWith);
+                }
+            }
+        }
+
+        // Find all &...% occurrences
+        pattern = Pattern.compile("&[a-zA-Z]+%");
+        m = pattern.matcher(placeholder);
+
+        while(m.find())
+        {   // For every occurrence:
+            // Find the part of the string that matched
+            String match = m.group(0);
+
+            // Removed the first (&) and last (%) parts of the string
+            String word = match.substring(1, match.length()-1);     
+
+            String replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + ".other");
+
+            placeholderCopy = placeholderCopy.replace(match, replaceWith);
+        }
+
+        placeholder = placeholderCopy;
+
+        // Sort the to-be-replaced strings by length in descending order to make sure that
+        // strings such as "%test" and "%te" won't interfere (if "%te" were to be evaluated 
+        // first, the result on "%test"would be "{%te}st").
+        String[] replacementKeys = replacements.keySet().toArray(new String[0]);
+        Arrays.sort(replacementKeys, new Comparator<String>()
+            {
+            public int compare(String s1, String s2)
+            {
+                return s2.length() - s1.length();
+            }
+            });
+
+        for(String replace : replacementKeys)
+        {   // For each to-be-replaced string
+
+            // Find the string value of the replacement...
+            Object obj = replacements.get(replace);
+            String replaceWith = null;
+            if(obj instanceof Integer)
+            {
+                replaceWith = ""+(Integer) obj;
+            } 
+            else if(obj instanceof Double)
+            {
+                replaceWith = String.format("%."+PluginState.getPlugin().getConfig().getInt("display.numDecimals")+"f", (Double) obj);
+            }
+            else
+            {
+                replaceWith = obj.toString();
+            }
+
+            // ... and replace.
+            placeholder = placeholder.replaceAll(replace, replaceWith);
+        }
+
+        // Replace string formatting codes
+        placeholder = placeholder.replaceAll("&0", ChatColor.BLACK.toString());
+        placeholder = placeholder.replaceAll("&1", ChatColor.DARK_BLUE.toString());
+        placeholder = placeholder.replaceAll("&2", ChatColor.DARK_GREEN.toString());
+        placeholder = placeholder.replaceAll("&3", ChatColor.DARK_AQUA.toString());
+        placeholder = placeholder.replaceAll("&4", ChatColor.DARK_RED.toString());
+        placeholder = placeholder.replaceAll("&5", ChatColor.DARK_PURPLE.toString());
+        placeholder = placeholder.replaceAll("&6", ChatColor.GOLD.toString());
+        placeholder = placeholder.replaceAll("&7", ChatColor.GRAY.toString());
+        placeholder = placeholder.replaceAll("&8", ChatColor.DARK_GRAY.toString());
+        placeholder = placeholder.replaceAll("&9", ChatColor.BLUE.toString());
+        placeholder = placeholder.replaceAll("&a", ChatColor.GREEN.toString());
+        placeholder = placeholder.replaceAll("&b", ChatColor.AQUA.toString());
+        placeholder = placeholder.replaceAll("&c", ChatColor.RED.toString());
+        placeholder = placeholder.replaceAll("&d", ChatColor.LIGHT_PURPLE.toString());
+        placeholder = placeholder.replaceAll("&e", ChatColor.YELLOW.toString());
+        placeholder = placeholder.replaceAll("&f", ChatColor.WHITE.toString());
+
+        placeholder = placeholder.replaceAll("&k", ChatColor.MAGIC.toString());
+        placeholder = placeholder.replaceAll("&l", ChatColor.BOLD.toString());
+        placeholder = placeholder.replaceAll("&m", ChatColor.STRIKETHROUGH.toString());
+        placeholder = placeholder.replaceAll("&n", ChatColor.UNDERLINE.toString());
+        placeholder = placeholder.replaceAll("&o", ChatColor.ITALIC.toString());
+        placeholder = placeholder.replaceAll("&r", ChatColor.RESET.toString());
+        
+        placeholder = placeholder.replaceAll("\\n", "\n");
+
+        return placeholder;
+    }
+}
@@ -0,0 +1,137 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Class that generates a stream of events at fixed rates. The players
+ * join in the first tick, spread evenly over the world groups. In every
+ * later tick, random online players die and respawn, move to a random
+ * world of a random world group, and quit while new players join a
+ * random world, such that the number of online players stays the same.
+ * Worlds are named as by {@link Fixtures#worldName(int, int)}.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class SyntheticEventStream implements EventStream
+{
+    /**
+     * The number of ticks the server runs per second.
+     */
+    public static final int TICKS_PER_SECOND = 20;
+
+    private final Random random;
+    private final int groups;
+    private final int worldsPerGroup;
+    private final double deathsPerTick;
+    private final double worldChangesPerTick;
+    private final double joinsPerTick;
+    private final long ticks;
+
+    private final List<String> online = new ArrayList<String>();
+    private final Deque<SimulatedEvent> pending = new ArrayDeque<SimulatedEvent>();
+    private long tick;
+    private int nextPlayer;
+    private double deaths;
+    private double worldChanges;
+    private double joins;
+
+    /**
+     * Constructor.
+     * @param seed The seed of the random choices.
+     * @param groups The number of world groups.
+     * @param worldsPerGroup The number of worlds in each world group.
+     * @param players The number of online players.
+     * @param deathsPerSecond The number of deaths per second.
+     * @param worldChangesPerSecond The number of world changes per second.
+     * @param joinsPerSecond The number of players that quit, and of new
+     * players that join, per second.
+     * @param ticks The number of ticks to generate events for.
+     */
+    public SyntheticEventStream(long seed, int groups, int worldsPerGroup, int players,
+        double deathsPerSecond, double worldChangesPerSecond, double joinsPerSecond, long ticks)
+    {
+        this.random = new Random(seed);
+        this.groups = groups;
+        this.worldsPerGroup = worldsPerGroup;
+        this.deathsPerTick = deathsPerSecond / TICKS_PER_SECOND;
+        this.worldChangesPerTick = worldChangesPerSecond / TICKS_PER_SECOND;
+        this.joinsPerTick = joinsPerSecond / TICKS_PER_SECOND;
+        this.ticks = ticks;
+
+        for(int i = 0; i < players; i++)
+        {
+            join(Fixtures.worldName(i % groups, random.nextInt(worldsPerGroup)));
+        }
+    }
+
+    public SimulatedEvent next()
+    {
+        while(pending.isEmpty())
+        {
+            if(tick + 1 >= ticks)
+            {
+                return null;
+            }
+            tick++;
+            generate();
+        }
+        return pending.poll();
+    }
+
+    /**
+     * Generates the events of the current tick. Fractions of events carry
+     * over to the next tick.
+     */
+    private void generate()
+    {
+        deaths += deathsPerTick;
+        int count = (int) deaths;
+        deaths -= count;
+        for(int i = 0; i < count && !online.isEmpty(); i++)
+        {
+            String player = online.get(random.nextInt(online.size()));
+            pending.add(new SimulatedEvent(tick, SimulatedEvent.Type.DEATH, player, null));
+            pending.add(new SimulatedEvent(tick, SimulatedEvent.Type.RESPAWN, player, null));
+        }
+
+        worldChanges += worldChangesPerTick;
+        count = (int) worldChanges;
+        worldChanges -= count;
+        for(int i = 0; i < count && !online.isEmpty(); i++)
+        {
+            String player = online.get(random.nextInt(online.size()));
+            pending.add(new SimulatedEvent(tick, SimulatedEvent.Type.CHANGEWORLD, player, randomWorld()));
+        }
+
+        joins += joinsPerTick;
+        count = (int) joins;
+        joins -= count;
+        for(int i = 0; i < count && !online.isEmpty(); i++)
+        {
+            int index = random.nextInt(online.size());
+            String player = online.get(index);
+            online.set(index, online.get(online.size() - 1));
+            online.remove(online.size() - 1);
+            pending.add(new SimulatedEvent(tick, SimulatedEvent.Type.QUIT, player, null));
+
+            join(randomWorld());
+        }
+    }
+
+    private void join(String world)
+    {
+        String player = "Player" + nextPlayer++;
+        online.add(player);
+        pending.add(new SimulatedEvent(tick, SimulatedEvent.Type.JOIN, player, world));
+    }
+
+    private String randomWorld()
+    {
+        return Fixtures.worldName(random.nextInt(groups), random.nextInt(worldsPerGroup));
+    }
+}
@@ -0,0 +1,57 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.kepow.customhardcore.CustomHardcore;
+import org.kepow.customhardcore.FormattedTime;
+import org.kepow.customhardcore.TimeFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks formatting the times shown in messages, such as the end of a
+ * banishment.
+ *
+ * @author Thomas Churchman
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeFormatterBenchmark
+{
+    private CustomHardcore plugin;
+    private long time;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        plugin = Fixtures.startPlugin(Fixtures.config("yaml", 1, 1));
+        time = 1400000000L;
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.stopPlugin(plugin);
+    }
+
+    @Benchmark
+    public FormattedTime format()
+    {
+        return TimeFormatter.format(time++);
+    }
+}
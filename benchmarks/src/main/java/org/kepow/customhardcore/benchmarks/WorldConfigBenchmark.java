@@ -0,0 +1,113 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.kepow.customhardcore.StubServer;
+import org.kepow.customhardcore.WorldConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks resolving the world group of a world, which every event of a
+ * player does, by world name and by world. The worlds are looked up in a
+ * random order, and one in ten is not in any group.
+ *
+ * scan() measures the lookup the world index replaced: a scan over the
+ * world lists of all world groups, as loaded from the configuration.
+ *
+ * @author Thomas Churchman
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldConfigBenchmark
+{
+    private static final int LOOKUPS = 4096;
+
+    @Param({ "1", "100", "10000" })
+    public int groups;
+
+    @Param({ "3" })
+    public int worldsPerGroup;
+
+    private WorldConfig worldConfig;
+    private Map<String, List<String>> worldGroups;
+    private String[] names;
+    private World[] worlds;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        ConfigurationSection config = Fixtures.config("yaml", groups, worldsPerGroup).getConfigurationSection("worldConfig");
+        worldConfig = new WorldConfig(config.getValues(false));
+
+        worldGroups = new HashMap<String, List<String>>();
+        ConfigurationSection groupsData = config.getConfigurationSection("groups");
+        for(String group : groupsData.getKeys(false))
+        {
+            worldGroups.put(group, groupsData.getConfigurationSection(group).getStringList("worlds"));
+        }
+
+        StubServer server = StubServer.get();
+        Random random = new Random(1);
+        names = new String[LOOKUPS];
+        worlds = new World[LOOKUPS];
+        for(int i = 0; i < LOOKUPS; i++)
+        {
+            names[i] = random.nextInt(10) == 0 ? "unlisted" + random.nextInt(100)
+                : Fixtures.worldName(random.nextInt(groups), random.nextInt(worldsPerGroup));
+            worlds[i] = server.world(names[i]);
+        }
+    }
+
+    @Benchmark
+    public String byName()
+    {
+        next = (next + 1) & (LOOKUPS - 1);
+        return worldConfig.getGroupFromWorld(names[next]);
+    }
+
+    @Benchmark
+    public String byWorld()
+    {
+        next = (next + 1) & (LOOKUPS - 1);
+        return worldConfig.getGroupFromWorld(worlds[next]);
+    }
+
+    @Benchmark
+    public String scan()
+    {
+        next = (next + 1) & (LOOKUPS - 1);
+        String world = names[next];
+        String group = "default";
+        for(String grp : worldGroups.keySet())
+        {
+            if(worldGroups.get(grp).contains(world))
+            {
+                group = grp;
+                break;
+            }
+        }
+        return group;
+    }
+}
@@ -0,0 +1,105 @@
+package org.kepow.customhardcore.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.kepow.customhardcore.BanIndex;
+import org.kepow.customhardcore.CustomHardcore;
+import org.kepow.customhardcore.PlayerRecord;
+import org.kepow.customhardcore.PluginState;
+import org.kepow.customhardcore.Utils;
+import org.kepow.customhardcore.WorldManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the state of players in a world group: the lives left and
+ * the next life regeneration of players held in memory, and indexing the
+ * banishments of all stored players, which is done for every world group
+ * when the plugin starts. Half of the players have lost a life, and one
+ * in ten is banished.
+ *
+ * @author Thomas Churchman
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class WorldManagerBenchmark
+{
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int players;
+
+    private CustomHardcore plugin;
+    private WorldManager manager;
+    private UUID[] uuids;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        plugin = Fixtures.startPlugin(Fixtures.config("binary", 1, 1));
+        manager = plugin.getWorldManagers().get(Fixtures.groupName(0));
+
+        long now = Utils.getCurrentTime();
+        List<PlayerRecord> records = new ArrayList<PlayerRecord>();
+        uuids = new UUID[players];
+        for(int i = 0; i < players; i++)
+        {
+            uuids[i] = Fixtures.uuid(i);
+            long banishedUntil = i % 10 == 0 ? now + 3600 : PlayerRecord.NONE;
+            int deaths = i % 2 == 0 ? 1 : 0;
+            long regenerationStartTime = deaths > 0 ? now - i % 3600 : PlayerRecord.NONE;
+            PlayerRecord record = new PlayerRecord(uuids[i], deaths, banishedUntil, regenerationStartTime);
+            manager.applyJournalRecord(record);
+            records.add(record);
+        }
+        PluginState.getStorage().upsertPlayers(manager.getWorldGroup(), records);
+        PluginState.getStorage().flush();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.stopPlugin(plugin);
+    }
+
+    @Benchmark
+    public int getLivesLeft()
+    {
+        next = next + 1 < players ? next + 1 : 0;
+        return manager.getLivesLeft(uuids[next]);
+    }
+
+    @Benchmark
+    public long regenerationAt()
+    {
+        next = next + 1 < players ? next + 1 : 0;
+        return manager.regenerationAt(uuids[next]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 10)
+    public BanIndex indexBanishments()
+    {
+        return WorldManager.indexBanishments(manager.getWorldGroup());
+    }
+}
@@ -0,0 +1,340 @@
+package org.kepow.customhardcore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class that holds the banishments of a world group ordered by the time
+ * they expire, including those of players whose state is not in memory.
+ * The banishments are kept in parallel primitive arrays sorted by expiry
+ * time and UUID, next to a map from UUID to expiry time to find the
+ * banishment of a player.
+ *
+ * Finding the banishments that expire from a given time on takes
+ * O(log n); a page of them is then a contiguous range of the arrays.
+ * Changing a banishment shifts the arrays, which is a single memory move.
+ *
+ * The index is changed on a single thread. The banishment of a player can
+ * be looked up from any thread, through {@link #getBanishedUntil(UUID)}.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class BanIndex
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] banishedUntil;
+    private long[] mostSignificantBits;
+    private long[] leastSignificantBits;
+    private int size;
+
+    private final ConcurrentHashMap<UUID, Long> banishments;
+
+    /**
+     * Constructor. Creates an empty index.
+     */
+    public BanIndex()
+    {
+        this.banishedUntil = new long[INITIAL_CAPACITY];
+        this.mostSignificantBits = new long[INITIAL_CAPACITY];
+        this.leastSignificantBits = new long[INITIAL_CAPACITY];
+        this.banishments = new ConcurrentHashMap<UUID, Long>();
+    }
+
+    /**
+     * Class that represents the banishment of a player.
+     */
+    public static final class Entry
+    {
+        private final UUID uuid;
+        private final long banishedUntil;
+
+        private Entry(UUID uuid, long banishedUntil)
+        {
+            this.uuid = uuid;
+            this.banishedUntil = banishedUntil;
+        }
+
+        /**
+         * Gets the UUID of the player.
+         * @return The UUID of the player.
+         */
+        public UUID getUniqueId()
+        {
+            return this.uuid;
+        }
+
+        /**
+         * Gets the time until which the player is banished.
+         * @return The time until which the player is banished.
+         */
+        public long getBanishedUntil()
+        {
+            return this.banishedUntil;
+        }
+    }
+
+    /**
+     * Adds the banishments of many players at once, sorting them once
+     * instead of inserting them one by one. Records of players that are
+     * not banished are skipped. If several records belong to the same
+     * player, the last one counts.
+     * @param records The records of the players.
+     */
+    public void addAll(Collection<PlayerRecord> records)
+    {
+        if(size > 0)
+        {
+            for(PlayerRecord record : records)
+            {
+                set(record.getUniqueId(), record.getBanishedUntil());
+            }
+            return;
+        }
+
+        for(PlayerRecord record : records)
+        {   // A later record of the same player replaces an earlier one, as with set().
+            if(record.getBanishedUntil() == PlayerRecord.NONE)
+            {
+                banishments.remove(record.getUniqueId());
+            }
+            else
+            {
+                banishments.put(record.getUniqueId(), record.getBanishedUntil());
+            }
+        }
+
+        List<Map.Entry<UUID, Long>> sorted = new ArrayList<Map.Entry<UUID, Long>>(banishments.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<UUID, Long>>()
+        {
+            public int compare(Map.Entry<UUID, Long> a, Map.Entry<UUID, Long> b)
+            {
+                return BanIndex.compare(a.getValue(),
+                    a.getKey().getMostSignificantBits(), a.getKey().getLeastSignificantBits(),
+                    b.getValue(),
+                    b.getKey().getMostSignificantBits(), b.getKey().getLeastSignificantBits());
+            }
+        });
+
+        ensureCapacity(sorted.size());
+        for(Map.Entry<UUID, Long> entry : sorted)
+        {
+            banishedUntil[size] = entry.getValue();
+            mostSignificantBits[size] = entry.getKey().getMostSignificantBits();
+            leastSignificantBits[size] = entry.getKey().getLeastSignificantBits();
+            size++;
+        }
+    }
+
+    /**
+     * Sets the time until which a player is banished.
+     * @param uuid The UUID of the player.
+     * @param banishedUntil The time until which the player is banished,
+     * or {@link PlayerRecord#NONE} if the player is not banished.
+     */
+    public void set(UUID uuid, long banishedUntil)
+    {
+        Long previous = banishments.get(uuid);
+        if(previous != null && previous == banishedUntil)
+        {
+            return;
+        }
+
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        if(previous != null)
+        {
+            int index = search(previous, msb, lsb);
+            System.arraycopy(this.banishedUntil, index + 1, this.banishedUntil, index, size - index - 1);
+            System.arraycopy(this.mostSignificantBits, index + 1, this.mostSignificantBits, index, size - index - 1);
+            System.arraycopy(this.leastSignificantBits, index + 1, this.leastSignificantBits, index, size - index - 1);
+            size--;
+            banishments.remove(uuid);
+        }
+
+        if(banishedUntil == PlayerRecord.NONE)
+        {
+            return;
+        }
+
+        ensureCapacity(size + 1);
+        int index = -search(banishedUntil, msb, lsb) - 1;
+        System.arraycopy(this.banishedUntil, index, this.banishedUntil, index + 1, size - index);
+        System.arraycopy(this.mostSignificantBits, index, this.mostSignificantBits, index + 1, size - index);
+        System.arraycopy(this.leastSignificantBits, index, this.leastSignificantBits, index + 1, size - index);
+        this.banishedUntil[index] = banishedUntil;
+        this.mostSignificantBits[index] = msb;
+        this.leastSignificantBits[index] = lsb;
+        size++;
+        banishments.put(uuid, banishedUntil);
+    }
+
+    /**
+     * Gets the time until which a player is banished. Safe to call from
+     * any thread.
+     * @param uuid The UUID of the player.
+     * @return The time until which the player is banished, or
+     * {@link PlayerRecord#NONE} if the player is not banished.
+     */
+    public long getBanishedUntil(UUID uuid)
+    {
+        Long banishedUntil = banishments.get(uuid);
+        return banishedUntil == null ? PlayerRecord.NONE : banishedUntil;
+    }
+
+    /**
+     * Gets the number of players that are banished at a time.
+     * @param now The time.
+     * @return The number of players banished until the time or later.
+     */
+    public int count(long now)
+    {
+        return size - lowerBound(now);
+    }
+
+    /**
+     * Gets the banishments that have not expired at a time, in the order
+     * in which they expire. The first entries are the next players to be
+     * unbanished.
+     * @param now The time.
+     * @param offset The number of banishments to skip.
+     * @param limit The maximum number of banishments to get.
+     * @return The banishments.
+     */
+    public List<Entry> get(long now, int offset, int limit)
+    {
+        int from = lowerBound(now) + Math.max(offset, 0);
+        int to = (int) Math.min((long) from + limit, size);
+
+        List<Entry> entries = new ArrayList<Entry>(Math.max(to - from, 0));
+        for(int i = from; i < to; i++)
+        {
+            entries.add(new Entry(new UUID(mostSignificantBits[i], leastSignificantBits[i]), banishedUntil[i]));
+        }
+        return entries;
+    }
+
+    /**
+     * Removes the banishments that have expired at a time.
+     * @param now The time.
+     * @return The number of banishments removed.
+     */
+    public int removeExpired(long now)
+    {
+        int expired = lowerBound(now);
+        if(expired == 0)
+        {
+            return 0;
+        }
+
+        for(int i = 0; i < expired; i++)
+        {
+            banishments.remove(new UUID(mostSignificantBits[i], leastSignificantBits[i]));
+        }
+        size -= expired;
+        System.arraycopy(banishedUntil, expired, banishedUntil, 0, size);
+        System.arraycopy(mostSignificantBits, expired, mostSignificantBits, 0, size);
+        System.arraycopy(leastSignificantBits, expired, leastSignificantBits, 0, size);
+        return expired;
+    }
+
+    /**
+     * Finds the first banishment that has not expired at a time.
+     * @param now The time.
+     * @return The index of the first banishment until the time or later.
+     */
+    private int lowerBound(long now)
+    {
+        int low = 0;
+        int high = size;
+        while(low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if(banishedUntil[mid] < now)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds a banishment.
+     * @param banishedUntil The time until which the player is banished.
+     * @param msb The most significant bits of the UUID of the player.
+     * @param lsb The least significant bits of the UUID of the player.
+     * @return The index of the banishment, or (-(insertion point) - 1) if
+     * the index does not hold it.
+     */
+    private int search(long banishedUntil, long msb, long lsb)
+    {
+        int low = 0;
+        int high = size - 1;
+        while(low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(this.banishedUntil[mid], this.mostSignificantBits[mid], this.leastSignificantBits[mid],
+                banishedUntil, msb, lsb);
+            if(cmp < 0)
+            {
+                low = mid + 1;
+            }
+            else if(cmp > 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Grows the arrays to hold at least a number of banishments.
+     * @param capacity The number of banishments.
+     */
+    private void ensureCapacity(int capacity)
+    {
+        if(capacity <= banishedUntil.length)
+        {
+            return;
+        }
+
+        int length = Math.max(capacity, banishedUntil.length * 2);
+        banishedUntil = Arrays.copyOf(banishedUntil, length);
+        mostSignificantBits = Arrays.copyOf(mostSignificantBits, length);
+        leastSignificantBits = Arrays.copyOf(leastSignificantBits, length);
+    }
+
+    /**
+     * Compares two banishments by expiry time, then by UUID.
+     * @return A negative number, zero, or a positive number if the first
+     * banishment is ordered before, the same as, or after the second.
+     */
+    private static int compare(long untilA, long msbA, long lsbA, long untilB, long msbB, long lsbB)
+    {
+        if(untilA != untilB)
+        {
+            return untilA < untilB ? -1 : 1;
+        }
+        if(msbA != msbB)
+        {
+            return msbA < msbB ? -1 : 1;
+        }
+        return lsbA < lsbB ? -1 : (lsbA == lsbB ? 0 : 1);
+    }
+}
@@ -0,0 +1,899 @@
+package org.kepow.customhardcore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Storage backend that keeps all player records in a compact binary file,
+ * data.bin. The file is memory-mapped for reading and writing, and every
+ * record is read and updated in place at its offset in the mapping. New
+ * records take the slot of a deleted record, or are appended after the
+ * last slot, growing the file. A flush forces the changed pages to disk.
+ *
+ * The records are not copied into memory. An open-addressing hash table
+ * of slot numbers, keyed by world group and UUID, finds the slot of a
+ * player; the keys themselves are read from the mapping.
+ *
+ * A crash during a flush can leave records half-written. Records are laid
+ * out such that none crosses a page, so a record is written to disk
+ * together with all of its fields. The journal generations that hold the
+ * changes of that flush are only deleted once it has completed, so they
+ * are replayed over the records that were not written on the next start.
+ *
+ * The file is never resized or replaced while it is mapped, which Windows
+ * does not allow: the mapping is released first and mapped again after.
+ *
+ * File layout (big-endian): magic "CHCB" (int), version (int), offset of
+ * the first record (int), number of world groups (int), and per world
+ * group its name length (short) and name (UTF-8). The header is padded up
+ * to the first record, a multiple of the page size, leaving room for 
+ * world groups to be added in place. Every record is 40 bytes: UUID (two
+ * longs), world group index plus one (int), deaths (int), banished until
+ * (long) and regeneration start time (long). A world group of 0 marks a
+ * free slot. Every page holds 102 records, followed by 16 bytes of
+ * padding.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class BinaryStorage implements StorageBackend
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x43484342; // "CHCB"
+    private static final int VERSION = 3;
+    private static final int RECORD_SIZE = 40;
+    private static final int PAGE_SIZE = 4096;
+    private static final int RECORDS_PER_PAGE = PAGE_SIZE / RECORD_SIZE;
+    private static final int HEADER_SIZE = PAGE_SIZE;
+    private static final int INITIAL_PAGES = 16;
+
+    private static final int GROUP = 16;
+    private static final int DEATHS = 20;
+    private static final int BANISHED_UNTIL = 24;
+    private static final int REGENERATION_START_TIME = 32;
+
+    private final File dataFile;
+
+    private File openFile;
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+    private int dataOffset;
+    private int headerEnd;
+    private int slots;
+
+    private final List<String> groupNames;
+    private final Map<String, Integer> groupIndices;
+
+    // Slot plus one per table entry, 0 for an empty entry
+    private int[] index;
+    private int indexSize;
+    private int[] freeSlots;
+    private int freeCount;
+
+    private boolean modified;
+    private long pendingBytes;
+    private long bytesWritten;
+
+    /**
+     * Constructor. Opens the data file. If it does not exist yet, the
+     * records of the YAML data file are migrated.
+     * @param dataFile The binary data file.
+     * @param yamlFile The YAML data file to migrate from.
+     * @throws IOException
+     */
+    public BinaryStorage(File dataFile, File yamlFile) throws IOException
+    {
+        this.dataFile = dataFile;
+        this.groupNames = new ArrayList<String>();
+        this.groupIndices = new HashMap<String, Integer>();
+
+        if(dataFile.exists())
+        {
+            int version = readVersion();
+            if(version == 1 || version == 2)
+            {
+                convert(version);
+            }
+            else if(version != VERSION)
+            {
+                throw new IOException(dataFile + " has unsupported version " + version + ".");
+            }
+        }
+        else if(yamlFile.exists())
+        {
+            migrate(new YamlStorage(yamlFile));
+        }
+
+        if(!dataFile.exists())
+        {
+            create(dataFile, HEADER_SIZE);
+        }
+        open(dataFile);
+    }
+
+    /**
+     * Reads the version of the data file.
+     * @return The version.
+     * @throws IOException If the file is not a data file.
+     */
+    private int readVersion() throws IOException
+    {
+        RandomAccessFile in = new RandomAccessFile(dataFile, "r");
+        try
+        {
+            if(in.length() < 8 || in.readInt() != MAGIC)
+            {
+                throw new IOException(dataFile + " is not a CustomHardcore data file.");
+            }
+            return in.readInt();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Creates an empty data file.
+     * @param target The file to create.
+     * @param dataOffset The offset of the first record.
+     * @throws IOException
+     */
+    private static void create(File target, int dataOffset) throws IOException
+    {
+        RandomAccessFile out = new RandomAccessFile(target, "rw");
+        try
+        {
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dataOffset);
+            out.writeInt(0);
+            out.setLength(dataOffset);
+            out.getChannel().force(true);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Opens and maps a data file, and indexes its records.
+     * @param target The file to open.
+     * @throws IOException
+     */
+    private void open(File target) throws IOException
+    {
+        openFile = target;
+        file = new RandomAccessFile(target, "rw");
+        try
+        {
+            map(file.length());
+
+            buffer.position(8);
+            dataOffset = buffer.getInt();
+            int groupCount = buffer.getInt();
+            if(dataOffset < 16 || dataOffset % PAGE_SIZE != 0 || dataOffset > buffer.capacity())
+            {
+                throw new IOException(target + " is damaged.");
+            }
+
+            groupNames.clear();
+            groupIndices.clear();
+            for(int i = 0; i < groupCount; i++)
+            {
+                byte[] name = new byte[buffer.getShort()];
+                buffer.get(name);
+                groupIndices.put(new String(name, UTF8), groupNames.size());
+                groupNames.add(new String(name, UTF8));
+            }
+            headerEnd = buffer.position();
+            slots = (buffer.capacity() - dataOffset) / PAGE_SIZE * RECORDS_PER_PAGE;
+
+            index = new int[tableSize(slots)];
+            indexSize = 0;
+            freeSlots = new int[Math.max(slots, 16)];
+            freeCount = 0;
+            for(int slot = slots - 1; slot >= 0; slot--)
+            {
+                if(buffer.getInt(offset(slot) + GROUP) == 0)
+                {
+                    freeSlots[freeCount++] = slot;
+                }
+                else
+                {
+                    insertIndex(slot);
+                }
+            }
+        }
+        catch(IOException e)
+        {
+            unmap();
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the data file, growing it to a length if it is shorter. The
+     * file must not be mapped.
+     * @param length The length of the file to map.
+     * @throws IOException
+     */
+    private void map(long length) throws IOException
+    {
+        if(length > Integer.MAX_VALUE)
+        {
+            throw new IOException(dataFile + " is too large to map.");
+        }
+        if(file.length() < length)
+        {
+            file.setLength(length);
+        }
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+
+    /**
+     * Releases the mapping of the data file. Changes written to it still
+     * reach the file.
+     */
+    private void unmap()
+    {
+        if(buffer != null)
+        {
+            MappedByteBuffer mapping = buffer;
+            buffer = null;
+            release(mapping);
+        }
+    }
+
+    /**
+     * Imports all records of another storage into a new data file, which
+     * is moved over the data file once complete.
+     * @param from The storage to import from.
+     * @throws IOException
+     */
+    private void migrate(YamlStorage from) throws IOException
+    {
+        Map<String, List<PlayerRecord>> groups = new HashMap<String, List<PlayerRecord>>();
+        for(String worldGroup : from.getWorldGroups())
+        {
+            final List<PlayerRecord> records = new ArrayList<PlayerRecord>();
+            from.scan(worldGroup, new Visitor()
+            {
+                public void visit(PlayerRecord record)
+                {
+                    records.add(record);
+                }
+            });
+            groups.put(worldGroup, records);
+        }
+        from.close();
+
+        replaceWith(groups);
+        PluginState.getPlugin().getLogger().info("Migrated the player data to " + dataFile.getName() + ".");
+    }
+
+    /**
+     * Converts a data file of an older version to the current version.
+     * Version 1 was rewritten as a whole on every flush; version 2 was
+     * updated in place, but its records did not keep to pages.
+     * @param version The version of the data file.
+     * @throws IOException
+     */
+    private void convert(int version) throws IOException
+    {
+        Map<String, List<PlayerRecord>> groups = new HashMap<String, List<PlayerRecord>>();
+        RandomAccessFile in = new RandomAccessFile(dataFile, "r");
+        MappedByteBuffer old = null;
+        try
+        {
+            FileChannel channel = in.getChannel();
+            old = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            old.position(8);
+
+            int dataOffset = version == 1 ? 0 : old.getInt();
+            List<List<PlayerRecord>> groupRecords = new ArrayList<List<PlayerRecord>>();
+            int groupCount = old.getInt();
+            for(int i = 0; i < groupCount; i++)
+            {
+                byte[] name = new byte[old.getShort()];
+                old.get(name);
+                List<PlayerRecord> records = new ArrayList<PlayerRecord>();
+                groups.put(new String(name, UTF8), records);
+                groupRecords.add(records);
+            }
+
+            int count;
+            if(version == 1)
+            {
+                count = old.getInt();
+            }
+            else
+            {
+                old.position(dataOffset);
+                count = old.remaining() / RECORD_SIZE;
+            }
+            if(old.remaining() < (long) count * RECORD_SIZE)
+            {
+                throw new IOException(dataFile + " is truncated.");
+            }
+            for(int i = 0; i < count; i++)
+            {
+                UUID uuid = new UUID(old.getLong(), old.getLong());
+                int group = old.getInt();
+                int deaths = old.getInt();
+                long banishedUntil = old.getLong();
+                long regenerationStartTime = old.getLong();
+                if(version == 2)
+                {   // Version 2 marks free slots with 0 and counts world groups from 1
+                    if(group == 0)
+                    {
+                        continue;
+                    }
+                    group--;
+                }
+                groupRecords.get(group).add(new PlayerRecord(uuid, deaths, banishedUntil, regenerationStartTime));
+            }
+        }
+        finally
+        {
+            if(old != null)
+            {
+                release(old);
+            }
+            in.close();
+        }
+
+        replaceWith(groups);
+        PluginState.getPlugin().getLogger().info("Converted " + dataFile.getName() + " to version " + VERSION + ".");
+    }
+
+    /**
+     * Writes records to a new data file and moves it over the data file.
+     * @param groups The records by world group.
+     * @throws IOException
+     */
+    private void replaceWith(Map<String, List<PlayerRecord>> groups) throws IOException
+    {
+        File temp = new File(dataFile.getParentFile(), dataFile.getName() + ".tmp");
+        create(temp, HEADER_SIZE);
+        open(temp);
+        try
+        {
+            for(Map.Entry<String, List<PlayerRecord>> entry : groups.entrySet())
+            {
+                upsertPlayers(entry.getKey(), entry.getValue());
+            }
+            flush();
+        }
+        finally
+        {
+            close();
+        }
+        move(temp, dataFile);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#loadPlayer(java.lang.String, java.util.UUID)
+     */
+    public synchronized PlayerRecord loadPlayer(String worldGroup, UUID uuid)
+    {
+        Integer group = groupIndices.get(worldGroup);
+        if(group == null)
+        {
+            return null;
+        }
+
+        int slot = find(group + 1, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        return slot < 0 ? null : read(slot, uuid);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#upsertPlayers(java.lang.String, java.util.Collection)
+     */
+    public synchronized void upsertPlayers(String worldGroup, Collection<PlayerRecord> records) throws IOException
+    {
+        if(records.isEmpty())
+        {
+            return;
+        }
+
+        int group = groupIndex(worldGroup) + 1;
+        for(PlayerRecord record : records)
+        {
+            long msb = record.getUniqueId().getMostSignificantBits();
+            long lsb = record.getUniqueId().getLeastSignificantBits();
+            int slot = find(group, msb, lsb);
+            if(slot < 0)
+            {
+                slot = allocate();
+                int offset = offset(slot);
+                buffer.putLong(offset, msb);
+                buffer.putLong(offset + 8, lsb);
+                buffer.putInt(offset + GROUP, group);
+                insertIndex(slot);
+            }
+
+            int offset = offset(slot);
+            buffer.putInt(offset + DEATHS, record.getDeaths());
+            buffer.putLong(offset + BANISHED_UNTIL, record.getBanishedUntil());
+            buffer.putLong(offset + REGENERATION_START_TIME, record.getRegenerationStartTime());
+            pendingBytes += RECORD_SIZE;
+        }
+        modified = true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#deletePlayers(java.lang.String, java.util.Collection)
+     */
+    public synchronized void deletePlayers(String worldGroup, Collection<UUID> uuids)
+    {
+        Integer group = groupIndices.get(worldGroup);
+        if(group == null || uuids.isEmpty())
+        {
+            return;
+        }
+
+        for(UUID uuid : uuids)
+        {
+            int slot = find(group + 1, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if(slot >= 0)
+            {
+                removeIndex(slot);
+                buffer.putInt(offset(slot) + GROUP, 0);
+                if(freeCount == freeSlots.length)
+                {
+                    freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+                }
+                freeSlots[freeCount++] = slot;
+                pendingBytes += RECORD_SIZE;
+                modified = true;
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#scan(java.lang.String, org.kepow.customhardcore.StorageBackend.Visitor)
+     */
+    public synchronized void scan(String worldGroup, Visitor visitor)
+    {
+        Integer group = groupIndices.get(worldGroup);
+        if(group == null)
+        {
+            return;
+        }
+
+        for(int slot = 0; slot < slots; slot++)
+        {
+            int offset = offset(slot);
+            if(buffer.getInt(offset + GROUP) == group + 1)
+            {
+                visitor.visit(read(slot, new UUID(buffer.getLong(offset), buffer.getLong(offset + 8))));
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#flush()
+     */
+    public synchronized void flush() throws IOException
+    {
+        if(!modified)
+        {
+            return;
+        }
+
+        buffer.force();
+        file.getChannel().force(true);
+        bytesWritten += pendingBytes;
+        pendingBytes = 0;
+        modified = false;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#getBytesWritten()
+     */
+    public synchronized long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#close()
+     */
+    public synchronized void close()
+    {
+        // Changes are written to the mapping as they are made; those that
+        // have not been flushed may still reach the file
+        unmap();
+        index = null;
+        try
+        {
+            file.close();
+        }
+        catch(IOException e)
+        {
+            PluginState.getPlugin().getLogger().severe("Could not close " + dataFile.getName() + ": " + e);
+        }
+    }
+
+    /**
+     * Reads the record in a slot.
+     * @param slot The slot.
+     * @param uuid The UUID of the player in the slot.
+     * @return The record.
+     */
+    private PlayerRecord read(int slot, UUID uuid)
+    {
+        int offset = offset(slot);
+        return new PlayerRecord(uuid, buffer.getInt(offset + DEATHS),
+            buffer.getLong(offset + BANISHED_UNTIL), buffer.getLong(offset + REGENERATION_START_TIME));
+    }
+
+    /**
+     * Gets the offset of a slot in the file.
+     * @param slot The slot.
+     * @return The offset of the slot.
+     */
+    private int offset(int slot)
+    {
+        return dataOffset + slot / RECORDS_PER_PAGE * PAGE_SIZE + slot % RECORDS_PER_PAGE * RECORD_SIZE;
+    }
+
+    /**
+     * Gets the index of a world group, adding it to the header if the file
+     * does not have it yet.
+     * @param worldGroup The world group.
+     * @return The index of the world group.
+     * @throws IOException
+     */
+    private int groupIndex(String worldGroup) throws IOException
+    {
+        Integer group = groupIndices.get(worldGroup);
+        if(group != null)
+        {
+            return group;
+        }
+
+        byte[] name = worldGroup.getBytes(UTF8);
+        if(headerEnd + 2 + name.length > dataOffset)
+        {
+            int newDataOffset = Math.max(dataOffset * 2, headerEnd + 2 + name.length);
+            grow(slots, (newDataOffset + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE);
+        }
+
+        // Write the name before counting it, such that a crash in between
+        // leaves a valid header
+        buffer.putShort(headerEnd, (short) name.length);
+        for(int i = 0; i < name.length; i++)
+        {
+            buffer.put(headerEnd + 2 + i, name[i]);
+        }
+        headerEnd += 2 + name.length;
+        buffer.putInt(12, groupNames.size() + 1);
+        pendingBytes += 2 + name.length;
+        modified = true;
+
+        groupIndices.put(worldGroup, groupNames.size());
+        groupNames.add(worldGroup);
+        return groupNames.size() - 1;
+    }
+
+    /**
+     * Takes a free slot, growing the file if there is none.
+     * @return The slot.
+     * @throws IOException
+     */
+    private int allocate() throws IOException
+    {
+        if(freeCount == 0)
+        {
+            grow(Math.max(slots * 2, INITIAL_PAGES * RECORDS_PER_PAGE), dataOffset);
+        }
+        return freeSlots[--freeCount];
+    }
+
+    /**
+     * Grows the file to a number of slots. The records keep their slots.
+     * If the header has to grow as well, the file is rewritten to a new
+     * file that is moved over the data file, as the records move. The
+     * file is unmapped while it is resized or replaced.
+     * @param newSlots The number of slots, a multiple of the number of
+     * records per page.
+     * @param newDataOffset The offset of the first record, a multiple of
+     * the page size.
+     * @throws IOException
+     */
+    private void grow(int newSlots, int newDataOffset) throws IOException
+    {
+        if(newDataOffset != dataOffset)
+        {
+            File temp = new File(openFile.getParentFile(), openFile.getName() + ".grow");
+            RandomAccessFile out = new RandomAccessFile(temp, "rw");
+            try
+            {
+                out.setLength(0);
+                ByteBuffer header = ByteBuffer.allocate(headerEnd);
+                for(int i = 0; i < headerEnd; i++)
+                {
+                    header.put(i, buffer.get(i));
+                }
+                header.putInt(8, newDataOffset);
+                while(header.hasRemaining())
+                {
+                    out.getChannel().write(header);
+                }
+
+                // Records keep their place in their page, as the data offset
+                // stays a multiple of the page size
+                ByteBuffer records = buffer.duplicate();
+                records.position(dataOffset).limit(buffer.capacity());
+                out.getChannel().position(newDataOffset);
+                while(records.hasRemaining())
+                {
+                    out.getChannel().write(records);
+                }
+                out.setLength(length(newDataOffset, newSlots));
+                out.getChannel().force(true);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            unmap();
+            file.close();
+            move(temp, openFile);
+            file = new RandomAccessFile(openFile, "rw");
+            dataOffset = newDataOffset;
+        }
+        else
+        {
+            unmap();
+        }
+
+        map(length(dataOffset, newSlots));
+
+        int added = newSlots - slots;
+        if(freeCount + added > freeSlots.length)
+        {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(freeSlots.length * 2, freeCount + added));
+        }
+        for(int slot = newSlots - 1; slot >= slots; slot--)
+        {
+            freeSlots[freeCount++] = slot;
+        }
+        slots = newSlots;
+    }
+
+    /**
+     * Gets the length of a data file.
+     * @param dataOffset The offset of the first record.
+     * @param slots The number of slots, a multiple of the number of 
+     * records per page.
+     * @return The length of the file.
+     */
+    private static long length(int dataOffset, int slots)
+    {
+        return (long) dataOffset + (long) (slots / RECORDS_PER_PAGE) * PAGE_SIZE;
+    }
+
+    /**
+     * Releases a mapping right away rather than when it is garbage 
+     * collected, such that the file can be resized or replaced. The 
+     * mapping must not be used afterwards. If the JVM does not allow
+     * this, the mapping is left to the garbage collector.
+     * @param mapping The mapping.
+     */
+    private static void release(MappedByteBuffer mapping)
+    {
+        try
+        {   // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), mapping);
+            return;
+        }
+        catch(NoSuchMethodException e)
+        {   // Java 8 and earlier, through the cleaner of the buffer
+        }
+        catch(Exception e)
+        {
+            return;
+        }
+
+        try
+        {
+            Method cleanerMethod = mapping.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(mapping);
+            if(cleaner != null)
+            {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        }
+        catch(Exception e)
+        {
+        }
+    }
+
+    /**
+     * Moves a file over another file.
+     * @param from The file to move.
+     * @param to The file to replace.
+     * @throws IOException
+     */
+    private static void move(File from, File to) throws IOException
+    {
+        try
+        {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Finds the slot of a player.
+     * @param group The index of the world group plus one.
+     * @param msb The most significant bits of the UUID of the player.
+     * @param lsb The least significant bits of the UUID of the player.
+     * @return The slot of the player, or -1 if the file does not hold the player.
+     */
+    private int find(int group, long msb, long lsb)
+    {
+        int mask = index.length - 1;
+        int entry = hash(group, msb, lsb) & mask;
+        while(index[entry] != 0)
+        {
+            int offset = offset(index[entry] - 1);
+            if(buffer.getLong(offset) == msb && buffer.getLong(offset + 8) == lsb
+                && buffer.getInt(offset + GROUP) == group)
+            {
+                return index[entry] - 1;
+            }
+            entry = (entry + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the record in a slot to the hash table.
+     * @param slot The slot.
+     */
+    private void insertIndex(int slot)
+    {
+        if((indexSize + 1) * 4 > index.length * 3)
+        {   // Keep the load factor below 0.75
+            int[] old = index;
+            index = new int[old.length * 2];
+            for(int entry : old)
+            {
+                if(entry != 0)
+                {
+                    index[emptyEntry(entry - 1)] = entry;
+                }
+            }
+        }
+
+        index[emptyEntry(slot)] = slot + 1;
+        indexSize++;
+    }
+
+    /**
+     * Removes the record in a slot from the hash table.
+     * @param slot The slot.
+     */
+    private void removeIndex(int slot)
+    {
+        int mask = index.length - 1;
+        int hole = homeEntry(slot);
+        while(index[hole] != slot + 1)
+        {
+            hole = (hole + 1) & mask;
+        }
+        indexSize--;
+
+        // Shift the entries after the removed one back, such that no
+        // probe sequence passes an empty entry before reaching its slot
+        int next = (hole + 1) & mask;
+        while(index[next] != 0)
+        {
+            int home = homeEntry(index[next] - 1);
+            if(((next - home) & mask) >= ((next - hole) & mask))
+            {
+                index[hole] = index[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        index[hole] = 0;
+    }
+
+    /**
+     * Finds the first empty entry on the probe sequence of the record in
+     * a slot.
+     * @param slot The slot.
+     * @return The empty entry.
+     */
+    private int emptyEntry(int slot)
+    {
+        int mask = index.length - 1;
+        int entry = homeEntry(slot);
+        while(index[entry] != 0)
+        {
+            entry = (entry + 1) & mask;
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the first entry on the probe sequence of the record in a slot.
+     * @param slot The slot.
+     * @return The entry.
+     */
+    private int homeEntry(int slot)
+    {
+        int offset = offset(slot);
+        return hash(buffer.getInt(offset + GROUP), buffer.getLong(offset), buffer.getLong(offset + 8))
+            & (index.length - 1);
+    }
+
+    /**
+     * Gets the size of a hash table for a number of records.
+     * @param records The number of records.
+     * @return A power of two at which the records fill at most half of the table.
+     */
+    private static int tableSize(int records)
+    {
+        int size = 64;
+        while(size < records * 2)
+        {
+            size *= 2;
+        }
+        return size;
+    }
+
+    /**
+     * Hashes the key of a record.
+     * @param group The index of the world group plus one.
+     * @param msb The most significant bits of the UUID.
+     * @param lsb The least significant bits of the UUID.
+     * @return The hash.
+     */
+    private static int hash(int group, long msb, long lsb)
+    {
+        long hash = (msb ^ lsb ^ group) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
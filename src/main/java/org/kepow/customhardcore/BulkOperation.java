@@ -0,0 +1,263 @@
+package org.kepow.customhardcore;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Class that represents an operation on many players of a world group at
+ * once, such as unbanishing everyone. The operation is applied on the main
+ * thread in slices of at most a few milliseconds per tick, and reports its
+ * progress to the sender that started it.
+ *
+ * The stored state of the players is loaded off the main thread ahead of
+ * the slices, such that applying the operation never waits for the 
+ * storage. The players changed in a slice are journaled as a single
+ * record, so a crash in the middle of the operation keeps the slices
+ * applied so far; the operation also saves all of them together once it
+ * is done.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class BulkOperation implements Runnable
+{
+    private static final long SLICE_NANOS = 5000000L; // 5 milliseconds per tick
+    private static final long REPORT_INTERVAL_MILLIS = 5000L;
+    private static final int LOAD_AHEAD = 10000; // Players loaded ahead of the slices at most
+    private static final long LOAD_WAIT_MILLIS = 50L;
+
+    /**
+     * The operations that can be applied.
+     */
+    public enum Type
+    {
+        /**
+         * Clears the deaths, banishment and life regeneration of players.
+         */
+        RESET,
+        /**
+         * Unbanishes players.
+         */
+        UNBANISH,
+        /**
+         * Gives players back a number of lives.
+         */
+        GRANT_LIVES,
+        /**
+         * Banishes players for a number of days.
+         */
+        BANISH
+    }
+
+    private final WorldManager manager;
+    private final Type type;
+    private final double amount;
+    private final UUID[] players;
+    private final CommandSender sender;
+    private final PlayerRecord[] records;
+
+    private volatile int loaded;
+    private volatile int done;
+    private int taskId;
+    private long lastReport;
+    private volatile boolean finished;
+
+    /**
+     * Constructor. Does not start applying until {@link #start()} is called.
+     * @param manager The world manager of the world group to apply the operation to.
+     * @param type The operation.
+     * @param amount The number of lives to give for {@link Type#GRANT_LIVES},
+     * the banish time in days for {@link Type#BANISH}; ignored otherwise.
+     * @param players The UUIDs of the players to apply the operation to.
+     * Duplicates are applied once.
+     * @param sender The sender to report progress to.
+     */
+    public BulkOperation(WorldManager manager, Type type, double amount, Collection<UUID> players, CommandSender sender)
+    {
+        this.manager = manager;
+        this.type = type;
+        this.amount = amount;
+        this.players = new LinkedHashSet<UUID>(players).toArray(new UUID[0]);
+        this.sender = sender;
+        this.records = new PlayerRecord[this.players.length];
+        this.taskId = -1;
+    }
+
+    /**
+     * Starts loading the players off the main thread and applying the 
+     * operation, one slice per tick.
+     */
+    public void start()
+    {
+        Bukkit.getScheduler().runTaskAsynchronously(PluginState.getPlugin(), new Runnable()
+        {
+            public void run()
+            {
+                load();
+            }
+        });
+        
+        lastReport = System.currentTimeMillis();
+        taskId = Bukkit.getScheduler().scheduleSyncRepeatingTask(PluginState.getPlugin(), this, 1, 1);
+        sender.sendMessage(Utils.prepareMessage(sender, "commands.bulkStarted",
+            "%worldGroup", manager.getWorldGroup(),
+            "%worldGroupAlias", manager.getWorldGroupAlias(),
+            "%total", players.length));
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    public void run()
+    {
+        if(PluginState.getPlugin().getWorldManagers().get(manager.getWorldGroup()) != manager)
+        {   // The world group was removed by a reload
+            finish("commands.bulkAborted");
+            return;
+        }
+
+        long deadline = System.nanoTime() + SLICE_NANOS;
+        int available = loaded;
+        manager.startJournalBatch();
+        try
+        {
+            while(done < available && System.nanoTime() < deadline)
+            {
+                if(records[done] != null)
+                {
+                    manager.offerStored(records[done]);
+                    records[done] = null;
+                }
+                apply(players[done]);
+                done++;
+            }
+        }
+        finally
+        {
+            manager.endJournalBatch();
+        }
+
+        if(done == players.length)
+        {
+            PluginState.getPlugin().save();
+            finish("commands.bulkDone");
+        }
+        else if(System.currentTimeMillis() - lastReport >= REPORT_INTERVAL_MILLIS)
+        {
+            lastReport = System.currentTimeMillis();
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.bulkProgress",
+                "%worldGroup", manager.getWorldGroup(),
+                "%worldGroupAlias", manager.getWorldGroupAlias(),
+                "%done", done,
+                "%total", players.length));
+        }
+    }
+
+    /**
+     * Gets the number of players the operation has been applied to.
+     * @return The number of players done.
+     */
+    public int getDone()
+    {
+        return this.done;
+    }
+
+    /**
+     * Gets the number of players the operation applies to.
+     * @return The number of players.
+     */
+    public int getTotal()
+    {
+        return this.players.length;
+    }
+
+    /**
+     * Gets whether the operation is done or has been aborted.
+     * @return True if the operation is no longer being applied, false otherwise.
+     */
+    public boolean isFinished()
+    {
+        return this.finished;
+    }
+
+    /**
+     * Applies the operation to a player.
+     * @param uuid The UUID of the player.
+     */
+    private void apply(UUID uuid)
+    {
+        switch(type)
+        {
+            case RESET:
+                manager.resetPlayer(uuid);
+                break;
+            case UNBANISH:
+                manager.debanish(uuid);
+                break;
+            case GRANT_LIVES:
+                manager.grantLives(uuid, (int) amount);
+                break;
+            case BANISH:
+                manager.banish(uuid, amount);
+                break;
+        }
+    }
+
+    /**
+     * Loads the stored state of the players, staying at most a fixed 
+     * number of players ahead of the slices. Called off the main thread. 
+     * Players that cannot be loaded are left to be loaded when the 
+     * operation is applied to them.
+     */
+    private void load()
+    {
+        for(int i = 0; i < players.length && !finished; i++)
+        {
+            while(i - done >= LOAD_AHEAD && !finished)
+            {
+                try
+                {
+                    Thread.sleep(LOAD_WAIT_MILLIS);
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    loaded = players.length;
+                    return;
+                }
+            }
+            
+            try
+            {
+                records[i] = manager.loadStored(players[i]);
+            }
+            catch(IOException e)
+            {
+                PluginState.getPlugin().getLogger().severe("Could not load " + players[i] 
+                    + " in world group " + manager.getWorldGroup() + ": " + e);
+            }
+            loaded = i + 1;
+        }
+    }
+
+    /**
+     * Stops applying the operation and reports how far it got.
+     * @param message The message string key to report with.
+     */
+    private void finish(String message)
+    {
+        Bukkit.getScheduler().cancelTask(taskId);
+        finished = true;
+        sender.sendMessage(Utils.prepareMessage(sender, message,
+            "%worldGroup", manager.getWorldGroup(),
+            "%worldGroupAlias", manager.getWorldGroupAlias(),
+            "%done", done,
+            "%total", players.length));
+    }
+}
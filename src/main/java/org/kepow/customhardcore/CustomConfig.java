@@ -73,6 +73,19 @@ public class CustomConfig
         return shopData;
     }
 
+    /**
+     * Get the file the config is stored in.
+     * @return The file the config is stored in.
+     */
+    public File getCustomConfigFile()
+    {
+        if (shopDataFile == null) 
+        {
+            shopDataFile = new File(PluginState.getPlugin().getDataFolder(), dataFileName);
+        }
+        return shopDataFile;
+    }
+
     /**
      * Save the custom config to file.
      */
@@ -1,25 +1,38 @@
 package org.kepow.customhardcore;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bukkit.Bukkit;
-import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.configuration.serialization.ConfigurationSerialization;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 import org.mcstats.Metrics;
 
 import com.sk89q.bukkit.util.CommandsManagerRegistration;
@@ -39,9 +52,41 @@ import com.sk89q.minecraft.util.commands.WrappedCommandException;
  */
 public class CustomHardcore extends JavaPlugin implements Listener
 {
-    private Map<String, WorldManager> worldManagers;
+    private volatile Map<String, WorldManager> worldManagers;
+    private volatile FileConfiguration config;
     private CommandsManager<CommandSender> commands;
     private JavaPlugin multiverseCore;
+    private StorageBackend storage;
+    private DataSaver dataSaver;
+    private Journal journal;
+    private PlayerNameIndex nameIndex;
+    private MetricsExporter metrics;
+    private BulkOperation bulkOperation;
+    private final Map<Player, PlayerSession> sessions = new IdentityHashMap<Player, PlayerSession>();
+    private final SaveStatistics saveStatistics = new SaveStatistics();
+    private final AtomicBoolean saveRequested = new AtomicBoolean();
+    
+    /**
+     * Constructor, used by the server to load the plugin.
+     */
+    public CustomHardcore()
+    {
+        super();
+    }
+    
+    /**
+     * Constructor for running the plugin outside of a server, against the 
+     * stub server of the tests. The plugin is then started with 
+     * {@link #start()} rather than enabled by the server.
+     * @param loader The plugin loader, which holds the server.
+     * @param description The description of the plugin.
+     * @param dataFolder The folder to keep the plugin data in.
+     * @param file The plugin jar.
+     */
+    CustomHardcore(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file)
+    {
+        super(loader, description, dataFolder, file);
+    }
     
     /**
      * Called when the plugin has been loaded and is enabled.
@@ -49,21 +94,84 @@ public class CustomHardcore extends JavaPlugin implements Listener
     @Override
     public void onEnable()
     {
-        // Setup configuration serialization
-        ConfigurationSerialization.registerClass(WorldManager.class);
-        
         // Setup events
         getServer().getPluginManager().registerEvents(this, this);
         
-        // Register the plugin in the plugin state
-        PluginState.setPlugin(this);
-        
         // Setup commands
         setupCommands();
         
+        if(!start())
+        {
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+        
+        // Get Multiverse if it is loaded
+        JavaPlugin plugin = (JavaPlugin) Bukkit.getPluginManager().getPlugin("Multiverse-Core");
+        if(plugin != null)
+        {
+            //MultiverseCore mv = (MultiverseCore) plugin;
+            multiverseCore = plugin;
+            //mvWorldManager = mv.getMVWorldManager();
+            
+        }
+        
+        scheduleTasks();
+        
+        // Send metrics
+        try 
+        {
+            Metrics mcstats = new Metrics(this);
+            mcstats.start();
+        } 
+        catch (Exception e) 
+        {
+            
+        }
+    }
+    
+    /**
+     * Loads the configuration, opens the data storage, and sets up the 
+     * world managers, replaying the journal into them. Registers nothing
+     * with the server, such that the plugin can run outside of one; 
+     * {@link #onEnable()} registers the events, commands and tasks.
+     * @return True if the plugin was started, false if the data storage 
+     * could not be opened.
+     */
+    boolean start()
+    {
+        // Setup configuration serialization
+        ConfigurationSerialization.registerClass(WorldGroupData.class);
+        
+        // Register the plugin in the plugin state
+        PluginState.setPlugin(this);
+        
         // Setup configs
         this.saveDefaultConfig();
         PluginState.prepareCustomConfigs();
+        Timings.setEnabled(getConfig().getBoolean("timings", (Boolean) Default.VALUES.get("timings")));
+        
+        // Open the data storage
+        try
+        {
+            storage = openStorage();
+        }
+        catch(IOException e)
+        {
+            getLogger().severe("Could not open the data storage, disabling: " + e);
+            return false;
+        }
+        PluginState.setStorage(storage);
+        
+        // Export metrics over JMX and to a file
+        metrics = new MetricsExporter(new File(getDataFolder(), "metrics.prom"), saveStatistics);
+        metrics.setWritingFile(getConfig().getBoolean("metricsFile", (Boolean) Default.VALUES.get("metricsFile")));
+        PluginState.setMetrics(metrics);
+        dataSaver = new DataSaver(storage, saveStatistics, metrics);
+        
+        // Load the index of player names
+        nameIndex = new PlayerNameIndex(new File(getDataFolder(), "names.bin"));
+        PluginState.setNameIndex(nameIndex);
         
         // Load world configuration and register it with the plugin state
         WorldConfig worldConfig = new WorldConfig(getConfig().getConfigurationSection("worldConfig").getValues(false));
@@ -71,92 +179,242 @@ public class CustomHardcore extends JavaPlugin implements Listener
         
         setWorldManagers();
         
-        // Get Multiverse if it is loaded
-        JavaPlugin plugin = (JavaPlugin) Bukkit.getPluginManager().getPlugin("Multiverse-Core");
-        if(plugin != null)
+        // Replay the changes made since the last save, and start journaling new changes
+        journal = new Journal(getDataFolder());
+        int replayed = journal.replay(worldManagers);
+        if(replayed > 0)
         {
-            //MultiverseCore mv = (MultiverseCore) plugin;
-            multiverseCore = plugin;
-            //mvWorldManager = mv.getMVWorldManager();
-            
+            getLogger().info("Replayed " + replayed + " journal records.");
         }
+        journal.open();
+        PluginState.setJournal(journal);
+        
+        metrics.start();
+        return true;
+    }
+    
+    /**
+     * Schedules the repeating tasks of the plugin: saving and evicting 
+     * idle players, and processing deadlines.
+     */
+    void scheduleTasks()
+    {
         // Set up scheduled task
         final long sleep = 20*60*1;
         Bukkit.getScheduler().scheduleSyncRepeatingTask(PluginState.getPlugin(), new Runnable()
         { 
             public void run() 
             {
+                evictIdlePlayers();
                 save();
             } 
         }, sleep, sleep);
         
-        // Send metrics
-        try 
+        // Set up expiry task
+        Bukkit.getScheduler().scheduleSyncRepeatingTask(PluginState.getPlugin(), new Runnable()
+        { 
+            public void run() 
+            {
+                processDeadlines();
+            } 
+        }, 20, 20);
+    }
+    
+    /**
+     * Opens the storage backend configured with the "storage" option.
+     * @return The storage backend.
+     * @throws IOException
+     */
+    private StorageBackend openStorage() throws IOException
+    {
+        String type = getConfig().getString("storage", (String) Default.VALUES.get("storage"));
+        
+        if(type.equalsIgnoreCase("sqlite"))
         {
-            Metrics metrics = new Metrics(this);
-            metrics.start();
-        } 
-        catch (Exception e) 
+            return new SqliteStorage(new File(getDataFolder(), "data.db"), 
+                PluginState.getDataCustomConfig().getCustomConfigFile());
+        }
+        else if(type.equalsIgnoreCase("binary"))
         {
-            
+            return new BinaryStorage(new File(getDataFolder(), "data.bin"), 
+                PluginState.getDataCustomConfig().getCustomConfigFile());
+        }
+        else
+        {
+            if(!type.equalsIgnoreCase("yaml"))
+            {
+                getLogger().warning("Unknown storage type \"" + type + "\", using yaml.");
+            }
+            return new YamlStorage(PluginState.getDataCustomConfig().getCustomConfigFile());
         }
     }
     
     /**
-     * Set the world managers (i.e., "load" them from the configuration).
+     * Set the world managers for all configured world groups. Player
+     * data is loaded from the storage when it is first used.
      */
     private void setWorldManagers()
     {
         WorldConfig worldConfig = PluginState.getWorldConfig();
         
-        // Populate world managers
         worldManagers = new HashMap<String, WorldManager>();
-        if(PluginState.getDataCustomConfig().getCustomConfig().contains("worldManagers"))
+        for(String group : worldConfig.getWorldGroups())
+        {
+            worldManagers.put(group, new WorldManager(group));
+        }
+    }
+    
+    /**
+     * Reloads the plugin configuration. The configuration is read and 
+     * validated off the main thread, and then applied on the main thread.
+     * The world managers of world groups that still exist keep the state 
+     * of their players; only their settings are replaced.
+     * @param sender The sender to report the result to.
+     */
+    public void reload(final CommandSender sender)
+    {
+        Bukkit.getScheduler().runTaskAsynchronously(this, new Runnable()
         {
-            List<WorldManager> managers = (List<WorldManager>) PluginState.getDataCustomConfig().getCustomConfig().getList("worldManagers");
-            for(WorldManager manager : managers)
+            public void run()
             {
-                worldManagers.put(manager.getWorldGroup(), manager);
+                final FileConfiguration config;
+                final WorldConfig worldConfig;
+                final Map<String, BanIndex> banishments = new HashMap<String, BanIndex>();
+                try
+                {
+                    config = loadConfig();
+                    ConfigurationSection worldConfigSection = config.getConfigurationSection("worldConfig");
+                    if(worldConfigSection == null)
+                    {
+                        throw new IllegalArgumentException("worldConfig is missing");
+                    }
+                    worldConfig = new WorldConfig(worldConfigSection.getValues(false));
+                    
+                    // Index the banishments of new world groups here rather 
+                    // than on the main thread. Wait for pending saves first, 
+                    // as a group removed by an earlier reload may be back
+                    dataSaver.flush();
+                    Map<String, WorldManager> current = worldManagers;
+                    for(String group : worldConfig.getWorldGroups())
+                    {
+                        if(!current.containsKey(group))
+                        {
+                            banishments.put(group, WorldManager.indexBanishments(group));
+                        }
+                    }
+                }
+                catch(final Exception e)
+                {
+                    Bukkit.getScheduler().runTask(CustomHardcore.this, new Runnable()
+                    {
+                        public void run()
+                        {
+                            sender.sendMessage(Utils.prepareMessage(sender, "commands.reloadFailed", 
+                                "%error", String.valueOf(e.getMessage())));
+                        }
+                    });
+                    return;
+                }
+                
+                Bukkit.getScheduler().runTask(CustomHardcore.this, new Runnable()
+                {
+                    public void run()
+                    {
+                        applyConfig(config, worldConfig, banishments);
+                        sender.sendMessage(Utils.prepareMessage(sender, "commands.reload"));
+                    }
+                });
             }
+        });
+    }
+    
+    /**
+     * Reads and parses config.yml, with the configuration in the plugin
+     * jar as defaults.
+     * @return The configuration.
+     * @throws Exception If config.yml could not be read or parsed.
+     */
+    private FileConfiguration loadConfig() throws Exception
+    {
+        YamlConfiguration config = new YamlConfiguration();
+        config.load(new File(getDataFolder(), "config.yml"));
+        
+        InputStream defaults = getResource("config.yml");
+        if(defaults != null)
+        {
+            config.setDefaults(YamlConfiguration.loadConfiguration(new InputStreamReader(defaults, "UTF-8")));
         }
         
-        // Populate world managers with groups that have not been loaded from file but are specified
-        // in the config
+        return config;
+    }
+    
+    /**
+     * Swaps in a reloaded configuration. World managers are created for
+     * new world groups, and dropped for removed world groups after their
+     * changes have been queued for saving.
+     * @param config The main configuration.
+     * @param worldConfig The world configuration.
+     * @param banishments The banishment indices of the world groups that 
+     * had no world manager when the configuration was read.
+     */
+    private void applyConfig(FileConfiguration config, WorldConfig worldConfig, Map<String, BanIndex> banishments)
+    {
+        this.config = config;
+        PluginState.setWorldConfig(worldConfig);
+        Timings.setEnabled(config.getBoolean("timings", (Boolean) Default.VALUES.get("timings")));
+        metrics.setWritingFile(config.getBoolean("metricsFile", (Boolean) Default.VALUES.get("metricsFile")));
+        Messages.invalidate();
+        TimeFormatter.invalidate();
+        
+        save();
+        
+        Map<String, WorldManager> managers = new HashMap<String, WorldManager>();
         for(String group : worldConfig.getWorldGroups())
         {
-            if(!worldManagers.containsKey(group))
+            WorldManager manager = worldManagers.get(group);
+            if(manager != null)
             {
-                worldManagers.put(group, new WorldManager(group));
+                manager.applySettings(worldConfig.getGroupSettings(group));
             }
+            else if(banishments.containsKey(group))
+            {
+                manager = new WorldManager(group, banishments.get(group));
+            }
+            else
+            {   // Removed by a reload applied after this one was read
+                manager = new WorldManager(group);
+            }
+            managers.put(group, manager);
         }
+        worldManagers = managers;
+        metrics.retainGroups(managers.keySet());
         
-        // Clean world managers by deleting world managers for groups that are no longer configured
-        for(String key : worldManagers.keySet())
+        for(PlayerSession session : sessions.values())
         {
-            if(!worldConfig.getWorldGroups().contains(key))
-            {
-                worldManagers.remove(key);
-            }
+            session.update(managers);
         }
     }
     
-    /**
-     * Reloads the plugin configuration.
+    /*
+     * (non-Javadoc)
+     * @see org.bukkit.plugin.java.JavaPlugin#getConfig()
      */
-    public void reload()
+    @Override
+    public FileConfiguration getConfig()
     {
-        // First reload the main configuration
-        reloadConfig();
-        
-        // Reload the world configuration and register it with the plugin state
-        WorldConfig worldConfig = new WorldConfig(getConfig().getConfigurationSection("worldConfig").getValues(false));
-        PluginState.setWorldConfig(worldConfig);
-        
-        // Reload the world manager data
-        PluginState.getDataCustomConfig().reloadCustomConfig();
-        
-        // Re-set the reloaded world managers
-        setWorldManagers();
+        FileConfiguration config = this.config;
+        return config != null ? config : super.getConfig();
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see org.bukkit.plugin.java.JavaPlugin#reloadConfig()
+     */
+    @Override
+    public void reloadConfig()
+    {
+        this.config = null;
+        super.reloadConfig();
     }
     
     /**
@@ -187,6 +445,7 @@ public class CustomHardcore extends JavaPlugin implements Listener
     
     @Override
     public boolean onCommand(CommandSender sender, Command cmd, String commandLabel, String[] args) {
+        long start = Timings.start();
         try 
         {
             this.commands.execute(cmd.getName(), args, sender, sender);
@@ -219,10 +478,28 @@ public class CustomHardcore extends JavaPlugin implements Listener
         {
             sender.sendMessage(ChatColor.RED + e.getMessage());
         }
+        finally
+        {
+            if(start != 0)
+            {
+                Timings.stop(Timings.command(args.length > 0 ? args[0] : cmd.getName()), start);
+            }
+        }
  
         return true;
     }
     
+    /**
+     * Completes the player and group arguments of /chc. Completions are
+     * served from the prefix tries of the player name index and the 
+     * world configuration, so they never enumerate the server's players.
+     */
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command cmd, String alias, String[] args)
+    {
+        return CustomHardcoreCommands.complete(sender, args);
+    }
+    
     /**
      * Gets the world managers.
      * @return The world managers.
@@ -251,13 +528,188 @@ public class CustomHardcore extends JavaPlugin implements Listener
     }
     
     /**
-     * Saves plugin data to file.
+     * Starts a bulk operation, unless another one is still being applied.
+     * @param operation The bulk operation.
+     * @return True if the operation was started, false otherwise.
+     */
+    public boolean startBulkOperation(BulkOperation operation)
+    {
+        if(bulkOperation != null && !bulkOperation.isFinished())
+        {
+            return false;
+        }
+        
+        bulkOperation = operation;
+        operation.start();
+        return true;
+    }
+    
+    /**
+     * Saves plugin data. The changed records are collected on the calling
+     * thread, and written to the storage on a background thread. Once 
+     * written, the journal generations the save covers are deleted. If no
+     * world manager has changed since the last save, and no earlier save
+     * is waiting to be written again, nothing is written.
+     * Must be called on the main thread.
      */
-    private void save()
+    public void save()
     {
-        List<WorldManager> managers = new ArrayList<WorldManager>(worldManagers.values());
-        PluginState.getDataCustomConfig().getCustomConfig().set("worldManagers", managers);
-        PluginState.getDataCustomConfig().saveCustomConfig();
+        long start = Timings.start();
+        try
+        {
+            nameIndex.flush();
+            
+            if(!isDirty() && !dataSaver.hasFailedChanges())
+            {
+                saveStatistics.recordSkippedSave(worldManagers.size());
+                return;
+            }
+            
+            long generation = journal.rotate();
+            dataSaver.saveAsync(collectChanges(), compaction(generation));
+        }
+        finally
+        {
+            Timings.stop(Timings.SAVE, start);
+        }
+    }
+    
+    /**
+     * Saves plugin data on the next tick. However often this is called 
+     * before then, the data is saved once. Can be called from any thread.
+     */
+    public void requestSave()
+    {
+        if(saveRequested.compareAndSet(false, true))
+        {
+            Bukkit.getScheduler().runTask(this, new Runnable()
+            {
+                public void run()
+                {
+                    saveRequested.set(false);
+                    save();
+                }
+            });
+        }
+    }
+    
+    /**
+     * Evicts the state of idle offline players from memory, as configured 
+     * with the "playerCache" options. Nothing is evicted while a save is
+     * being written, as an evicted player could otherwise be loaded again
+     * before their last changes are in the storage.
+     */
+    private void evictIdlePlayers()
+    {
+        if(!dataSaver.isIdle())
+        {
+            return;
+        }
+        
+        long idleTime = 1000L * getConfig().getLong("playerCache.idleTime", 
+            ((Number) Default.VALUES.get("playerCache.idleTime")).longValue());
+        int maxPlayers = getConfig().getInt("playerCache.maxPlayers", 
+            ((Number) Default.VALUES.get("playerCache.maxPlayers")).intValue());
+        
+        for(WorldManager manager : worldManagers.values())
+        {
+            manager.evictIdlePlayers(idleTime, maxPlayers);
+            manager.evictPrefetched(idleTime);
+        }
+    }
+    
+    /**
+     * Expires banishments and regenerates lives that are due, processing
+     * at most a fixed number of deadlines per run to bound the time spent 
+     * on a single tick. Then publishes the counts of the world managers
+     * to their metrics.
+     */
+    private void processDeadlines()
+    {
+        final int maxDeadlines = 200;
+        
+        long now = Utils.getCurrentTime();
+        boolean notify = getConfig().getBoolean("notifyExpiry", (Boolean) Default.VALUES.get("notifyExpiry"));
+        
+        int processed = 0;
+        for(WorldManager manager : worldManagers.values())
+        {
+            processed += manager.processDeadlines(now, maxDeadlines - processed, notify);
+            if(processed >= maxDeadlines)
+            {
+                break;
+            }
+        }
+        
+        for(WorldManager manager : worldManagers.values())
+        {
+            manager.updateMetrics(now);
+        }
+    }
+    
+    /**
+     * Gets whether any world manager has changed since the last save.
+     * @return True if any world manager has changed, false otherwise.
+     */
+    private boolean isDirty()
+    {
+        for(WorldManager manager : worldManagers.values())
+        {
+            if(manager.isDirty())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Gets the task that deletes the journal generations covered by a
+     * save.
+     * @param generation The journal generation started when the changes were collected.
+     * @return The task.
+     */
+    private Runnable compaction(final long generation)
+    {
+        return new Runnable()
+        {
+            public void run()
+            {
+                journal.deleteBefore(generation);
+            }
+        };
+    }
+    
+    /**
+     * Collects the changed records of all world managers.
+     * @return The changes of the world managers that changed.
+     */
+    private List<WorldGroupChanges> collectChanges()
+    {
+        int recordsWritten = 0;
+        
+        List<WorldGroupChanges> changes = new ArrayList<WorldGroupChanges>();
+        for(WorldManager manager : worldManagers.values())
+        {
+            if(manager.isDirty())
+            {
+                WorldGroupChanges groupChanges = manager.collectChanges();
+                recordsWritten += groupChanges.size();
+                changes.add(groupChanges);
+            }
+        }
+        
+        saveStatistics.recordSave(changes.size(), worldManagers.size() - changes.size(), recordsWritten);
+        return changes;
+    }
+    
+    /**
+     * Gets the statistics of the data saves.
+     * @return The save statistics.
+     */
+    public SaveStatistics getSaveStatistics()
+    {
+        return saveStatistics;
     }
     
     /**
@@ -266,7 +718,22 @@ public class CustomHardcore extends JavaPlugin implements Listener
     @Override
     public void onDisable()
     {
+        if(dataSaver == null)
+        {   // The plugin did not finish enabling
+            return;
+        }
+        
+        // Write the final save and block until all data is on disk
         save();
+        dataSaver.shutdown();
+        journal.close();
+        storage.close();
+        nameIndex.close();
+        metrics.shutdown();
+        PluginState.setJournal(null);
+        PluginState.setStorage(null);
+        PluginState.setNameIndex(null);
+        PluginState.setMetrics(null);
     }
     
     /**
@@ -276,12 +743,17 @@ public class CustomHardcore extends JavaPlugin implements Listener
     @EventHandler(priority=EventPriority.MONITOR)
     public void onPlayerDeath(PlayerDeathEvent event)
     {
-        Player player = event.getEntity();
-        World world = player.getWorld();
-        
-        String worldGroup = PluginState.getWorldConfig().getGroupFromWorld(world);
-        
-        worldManagers.get(worldGroup).handleDeath(player, event);
+        long start = Timings.start();
+        try
+        {
+            Player player = event.getEntity();
+            
+            getSession(player).getWorldManager().handleDeath(player, event);
+        }
+        finally
+        {
+            Timings.stop(Timings.PLAYER_DEATH, start);
+        }
     }
     
     /**
@@ -291,12 +763,19 @@ public class CustomHardcore extends JavaPlugin implements Listener
     @EventHandler(priority=EventPriority.LOW)
     public void onPlayerChangedWorldEvent(PlayerChangedWorldEvent event)
     {
-        Player player = event.getPlayer();
-        World world = player.getWorld();
-        
-        String worldGroup = PluginState.getWorldConfig().getGroupFromWorld(world);
-        
-        worldManagers.get(worldGroup).handleWorldJoin(player);
+        long start = Timings.start();
+        try
+        {
+            Player player = event.getPlayer();
+            
+            PlayerSession session = getSession(player);
+            session.update(worldManagers);
+            session.getWorldManager().handleWorldJoin(player);
+        }
+        finally
+        {
+            Timings.stop(Timings.PLAYER_CHANGED_WORLD, start);
+        }
     }
     
     /**
@@ -306,12 +785,83 @@ public class CustomHardcore extends JavaPlugin implements Listener
     @EventHandler(priority=EventPriority.LOW)
     public void onPlayerRespawnEvent(PlayerRespawnEvent event)
     {
-        Player player = event.getPlayer();
-        World world = player.getWorld();
-        
-        String worldGroup = PluginState.getWorldConfig().getGroupFromWorld(world);
-        
-        worldManagers.get(worldGroup).handleRespawn(player, event);
+        long start = Timings.start();
+        try
+        {
+            Player player = event.getPlayer();
+            
+            getSession(player).getWorldManager().handleRespawn(player, event);
+        }
+        finally
+        {
+            Timings.stop(Timings.PLAYER_RESPAWN, start);
+        }
+    }
+    
+    /**
+     * Called off the main thread when a player is about to log in. Loads the
+     * player's state in all world groups, such that joining does not have to
+     * wait for the storage, and denies the login if the player is banished 
+     * from a world group that denies banished players logging in.
+     * @param event
+     */
+    @EventHandler(priority=EventPriority.HIGH)
+    public void onAsyncPlayerPreLoginEvent(AsyncPlayerPreLoginEvent event)
+    {
+        long start = Timings.start();
+        try
+        {
+            if(event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED)
+            {
+                return;
+            }
+            
+            long now = Utils.getCurrentTime();
+            for(WorldManager manager : worldManagers.values())
+            {
+                try
+                {
+                    manager.prefetch(event.getUniqueId());
+                }
+                catch(IOException e)
+                {
+                    getLogger().severe("Could not prefetch " + event.getName() + ": " + e);
+                }
+                
+                // The stored record misses banishments made since the last
+                // save; the ban index holds them all
+                long banishedUntil = manager.lookupBanishment(event.getUniqueId());
+                if(manager.isDenyingLogin() && banishedUntil != PlayerRecord.NONE && banishedUntil >= now)
+                {
+                    FormattedTime time = TimeFormatter.format(banishedUntil);
+                
+                    event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_BANNED, Utils.prepareMessage("kicks.banished", 
+                        "%worldGroup", manager.getWorldGroup(),
+                        "%worldGroupAlias", manager.getWorldGroupAlias(),
+                        "%year", time.getYear(),
+                        "%month", time.getMonth(),
+                        "%day", time.getDay(),
+                        "%hours", time.getHours(),
+                        "%minutes", time.getMinutes(),
+                        "%seconds", time.getSeconds()));
+                    return;
+                }
+            }
+        }
+        finally
+        {
+            Timings.stop(Timings.PLAYER_PRE_LOGIN, start);
+        }
+    }
+    
+    /**
+     * Called when a world is unloaded.
+     * @param event
+     */
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void onWorldUnloadEvent(WorldUnloadEvent event)
+    {
+        PluginState.getWorldConfig().forgetWorld(event.getWorld());
     }
     
     /**
@@ -321,11 +871,49 @@ public class CustomHardcore extends JavaPlugin implements Listener
     @EventHandler(priority=EventPriority.LOW)
     public void onPlayerJoinEvent(PlayerJoinEvent event)
     {
-        Player player = event.getPlayer();
-        World world = player.getWorld();
-        
-        String worldGroup = PluginState.getWorldConfig().getGroupFromWorld(world);
-        
-        worldManagers.get(worldGroup).handleWorldJoin(player);
+        long start = Timings.start();
+        try
+        {
+            Player player = event.getPlayer();
+            
+            nameIndex.update(player.getUniqueId(), player.getName());
+            
+            PlayerSession session = new PlayerSession(player, worldManagers);
+            sessions.put(player, session);
+            session.getWorldManager().handleWorldJoin(player);
+        }
+        finally
+        {
+            Timings.stop(Timings.PLAYER_JOIN, start);
+        }
+    }
+    
+    /**
+     * Called when a player leaves the game.
+     * @param event
+     */
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void onPlayerQuitEvent(PlayerQuitEvent event)
+    {
+        long start = Timings.start();
+        sessions.remove(event.getPlayer());
+        Timings.stop(Timings.PLAYER_QUIT, start);
+    }
+    
+    /**
+     * Gets the session of an online player. Must be called on the main
+     * thread.
+     * @param player The player.
+     * @return The session of the player.
+     */
+    public PlayerSession getSession(Player player)
+    {
+        PlayerSession session = sessions.get(player);
+        if(session == null)
+        {   // The player was already online when the plugin was enabled
+            session = new PlayerSession(player, worldManagers);
+            sessions.put(player, session);
+        }
+        return session;
     }
 }
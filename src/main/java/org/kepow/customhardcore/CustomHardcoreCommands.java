@@ -1,12 +1,16 @@
 package org.kepow.customhardcore;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
+import java.util.UUID;
 
+import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -20,6 +24,9 @@ import com.sk89q.minecraft.util.commands.NestedCommand;
 
 public class CustomHardcoreCommands
 {
+    private static final int MAX_COMPLETIONS = 50;
+    private static final int BANLIST_PAGE_SIZE = 10;
+    
     public static class ParentCommand
     {
         @Command(aliases = { "chc" }, desc = "All CustomHardcore commands.", min = 0, max = -1)
@@ -34,7 +41,7 @@ public class CustomHardcoreCommands
     {
         String target = args.getString(0, null);
         String who;
-        Player targetPlayer = getPlayer(sender, target);
+        OfflinePlayer targetPlayer = getPlayer(sender, target);
         if(target == null)
         {
             who = "self";
@@ -53,7 +60,7 @@ public class CustomHardcoreCommands
         Map<String, WorldManager> worldManagers = PluginState.getPlugin().getHardcoreWorldManagers();
         for(WorldManager worldManager : worldManagers.values())
         {
-            if(worldManager.isBanished(targetPlayer))
+            if(worldManager.isBanished(targetPlayer.getUniqueId()))
             {
                 banished.add(worldManager);
             }
@@ -61,35 +68,29 @@ public class CustomHardcoreCommands
         
         if(banished.size() == 0)
         {
-            sender.sendMessage(Utils.prepareMessage("commands.banishInfoNotBanished", 
-                "%player", targetPlayer.getName(),
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.banishInfoNotBanished", 
+                "%player", getName(targetPlayer),
                 "%who", who));
         }
         else
         {
-            sender.sendMessage(Utils.prepareMessage("commands.banishInfoBanishedHeader", 
-                "%player", targetPlayer.getName(),
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.banishInfoBanishedHeader", 
+                "%player", getName(targetPlayer),
                 "%who", who));
             
             for(WorldManager worldManager : banished)
             {
-                StringBuilder year = new StringBuilder();
-                StringBuilder month = new StringBuilder();
-                StringBuilder day = new StringBuilder();
-                StringBuilder hour = new StringBuilder();
-                StringBuilder minute = new StringBuilder();
-                StringBuilder second = new StringBuilder();
-                Utils.prepareTimeStrings(worldManager.banishedUntil(targetPlayer), year, month, day, hour, minute, second);
+                FormattedTime time = TimeFormatter.format(worldManager.banishedUntil(targetPlayer.getUniqueId()));
                 
-                sender.sendMessage(Utils.prepareMessage("commands.banishInfoBanishedEntry", 
+                sender.sendMessage(Utils.prepareMessage(sender, "commands.banishInfoBanishedEntry", 
                     "%worldGroup", worldManager.getWorldGroup(),
                     "%worldGroupAlias", worldManager.getWorldGroupAlias(),
-                    "%year", year,
-                    "%month", month,
-                    "%day", day,
-                    "%hours", hour,
-                    "%minutes", minute,
-                    "%seconds", second));
+                    "%year", time.getYear(),
+                    "%month", time.getMonth(),
+                    "%day", time.getDay(),
+                    "%hours", time.getHours(),
+                    "%minutes", time.getMinutes(),
+                    "%seconds", time.getSeconds()));
             }
         }
     }
@@ -105,14 +106,14 @@ public class CustomHardcoreCommands
         Map<String, WorldManager> hardcore = PluginState.getPlugin().getHardcoreWorldManagers();
         if(hardcore.size() == 0)
         {
-            sender.sendMessage(Utils.prepareMessage("commands.hardcoreGroupsNoGroups"));
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.hardcoreGroupsNoGroups"));
         }
         else
         {
-            sender.sendMessage(Utils.prepareMessage("commands.hardcoreGroupsHeader"));
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.hardcoreGroupsHeader"));
             for(WorldManager worldManager : hardcore.values())
             {
-                sender.sendMessage(Utils.prepareMessage("commands.hardcoreGroupsEntry", 
+                sender.sendMessage(Utils.prepareMessage(sender, "commands.hardcoreGroupsEntry", 
                     "%worldGroup", worldManager.getWorldGroup(),
                     "%worldGroupAlias", worldManager.getWorldGroupAlias()));
             }
@@ -124,7 +125,7 @@ public class CustomHardcoreCommands
     {
         String target = args.getString(0, null);
         String who;
-        Player targetPlayer = getPlayer(sender, target);
+        OfflinePlayer targetPlayer = getPlayer(sender, target);
         if(target == null)
         {
             who = "self";
@@ -143,46 +144,40 @@ public class CustomHardcoreCommands
         
         if(hardcoreManagers.size() == 0)
         {
-            sender.sendMessage(Utils.prepareMessage("commands.hardcoreGroupsNoGroups", 
-                "%player", targetPlayer.getName(),
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.hardcoreGroupsNoGroups", 
+                "%player", getName(targetPlayer),
                 "%who", who));
         }
         else
         {
-            sender.sendMessage(Utils.prepareMessage("commands.livesInfoHeader", 
-                "%player", targetPlayer.getName(),
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.livesInfoHeader", 
+                "%player", getName(targetPlayer),
                 "%who", who));
             
             for(WorldManager worldManager : hardcoreManagers.values())
             {
-                sender.sendMessage(Utils.prepareMessage("commands.livesInfoEntry", 
+                sender.sendMessage(Utils.prepareMessage(sender, "commands.livesInfoEntry", 
                     "%worldGroup", worldManager.getWorldGroup(),
                     "%worldGroupAlias", worldManager.getWorldGroupAlias(),
-                    "%lives", worldManager.getLivesLeft(targetPlayer)));
+                    "%lives", worldManager.getLivesLeft(targetPlayer.getUniqueId())));
                 if(worldManager.isRegenerationEnabled())
                 {
-                    long regenerationAt = worldManager.regenerationAt(targetPlayer);
+                    long regenerationAt = worldManager.regenerationAt(targetPlayer.getUniqueId());
                     
                     if(regenerationAt != -1)
                     {
-                        StringBuilder year = new StringBuilder();
-                        StringBuilder month = new StringBuilder();
-                        StringBuilder day = new StringBuilder();
-                        StringBuilder hour = new StringBuilder();
-                        StringBuilder minute = new StringBuilder();
-                        StringBuilder second = new StringBuilder();
-                        Utils.prepareTimeStrings(regenerationAt, year, month, day, hour, minute, second);
+                        FormattedTime time = TimeFormatter.format(regenerationAt);
                         
-                        sender.sendMessage(Utils.prepareMessage("commands.livesInfoRegenerationEntry", 
+                        sender.sendMessage(Utils.prepareMessage(sender, "commands.livesInfoRegenerationEntry", 
                             "%worldGroup", worldManager.getWorldGroup(),
                             "%worldGroupAlias", worldManager.getWorldGroupAlias(),
-                            "%lives", worldManager.getLivesLeft(targetPlayer),
-                            "%year", year,
-                            "%month", month,
-                            "%day", day,
-                            "%hours", hour,
-                            "%minutes", minute,
-                            "%seconds", second));
+                            "%lives", worldManager.getLivesLeft(targetPlayer.getUniqueId()),
+                            "%year", time.getYear(),
+                            "%month", time.getMonth(),
+                            "%day", time.getDay(),
+                            "%hours", time.getHours(),
+                            "%minutes", time.getMinutes(),
+                            "%seconds", time.getSeconds()));
                     }
                 }
             }
@@ -202,21 +197,21 @@ public class CustomHardcoreCommands
         
         WorldManager manager = PluginState.getPlugin().getWorldManagers().get(target);
         
-        sender.sendMessage(Utils.prepareMessage("commands.groupInfoHeader", 
+        sender.sendMessage(Utils.prepareMessage(sender, "commands.groupInfoHeader", 
             "%worldGroup", manager.getWorldGroup(),
             "%worldGroupAlias", manager.getWorldGroupAlias()));
         if(manager.isEnabled())
         {
-            sender.sendMessage(Utils.prepareMessage("commands.groupInfoHardcore", 
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.groupInfoHardcore", 
                 "%hardcore", "true"));
-            sender.sendMessage(Utils.prepareMessage("commands.groupInfoLives", 
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.groupInfoLives", 
                 "%lives", manager.numLives()));
-            sender.sendMessage(Utils.prepareMessage("commands.banishTime", 
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.banishTime", 
                 "%banishTime", manager.banishTime()));
         }
         else
         {
-            sender.sendMessage(Utils.prepareMessage("commands.groupInfoHardcore", 
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.groupInfoHardcore", 
                 "%hardcore", "false"));
         }
     }
@@ -234,7 +229,7 @@ public class CustomHardcoreCommands
         
         if(PluginState.getWorldConfig().isDefaultGroup(target))
         {
-            sender.sendMessage(Utils.prepareMessage("commands.groupWorldsIsDefault", 
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.groupWorldsIsDefault", 
                 "%worldGroup", target,
                 "%worldGroupAlias", PluginState.getWorldConfig().getGroupAlias(target)));
             return;
@@ -244,13 +239,13 @@ public class CustomHardcoreCommands
         
         if(worlds.size() == 0)
         {
-            sender.sendMessage(Utils.prepareMessage("commands.groupWorldsNoWorlds", 
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.groupWorldsNoWorlds", 
                 "%worldGroup", target,
                 "%worldGroupAlias", PluginState.getWorldConfig().getGroupAlias(target)));
         }
         else
         {
-            sender.sendMessage(Utils.prepareMessage("commands.groupWorldsHeader", 
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.groupWorldsHeader", 
                 "%worldGroup", target,
                 "%worldGroupAlias", PluginState.getWorldConfig().getGroupAlias(target)));
             
@@ -262,12 +257,12 @@ public class CustomHardcoreCommands
                     {
                         String alias = MultiverseWrapper.getAlias(world);
                         
-                        sender.sendMessage(Utils.prepareMessage("commands.groupWorldsEntry", 
+                        sender.sendMessage(Utils.prepareMessage(sender, "commands.groupWorldsEntry", 
                             "%world", alias));
                     }
                     else
                     {
-                        sender.sendMessage(Utils.prepareMessage("commands.groupWorldsEntry", 
+                        sender.sendMessage(Utils.prepareMessage(sender, "commands.groupWorldsEntry", 
                         "%world", world));
                     }
                 }
@@ -284,7 +279,7 @@ public class CustomHardcoreCommands
         }
         
         String targetPlayerString = args.getString(0);
-        Player targetPlayer = getPlayer(sender, targetPlayerString);
+        OfflinePlayer targetPlayer = getPlayer(sender, targetPlayerString);
         
         String targetGroup = args.getString(1, null);
         targetGroup = getWorldGroup(sender, targetGroup);
@@ -298,12 +293,12 @@ public class CustomHardcoreCommands
         }
         
         WorldManager manager = hardcoreManagers.get(targetGroup);
-        manager.banish(targetPlayer);
+        manager.banish(targetPlayer.getUniqueId());
         
-        sender.sendMessage(Utils.prepareMessage("commands.banish",
+        sender.sendMessage(Utils.prepareMessage(sender, "commands.banish",
             "%worldGroup", manager.getWorldGroup(),
             "%worldGroupAlias", manager.getWorldGroupAlias(),
-            "%player", targetPlayer.getName()));
+            "%player", getName(targetPlayer)));
     }
     
     @Command(aliases={"unbanish", "unb", "u"}, desc="Unbanish a player", usage="<player> - player to banish. [group] - The group to unbanish the player from.", min = 1, max = 2)
@@ -315,7 +310,7 @@ public class CustomHardcoreCommands
         }
         
         String targetPlayerString = args.getString(0);
-        Player targetPlayer = getPlayer(sender, targetPlayerString);
+        OfflinePlayer targetPlayer = getPlayer(sender, targetPlayerString);
         
         String targetGroup = args.getString(1, null);
         targetGroup = getWorldGroup(sender, targetGroup);
@@ -329,12 +324,266 @@ public class CustomHardcoreCommands
         }
         
         WorldManager manager = hardcoreManagers.get(targetGroup);
-        manager.debanish(targetPlayer);
+        manager.debanish(targetPlayer.getUniqueId());
+        
+        sender.sendMessage(Utils.prepareMessage(sender, "commands.unbanish",
+            "%worldGroup", manager.getWorldGroup(),
+            "%worldGroupAlias", manager.getWorldGroupAlias(),
+            "%player", getName(targetPlayer)));
+    }
+    
+    @Command(aliases={"banlist", "bl"}, desc="List the players banished from a group", usage="[group] - The group to list banished players of. [page] - The page to show.", min = 0, max = 2)
+    public static void banlist(final CommandContext args, CommandSender sender) throws Exception 
+    {
+        if(!sender.hasPermission("customhardcore.info.banlist"))
+        {
+            throw(new CommandPermissionsException());
+        }
+        
+        String target = args.getString(0, null);
+        target = getWorldGroup(sender, target);
+        int page = args.getInteger(1, 1);
+        
+        WorldManager manager = PluginState.getPlugin().getWorldManagers().get(target);
+        
+        int count = manager.getBanishedCount();
+        if(count == 0)
+        {
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.banlistEmpty", 
+                "%worldGroup", manager.getWorldGroup(),
+                "%worldGroupAlias", manager.getWorldGroupAlias()));
+            return;
+        }
+        
+        int pages = (count + BANLIST_PAGE_SIZE - 1) / BANLIST_PAGE_SIZE;
+        if(page < 1 || page > pages)
+        {
+            throw(new CommandException("That page does not exist."));
+        }
         
-        sender.sendMessage(Utils.prepareMessage("commands.unbanish",
+        sender.sendMessage(Utils.prepareMessage(sender, "commands.banlistHeader", 
             "%worldGroup", manager.getWorldGroup(),
             "%worldGroupAlias", manager.getWorldGroupAlias(),
-            "%player", targetPlayer.getName()));
+            "%count", count,
+            "%page", page,
+            "%pages", pages));
+        
+        for(BanIndex.Entry entry : manager.getBanishedPlayers((page - 1) * BANLIST_PAGE_SIZE, BANLIST_PAGE_SIZE))
+        {
+            String name = PluginState.getNameIndex().getName(entry.getUniqueId());
+            FormattedTime time = TimeFormatter.format(entry.getBanishedUntil());
+            
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.banlistEntry", 
+                "%player", name != null ? name : entry.getUniqueId().toString(),
+                "%year", time.getYear(),
+                "%month", time.getMonth(),
+                "%day", time.getDay(),
+                "%hours", time.getHours(),
+                "%minutes", time.getMinutes(),
+                "%seconds", time.getSeconds()));
+        }
+    }
+    
+    @Command(aliases={"resetgroup"}, desc="Reset the deaths, banishments and life regeneration of all players in a group", usage="<group> - The group to reset.", min = 1, max = 1)
+    public static void resetGroup(final CommandContext args, final CommandSender sender) throws Exception 
+    {
+        final WorldManager manager = getBulkWorldManager(sender, args.getString(0), false);
+        
+        // The stored players are scanned off the main thread
+        Bukkit.getScheduler().runTaskAsynchronously(PluginState.getPlugin(), new Runnable()
+        {
+            public void run()
+            {
+                final List<UUID> stored;
+                try
+                {
+                    stored = manager.getStoredPlayers();
+                }
+                catch(IOException e)
+                {
+                    PluginState.getPlugin().getLogger().severe("Could not scan world group " 
+                        + manager.getWorldGroup() + ": " + e);
+                    return;
+                }
+                
+                Bukkit.getScheduler().runTask(PluginState.getPlugin(), new Runnable()
+                {
+                    public void run()
+                    {
+                        List<UUID> players = new ArrayList<UUID>(stored);
+                        players.addAll(manager.getResidentPlayers());
+                        startBulkOperation(sender, new BulkOperation(manager, BulkOperation.Type.RESET, 0, players, sender));
+                    }
+                });
+            }
+        });
+    }
+    
+    @Command(aliases={"unbanishall"}, desc="Unbanish all players from a group", usage="<group> - The group to unbanish all players from.", min = 1, max = 1)
+    public static void unbanishAll(final CommandContext args, CommandSender sender) throws Exception 
+    {
+        WorldManager manager = getBulkWorldManager(sender, args.getString(0), false);
+        
+        List<UUID> players = new ArrayList<UUID>();
+        for(BanIndex.Entry entry : manager.getBanishedPlayers(0, Integer.MAX_VALUE))
+        {
+            players.add(entry.getUniqueId());
+        }
+        
+        startBulkOperation(sender, new BulkOperation(manager, BulkOperation.Type.UNBANISH, 0, players, sender));
+    }
+    
+    @Command(aliases={"grantlives"}, desc="Give players back lives in a group", usage="<group> - The group to give lives in. <lives> - The number of lives to give. <players...> - The players to give lives to.", min = 3, max = -1)
+    public static void grantLives(final CommandContext args, CommandSender sender) throws Exception 
+    {
+        WorldManager manager = getBulkWorldManager(sender, args.getString(0), true);
+        int lives = args.getInteger(1);
+        if(lives < 1)
+        {
+            throw(new CommandException("The number of lives has to be positive."));
+        }
+        
+        List<UUID> players = new ArrayList<UUID>();
+        StringBuilder unknown = new StringBuilder();
+        for(int i = 2; i < args.argsLength(); i++)
+        {
+            UUID uuid = PluginState.getNameIndex().getUniqueId(args.getString(i));
+            if(uuid != null)
+            {
+                players.add(uuid);
+            }
+            else
+            {
+                unknown.append(unknown.length() > 0 ? ", " : "").append(args.getString(i));
+            }
+        }
+        
+        if(unknown.length() > 0)
+        {
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.bulkUnknownPlayers", 
+                "%players", unknown.toString()));
+        }
+        
+        startBulkOperation(sender, new BulkOperation(manager, BulkOperation.Type.GRANT_LIVES, lives, players, sender));
+    }
+    
+    @Command(aliases={"banishfile"}, desc="Banish the players listed in a file from a group", usage="<group> - The group to banish the players from. <file> - A file in the plugin folder with one UUID per line. [days] - The banish time.", min = 2, max = 3)
+    public static void banishFile(final CommandContext args, final CommandSender sender) throws Exception 
+    {
+        final WorldManager manager = getBulkWorldManager(sender, args.getString(0), true);
+        final double banishTime = args.argsLength() > 2 ? args.getDouble(2) : manager.banishTime();
+        
+        File folder = PluginState.getPlugin().getDataFolder().getCanonicalFile();
+        final File file = new File(folder, args.getString(1)).getCanonicalFile();
+        if(!file.getPath().startsWith(folder.getPath() + File.separator) || !file.isFile())
+        {
+            throw(new CommandException("That file was not found in the plugin folder."));
+        }
+        
+        // The file is read off the main thread
+        Bukkit.getScheduler().runTaskAsynchronously(PluginState.getPlugin(), new Runnable()
+        {
+            public void run()
+            {
+                final List<UUID> players = new ArrayList<UUID>();
+                int invalid = 0;
+                try
+                {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+                    try
+                    {
+                        String line;
+                        while((line = reader.readLine()) != null)
+                        {
+                            line = line.trim();
+                            if(line.isEmpty() || line.startsWith("#"))
+                            {
+                                continue;
+                            }
+                            
+                            try
+                            {
+                                players.add(UUID.fromString(line));
+                            }
+                            catch(IllegalArgumentException e)
+                            {
+                                invalid++;
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        reader.close();
+                    }
+                }
+                catch(IOException e)
+                {
+                    PluginState.getPlugin().getLogger().severe("Could not read " + file + ": " + e);
+                    return;
+                }
+                
+                final int invalidLines = invalid;
+                Bukkit.getScheduler().runTask(PluginState.getPlugin(), new Runnable()
+                {
+                    public void run()
+                    {
+                        if(invalidLines > 0)
+                        {
+                            sender.sendMessage(Utils.prepareMessage(sender, "commands.bulkInvalidLines", 
+                                "%lines", invalidLines,
+                                "%file", file.getName()));
+                        }
+                        startBulkOperation(sender, new BulkOperation(manager, BulkOperation.Type.BANISH, banishTime, players, sender));
+                    }
+                });
+            }
+        });
+    }
+    
+    @Command(aliases="perf", desc="Show how long the plugin's event handlers, saves and commands take", usage="[on|off|reset] - Enable, disable or reset the timings.", min = 0, max = 1)
+    public static void perf(final CommandContext args, CommandSender sender) throws Exception 
+    {
+        if(!sender.hasPermission("customhardcore.admin.perf"))
+        {
+            throw(new CommandPermissionsException());
+        }
+        
+        String action = args.getString(0, "");
+        if(action.equalsIgnoreCase("on") || action.equalsIgnoreCase("off"))
+        {
+            Timings.setEnabled(action.equalsIgnoreCase("on"));
+            sender.sendMessage(Utils.prepareMessage(sender, Timings.isEnabled() ? "commands.perfEnabled" : "commands.perfDisabled"));
+            return;
+        }
+        else if(action.equalsIgnoreCase("reset"))
+        {
+            Timings.reset();
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.perfReset"));
+            return;
+        }
+        else if(action.length() > 0)
+        {
+            throw(new CommandException("Expected on, off or reset."));
+        }
+        
+        List<Timings.Entry> entries = Timings.getEntries();
+        sender.sendMessage(Utils.prepareMessage(sender, "commands.perfHeader",
+            "%minutes", (int) ((System.currentTimeMillis() - Timings.getSince()) / 60000L)));
+        if(!Timings.isEnabled())
+        {
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.perfOff"));
+        }
+        
+        for(Timings.Entry entry : entries)
+        {
+            LatencyHistogram histogram = entry.getHistogram();
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.perfEntry",
+                "%operation", entry.getName(),
+                "%count", histogram.getCount(),
+                "%p50", histogram.getPercentile(50) / 1000.0,
+                "%p99", histogram.getPercentile(99) / 1000.0,
+                "%max", histogram.getMax() / 1000.0));
+        }
     }
     
     @Command(aliases="reload", desc="Reload the configuration (but not the data!)", min = 0, max = 0)
@@ -345,11 +594,120 @@ public class CustomHardcoreCommands
             throw(new CommandPermissionsException());
         }
         
-        PluginState.getPlugin().reload();
-        sender.sendMessage(Utils.prepareMessage("commands.reload"));
+        PluginState.getPlugin().reload(sender);
     }
     
-    private static Player getPlayer(CommandSender sender, String target) throws Exception
+    /**
+     * Completes the player and group arguments of the commands.
+     * @param sender The sender completing the command.
+     * @param args The arguments of /chc, the last one being completed.
+     * @return The completions.
+     */
+    public static List<String> complete(CommandSender sender, String[] args)
+    {
+        if(args.length < 2)
+        {
+            return new ArrayList<String>();
+        }
+        
+        String command = args[0].toLowerCase();
+        String prefix = args[args.length - 1];
+        int argument = args.length - 1;
+        
+        if(command.equals("info") || command.equals("i") || command.equals("lives") || command.equals("l"))
+        {
+            if(argument == 1 && sender.hasPermission("customhardcore.info.player"))
+            {
+                return PluginState.getNameIndex().complete(prefix, MAX_COMPLETIONS);
+            }
+        }
+        else if(command.equals("groupinfo") || command.equals("ginfo") || command.equals("gi") 
+            || command.equals("worlds") || command.equals("w"))
+        {
+            if(argument == 1 && sender.hasPermission("customhardcore.info.group"))
+            {
+                return PluginState.getWorldConfig().completeGroupName(prefix, MAX_COMPLETIONS);
+            }
+        }
+        else if(command.equals("banlist") || command.equals("bl"))
+        {
+            if(argument == 1 && sender.hasPermission("customhardcore.info.banlist"))
+            {
+                return PluginState.getWorldConfig().completeGroupName(prefix, MAX_COMPLETIONS);
+            }
+        }
+        else if(command.equals("resetgroup") || command.equals("unbanishall") 
+            || command.equals("grantlives") || command.equals("banishfile"))
+        {
+            if(sender.hasPermission("customhardcore.admin.bulk"))
+            {
+                if(argument == 1)
+                {
+                    return PluginState.getWorldConfig().completeGroupName(prefix, MAX_COMPLETIONS);
+                }
+                else if(argument >= 3 && command.equals("grantlives"))
+                {
+                    return PluginState.getNameIndex().complete(prefix, MAX_COMPLETIONS);
+                }
+            }
+        }
+        else if(command.equals("banish") || command.equals("b"))
+        {
+            if(sender.hasPermission("customhardcore.moderator.banish"))
+            {
+                return completePlayerAndGroup(argument, prefix);
+            }
+        }
+        else if(command.equals("unbanish") || command.equals("unb") || command.equals("u"))
+        {
+            if(sender.hasPermission("customhardcore.moderator.unbanish"))
+            {
+                return completePlayerAndGroup(argument, prefix);
+            }
+        }
+        
+        return new ArrayList<String>();
+    }
+    
+    private static List<String> completePlayerAndGroup(int argument, String prefix)
+    {
+        if(argument == 1)
+        {
+            return PluginState.getNameIndex().complete(prefix, MAX_COMPLETIONS);
+        }
+        else if(argument == 2)
+        {
+            return PluginState.getWorldConfig().completeGroupName(prefix, MAX_COMPLETIONS);
+        }
+        return new ArrayList<String>();
+    }
+    
+    private static WorldManager getBulkWorldManager(CommandSender sender, String target, boolean hardcore) throws Exception
+    {
+        if(!sender.hasPermission("customhardcore.admin.bulk"))
+        {
+            throw(new CommandPermissionsException());
+        }
+        
+        String group = getWorldGroup(sender, target);
+        WorldManager manager = PluginState.getPlugin().getWorldManagers().get(group);
+        if(hardcore && !manager.isEnabled())
+        {
+            throw(new CommandException("That world group does not have hardcore mode enabled."));
+        }
+        
+        return manager;
+    }
+    
+    private static void startBulkOperation(CommandSender sender, BulkOperation operation)
+    {
+        if(!PluginState.getPlugin().startBulkOperation(operation))
+        {
+            sender.sendMessage(Utils.prepareMessage(sender, "commands.bulkBusy"));
+        }
+    }
+    
+    private static OfflinePlayer getPlayer(CommandSender sender, String target) throws Exception
     {
         if(target == null)
         {
@@ -368,8 +726,18 @@ public class CustomHardcoreCommands
                 throw(new CommandException("That player was not found."));
             }
             
-            return offlinePlayer.getPlayer();
+            return offlinePlayer;
+        }
+    }
+    
+    private static String getName(OfflinePlayer player)
+    {
+        String name = player.getName();
+        if(name == null)
+        {   // The server does not know the name of an offline player it has no data of
+            name = PluginState.getNameIndex().getName(player.getUniqueId());
         }
+        return name != null ? name : player.getUniqueId().toString();
     }
     
     private static String getWorldGroup(CommandSender sender, String target) throws Exception
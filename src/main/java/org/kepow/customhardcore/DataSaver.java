@@ -0,0 +1,187 @@
+package org.kepow.customhardcore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that writes changed player records to the storage backend on a
+ * background thread, and records how long writing took and how much was
+ * written in the save statistics and world group metrics. Changes that
+ * could not be written are kept and written again, before the newer
+ * changes, with the next save.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class DataSaver
+{
+    private final StorageBackend storage;
+    private final SaveStatistics statistics;
+    private final MetricsExporter metrics;
+    private final ExecutorService executor;
+    private final AtomicInteger pending;
+    
+    // Only replaced by the background thread
+    private volatile List<WorldGroupChanges> failedChanges;
+
+    /**
+     * Constructor.
+     * @param storage The storage backend to write to.
+     * @param statistics The save statistics to record writes in.
+     * @param metrics The metrics to record the writes of world groups in.
+     */
+    public DataSaver(StorageBackend storage, SaveStatistics statistics, MetricsExporter metrics)
+    {
+        this.storage = storage;
+        this.statistics = statistics;
+        this.metrics = metrics;
+        this.pending = new AtomicInteger();
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "CustomHardcore-DataSaver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queues changes to be written to the storage backend.
+     * @param changes The changes per world group.
+     * @param onSaved Run on the background thread once the changes, and
+     * those of all earlier saves, have been written successfully, or null.
+     */
+    public void saveAsync(final List<WorldGroupChanges> changes, final Runnable onSaved)
+    {
+        pending.incrementAndGet();
+        executor.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    List<WorldGroupChanges> toWrite = changes;
+                    if(failedChanges != null)
+                    {
+                        toWrite = new ArrayList<WorldGroupChanges>(failedChanges);
+                        toWrite.addAll(changes);
+                    }
+                    
+                    if(write(toWrite))
+                    {
+                        failedChanges = null;
+                        if(onSaved != null)
+                        {
+                            onSaved.run();
+                        }
+                    }
+                    else
+                    {
+                        failedChanges = toWrite;
+                    }
+                }
+                finally
+                {
+                    pending.decrementAndGet();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Gets whether all queued saves have been written.
+     * @return True if no saves are queued or being written and no changes
+     * are waiting to be written again, false otherwise.
+     */
+    public boolean isIdle()
+    {
+        return pending.get() == 0 && failedChanges == null;
+    }
+    
+    /**
+     * Gets whether changes of an earlier save could not be written, and 
+     * are waiting for the next save to be written again.
+     * @return True if changes are waiting to be written again, false otherwise.
+     */
+    public boolean hasFailedChanges()
+    {
+        return failedChanges != null;
+    }
+
+    /**
+     * Blocks until all queued saves have been written.
+     */
+    public void flush()
+    {
+        try
+        {
+            executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                }
+            }).get();
+        }
+        catch(Exception e)
+        {
+            PluginState.getPlugin().getLogger().severe("Could not wait for pending saves: " + e);
+        }
+    }
+
+    /**
+     * Stops the background thread. Blocks until all queued saves have
+     * been written.
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+        try
+        {
+            while(!executor.awaitTermination(10, TimeUnit.SECONDS))
+            {
+                PluginState.getPlugin().getLogger().warning("Still waiting for data to be saved...");
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the changes to the storage backend and makes them durable.
+     * @param changes The changes per world group.
+     * @return True if the changes were written, false otherwise.
+     */
+    private boolean write(List<WorldGroupChanges> changes)
+    {
+        long start = System.nanoTime();
+        long bytesWritten = storage.getBytesWritten();
+        try
+        {
+            for(WorldGroupChanges groupChanges : changes)
+            {
+                long groupStart = System.nanoTime();
+                storage.upsertPlayers(groupChanges.getWorldGroup(), groupChanges.getUpserts());
+                storage.deletePlayers(groupChanges.getWorldGroup(), groupChanges.getDeletes());
+                metrics.recordWrite(groupChanges.getWorldGroup(), System.nanoTime() - groupStart, groupChanges.size());
+            }
+            storage.flush();
+            statistics.recordWrite(System.nanoTime() - start, storage.getBytesWritten() - bytesWritten);
+            return true;
+        }
+        catch(IOException e)
+        {
+            PluginState.getPlugin().getLogger().severe("Could not save data, retrying with the next save: " + e);
+            return false;
+        }
+    }
+}
@@ -19,7 +19,14 @@ public class Default
         Map<String, Object> values = new HashMap<String, Object>();
         
         values.put("timezone", "Europe/Amsterdam");
+        values.put("storage", "yaml");
+        values.put("playerCache.idleTime", 600);
+        values.put("playerCache.maxPlayers", 10000);
+        values.put("notifyExpiry", true);
+        values.put("timings", false);
+        values.put("metricsFile", true);
         values.put("enabled", false);
+        values.put("denyLogin", false);
         values.put("lives", 1);
         values.put("banishTime", 3.0);
         values.put("lifeRegenerationTime", 0.0);
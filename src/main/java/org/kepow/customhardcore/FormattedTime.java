@@ -0,0 +1,91 @@
+package org.kepow.customhardcore;
+
+/**
+ * Class that represents a point in time split into the fields messages
+ * display it with. All fields but the year are zero-padded to two digits.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public final class FormattedTime
+{
+    private final String year;
+    private final String month;
+    private final String day;
+    private final String hours;
+    private final String minutes;
+    private final String seconds;
+    
+    /**
+     * Constructor.
+     * @param year The year.
+     * @param month The month.
+     * @param day The day of the month.
+     * @param hours The hour of the day.
+     * @param minutes The minute of the hour.
+     * @param seconds The second of the minute.
+     */
+    public FormattedTime(String year, String month, String day, String hours, String minutes, String seconds)
+    {
+        this.year = year;
+        this.month = month;
+        this.day = day;
+        this.hours = hours;
+        this.minutes = minutes;
+        this.seconds = seconds;
+    }
+    
+    /**
+     * Gets the year.
+     * @return The year.
+     */
+    public String getYear()
+    {
+        return this.year;
+    }
+    
+    /**
+     * Gets the month.
+     * @return The month, 01 to 12.
+     */
+    public String getMonth()
+    {
+        return this.month;
+    }
+    
+    /**
+     * Gets the day of the month.
+     * @return The day of the month, 01 to 31.
+     */
+    public String getDay()
+    {
+        return this.day;
+    }
+    
+    /**
+     * Gets the hour of the day.
+     * @return The hour of the day, 00 to 23.
+     */
+    public String getHours()
+    {
+        return this.hours;
+    }
+    
+    /**
+     * Gets the minute of the hour.
+     * @return The minute of the hour, 00 to 59.
+     */
+    public String getMinutes()
+    {
+        return this.minutes;
+    }
+    
+    /**
+     * Gets the second of the minute.
+     * @return The second of the minute, 00 to 59.
+     */
+    public String getSeconds()
+    {
+        return this.seconds;
+    }
+}
@@ -0,0 +1,133 @@
+package org.kepow.customhardcore;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+
+/**
+ * Class that represents the effective settings of a world group, with the
+ * settings of the default group and the hard-coded defaults applied for
+ * options the group does not specify. Instances are immutable, and can
+ * be created off the main thread: the world of the banish location is 
+ * kept by name and only looked up when the location is asked for.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public final class GroupSettings
+{
+    private final String worldGroup;
+    private final String alias;
+    private final boolean enabled;
+    private final boolean denyLogin;
+    private final int lives;
+    private final double banishTime;
+    private final double lifeRegenerationTime;
+    private final String banishWorld;
+    private final double banishX;
+    private final double banishY;
+    private final double banishZ;
+
+    /**
+     * Constructor.
+     * @param worldGroup The world group the settings are of.
+     * @param alias The alias of the world group.
+     * @param enabled Whether hardcore mode is enabled.
+     * @param denyLogin Whether banished players are denied logging in.
+     * @param lives The number of lives.
+     * @param banishTime The banish time in days.
+     * @param lifeRegenerationTime The life regeneration time in days.
+     * @param banishWorld The name of the world of the banish location.
+     * @param banishX The x coordinate of the banish location.
+     * @param banishY The y coordinate of the banish location.
+     * @param banishZ The z coordinate of the banish location.
+     */
+    public GroupSettings(String worldGroup, String alias, boolean enabled, boolean denyLogin,
+        int lives, double banishTime, double lifeRegenerationTime, 
+        String banishWorld, double banishX, double banishY, double banishZ)
+    {
+        this.worldGroup = worldGroup;
+        this.alias = alias;
+        this.enabled = enabled;
+        this.denyLogin = denyLogin;
+        this.lives = lives;
+        this.banishTime = banishTime;
+        this.lifeRegenerationTime = lifeRegenerationTime;
+        this.banishWorld = banishWorld;
+        this.banishX = banishX;
+        this.banishY = banishY;
+        this.banishZ = banishZ;
+    }
+
+    /**
+     * Gets the world group the settings are of.
+     * @return The world group the settings are of.
+     */
+    public String getWorldGroup()
+    {
+        return this.worldGroup;
+    }
+
+    /**
+     * Gets the alias of the world group.
+     * @return The alias of the world group.
+     */
+    public String getAlias()
+    {
+        return this.alias;
+    }
+
+    /**
+     * Gets whether hardcore mode is enabled for the world group.
+     * @return True if hardcore mode is enabled, false otherwise.
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * Gets whether players banished from the world group are denied logging in.
+     * @return True if banished players are denied logging in, false otherwise.
+     */
+    public boolean isDenyingLogin()
+    {
+        return this.denyLogin;
+    }
+
+    /**
+     * Gets the number of lives players have on the world group.
+     * @return The number of lives.
+     */
+    public int getLives()
+    {
+        return this.lives;
+    }
+
+    /**
+     * Gets the banish time on the world group.
+     * @return The banish time in days.
+     */
+    public double getBanishTime()
+    {
+        return this.banishTime;
+    }
+
+    /**
+     * Gets the life regeneration time on the world group.
+     * @return The life regeneration time in days.
+     */
+    public double getLifeRegenerationTime()
+    {
+        return this.lifeRegenerationTime;
+    }
+
+    /**
+     * Gets the banish location of the world group. Looks up its world, so
+     * must be called on the main thread.
+     * @return A new banish location.
+     */
+    public Location getBanishLocation()
+    {
+        return new Location(Bukkit.getWorld(this.banishWorld), this.banishX, this.banishY, this.banishZ);
+    }
+}
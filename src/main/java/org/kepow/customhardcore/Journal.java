@@ -0,0 +1,505 @@
+package org.kepow.customhardcore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Class that represents an append-only write-ahead journal of player state
+ * changes. Every record holds the complete state of one or more players in
+ * one world group, so replaying records is idempotent. Changes made
+ * together, such as a slice of a bulk operation, go in a single record. Records are written on a
+ * background thread, which fsyncs once per batch of records it drains.
+ *
+ * The journal is split into generations. Taking a snapshot rotates the
+ * journal to a new generation; once the snapshot is on disk, the older
+ * generations are folded into it and can be deleted.
+ *
+ * If the journal cannot be written, the writer stops and the journal
+ * fails: from then on records are no longer queued, and callers have to
+ * save the changes themselves instead.
+ *
+ * Record layout: length (int), CRC32 of the payload (int), and a payload of
+ * group name length (short), group name (UTF-8), number of players (int)
+ * and for every player the UUID (two longs), deaths (int), banished until
+ * (long) and regeneration start time (long).
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class Journal
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String PREFIX = "data.journal.";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PLAYER_SIZE = 16 + 4 + 8 + 8;
+
+    private static final Object ROTATE = new Object();
+    private static final Object CLOSE = new Object();
+
+    private final File folder;
+    private final BlockingQueue<Object> queue;
+    private final Thread writer;
+
+    private long generation;
+    private volatile long openGeneration;
+    private volatile boolean failed;
+
+    /**
+     * Constructor. Does not start writing until {@link #open()} is called.
+     * @param folder The folder to keep the journal files in.
+     */
+    public Journal(File folder)
+    {
+        this.folder = folder;
+        this.queue = new LinkedBlockingQueue<Object>();
+        this.writer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                writeLoop();
+            }
+        }, "CustomHardcore-Journal");
+        this.writer.setDaemon(true);
+
+        long[] generations = generations();
+        this.generation = generations.length == 0 ? 0 : generations[generations.length - 1];
+    }
+
+    /**
+     * Starts writing to a fresh journal generation.
+     */
+    public void open()
+    {
+        this.generation++;
+        this.openGeneration = this.generation;
+        writer.start();
+    }
+
+    /**
+     * Appends the state of a player in a world group to the journal.
+     * @param worldGroup The world group.
+     * @param playerRecord The state of the player.
+     * @return True if the record was queued for writing, false if the
+     * journal has failed and the record was dropped.
+     */
+    public boolean append(String worldGroup, PlayerRecord playerRecord)
+    {
+        return append(worldGroup, Collections.singletonList(playerRecord));
+    }
+
+    /**
+     * Appends the states of several players in a world group to the 
+     * journal as a single record, which is replayed entirely or not at all.
+     * @param worldGroup The world group.
+     * @param playerRecords The states of the players.
+     * @return True if the record was queued for writing, false if the
+     * journal has failed and the record was dropped.
+     */
+    public boolean append(String worldGroup, List<PlayerRecord> playerRecords)
+    {
+        if(failed)
+        {
+            return false;
+        }
+        
+        byte[] group = worldGroup.getBytes(UTF8);
+        int length = 2 + group.length + 4 + PLAYER_SIZE * playerRecords.size();
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        payload.putShort((short) group.length);
+        payload.put(group);
+        payload.putInt(playerRecords.size());
+        for(PlayerRecord playerRecord : playerRecords)
+        {
+            payload.putLong(playerRecord.getUniqueId().getMostSignificantBits());
+            payload.putLong(playerRecord.getUniqueId().getLeastSignificantBits());
+            payload.putInt(playerRecord.getDeaths());
+            payload.putLong(playerRecord.getBanishedUntil());
+            payload.putLong(playerRecord.getRegenerationStartTime());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, length);
+
+        ByteBuffer record = ByteBuffer.allocate(8 + length);
+        record.putInt(length);
+        record.putInt((int) crc.getValue());
+        record.put(payload.array());
+        record.flip();
+
+        queue.add(record);
+        return true;
+    }
+    
+    /**
+     * Gets whether the journal has failed. A failed journal writes nothing.
+     * @return True if the journal could not be written, false otherwise.
+     */
+    public boolean isFailed()
+    {
+        return failed;
+    }
+
+    /**
+     * Rotates the journal to a new generation. Records appended after this
+     * call go to the new generation.
+     * @return The new generation.
+     */
+    public long rotate()
+    {
+        this.generation++;
+        if(!failed)
+        {
+            queue.add(ROTATE);
+        }
+        return this.generation;
+    }
+
+    /**
+     * Deletes the journal generations before the given generation that are
+     * no longer being written to. Call this once a snapshot taken when
+     * rotating to the given generation has been written. Once the journal
+     * has failed, no generation is written to any more, so the generation
+     * it failed in is deleted as well: replaying it would undo changes 
+     * the snapshot holds.
+     * @param generation The oldest generation to keep.
+     */
+    public void deleteBefore(long generation)
+    {
+        long keep = failed ? generation : Math.min(generation, openGeneration);
+        for(long g : generations())
+        {
+            if(g < keep)
+            {
+                new File(folder, PREFIX + g).delete();
+            }
+        }
+    }
+
+    /**
+     * Blocks until all records appended so far have been written and synced.
+     * Returns right away if the journal has failed.
+     */
+    public void sync()
+    {
+        if(failed)
+        {
+            return;
+        }
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        queue.add(latch);
+        try
+        {
+            latch.await();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes and syncs all pending records and stops the writer.
+     */
+    public void close()
+    {
+        if(!failed)
+        {
+            queue.add(CLOSE);
+        }
+        try
+        {
+            writer.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Replays all journal generations in order on top of the given world
+     * managers. Records of world groups that do not have a manager are
+     * skipped. Replay of a generation stops at the first damaged record,
+     * which is what a crash in the middle of a write leaves behind.
+     * @param worldManagers The world managers by world group.
+     * @return The number of player states replayed.
+     */
+    public int replay(Map<String, WorldManager> worldManagers)
+    {
+        int replayed = 0;
+        for(long g : generations())
+        {
+            File file = new File(folder, PREFIX + g);
+            try
+            {
+                replayed += replay(file, worldManagers);
+            }
+            catch(IOException e)
+            {
+                PluginState.getPlugin().getLogger().severe("Could not replay journal " + file + ": " + e);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Replays a single journal file.
+     * @param file The journal file.
+     * @param worldManagers The world managers by world group.
+     * @return The number of player states replayed.
+     * @throws IOException
+     */
+    private int replay(File file, Map<String, WorldManager> worldManagers) throws IOException
+    {
+        int replayed = 0;
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while(buffer.hasRemaining() && channel.read(buffer) != -1)
+            {
+            }
+            buffer.flip();
+
+            CRC32 crc = new CRC32();
+            while(buffer.remaining() >= 8)
+            {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if(length < 2 || length > buffer.remaining())
+                {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(buffer.array(), buffer.position(), length);
+                if((int) crc.getValue() != checksum)
+                {
+                    break;
+                }
+
+                byte[] group = new byte[buffer.getShort()];
+                buffer.get(group);
+                int count = buffer.getInt();
+
+                WorldManager manager = worldManagers.get(new String(group, UTF8));
+                for(int i = 0; i < count; i++)
+                {
+                    UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+                    int deaths = buffer.getInt();
+                    long banishedUntil = buffer.getLong();
+                    long regenerationStartTime = buffer.getLong();
+
+                    if(manager != null)
+                    {
+                        manager.applyJournalRecord(new PlayerRecord(uuid, deaths, banishedUntil, regenerationStartTime));
+                        replayed++;
+                    }
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return replayed;
+    }
+
+    /**
+     * Gets the generations of the journal files on disk, in ascending order.
+     * @return The generations on disk.
+     */
+    private long[] generations()
+    {
+        String[] names = folder.list(new FilenameFilter()
+        {
+            public boolean accept(File dir, String name)
+            {
+                return name.startsWith(PREFIX);
+            }
+        });
+
+        List<Long> generations = new ArrayList<Long>();
+        if(names != null)
+        {
+            for(String name : names)
+            {
+                try
+                {
+                    generations.add(Long.parseLong(name.substring(PREFIX.length())));
+                }
+                catch(NumberFormatException e)
+                {
+                    // Not a journal file
+                }
+            }
+        }
+
+        long[] result = new long[generations.size()];
+        for(int i = 0; i < result.length; i++)
+        {
+            result[i] = generations.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * The writer thread's main loop. Drains all queued records, writes them
+     * through a buffer and syncs the journal once per batch. Fails the 
+     * journal and stops on the first write error.
+     */
+    private void writeLoop()
+    {
+        long writerGeneration = openGeneration;
+        RandomAccessFile file = null;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        List<Object> batch = new ArrayList<Object>();
+
+        try
+        {
+            file = openFile(writerGeneration);
+            boolean running = true;
+            while(running)
+            {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+
+                List<CountDownLatch> latches = new ArrayList<CountDownLatch>();
+                for(Object item : batch)
+                {
+                    if(item instanceof ByteBuffer)
+                    {
+                        ByteBuffer record = (ByteBuffer) item;
+                        if(record.remaining() > buffer.remaining())
+                        {
+                            drain(buffer, file.getChannel());
+                        }
+                        if(record.remaining() > buffer.remaining())
+                        {
+                            while(record.hasRemaining())
+                            {
+                                file.getChannel().write(record);
+                            }
+                        }
+                        else
+                        {
+                            buffer.put(record);
+                        }
+                    }
+                    else if(item == ROTATE)
+                    {
+                        drain(buffer, file.getChannel());
+                        file.getChannel().force(false);
+                        file.close();
+
+                        writerGeneration++;
+                        file = openFile(writerGeneration);
+                        openGeneration = writerGeneration;
+                    }
+                    else if(item == CLOSE)
+                    {
+                        running = false;
+                    }
+                    else if(item instanceof CountDownLatch)
+                    {
+                        latches.add((CountDownLatch) item);
+                    }
+                }
+                batch.clear();
+
+                drain(buffer, file.getChannel());
+                file.getChannel().force(false);
+
+                for(CountDownLatch latch : latches)
+                {
+                    latch.countDown();
+                }
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch(IOException e)
+        {
+            failed = true;
+            PluginState.getPlugin().getLogger().severe("Could not write to the journal, saving every change instead: " + e);
+            PluginState.getPlugin().requestSave();
+        }
+        finally
+        {
+            // Never leave threads waiting on a writer that is gone. The
+            // dropped records are still marked as changed, so the next save
+            // writes them.
+            batch.clear();
+            queue.drainTo(batch);
+            for(Object item : batch)
+            {
+                if(item instanceof CountDownLatch)
+                {
+                    ((CountDownLatch) item).countDown();
+                }
+            }
+            
+            if(file != null)
+            {
+                try
+                {
+                    file.close();
+                }
+                catch(IOException e)
+                {
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the journal file of a generation for appending.
+     * @param generation The generation.
+     * @return The opened file.
+     * @throws IOException
+     */
+    private RandomAccessFile openFile(long generation) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(new File(folder, PREFIX + generation), "rw");
+        file.seek(file.length());
+        return file;
+    }
+
+    /**
+     * Writes the contents of the buffer to the channel and clears the buffer.
+     * @param buffer The buffer.
+     * @param channel The channel.
+     * @throws IOException
+     */
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException
+    {
+        buffer.flip();
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
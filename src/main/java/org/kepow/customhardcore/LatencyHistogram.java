@@ -0,0 +1,140 @@
+package org.kepow.customhardcore;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class that counts latencies in nanoseconds in log-linear buckets, like
+ * an HDR histogram: every power of two is split into 16 buckets, so a
+ * percentile is off by at most 1/16 of its value. Latencies of up to
+ * 2^40 nanoseconds (about 18 minutes) are told apart. Recording is
+ * lock-free and does not allocate; it is safe from any thread.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = bucket(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong max;
+
+    /**
+     * Constructor. Creates an empty histogram.
+     */
+    public LatencyHistogram()
+    {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records a latency.
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos)
+    {
+        nanos = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+
+        long current = max.get();
+        while(nanos > current && !max.compareAndSet(current, nanos))
+        {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Gets the number of latencies recorded.
+     * @return The number of latencies recorded.
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Gets the highest latency recorded.
+     * @return The highest latency in nanoseconds, or 0 if none was recorded.
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Gets a percentile of the latencies recorded.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The highest latency of the bucket the percentile falls in,
+     * at most the highest latency recorded, in nanoseconds; or 0 if none
+     * was recorded.
+     */
+    public long getPercentile(double percentile)
+    {
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++)
+        {
+            total += counts.get(i);
+        }
+        if(total == 0)
+        {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts.get(i);
+            if(seen >= rank)
+            {
+                return Math.min(highestValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Clears the histogram. Latencies recorded while clearing may be
+     * partly kept.
+     */
+    public void reset()
+    {
+        for(int i = 0; i < BUCKETS; i++)
+        {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Gets the bucket of a latency.
+     * @param nanos The latency in nanoseconds.
+     * @return The index of the bucket.
+     */
+    private static int bucket(long nanos)
+    {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS);
+        return shift * SUB_BUCKETS + (int) (nanos >>> shift);
+    }
+
+    /**
+     * Gets the highest latency that falls in a bucket.
+     * @param bucket The index of the bucket.
+     * @return The highest latency of the bucket in nanoseconds.
+     */
+    private static long highestValue(int bucket)
+    {
+        int shift = Math.max(0, bucket / SUB_BUCKETS - 1);
+        long mantissa = bucket - shift * SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
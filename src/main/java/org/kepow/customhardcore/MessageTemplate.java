@@ -0,0 +1,394 @@
+package org.kepow.customhardcore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+
+/**
+ * Class that represents a message from messages.yml compiled into a
+ * sequence of tokens: literal text with its formatting codes already
+ * translated, %placeholders, and &word|dependent% switches with every
+ * case of the word compiled. A message is rendered in a single pass.
+ *
+ * The output is the same as that of replacing the words, placeholders
+ * and formatting codes of the message string one after another.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public final class MessageTemplate
+{
+    private static final Pattern SWITCH_PATTERN = Pattern.compile("&[a-zA-Z]+\\|[a-zA-Z]+%");
+    private static final Pattern WORD_PATTERN = Pattern.compile("&[a-zA-Z]+%");
+
+    private static final Map<Character, String> COLORS;
+
+    static
+    {
+        ChatColor[] colors = {
+            ChatColor.BLACK, ChatColor.DARK_BLUE, ChatColor.DARK_GREEN, ChatColor.DARK_AQUA,
+            ChatColor.DARK_RED, ChatColor.DARK_PURPLE, ChatColor.GOLD, ChatColor.GRAY,
+            ChatColor.DARK_GRAY, ChatColor.BLUE, ChatColor.GREEN, ChatColor.AQUA,
+            ChatColor.RED, ChatColor.LIGHT_PURPLE, ChatColor.YELLOW, ChatColor.WHITE,
+            ChatColor.MAGIC, ChatColor.BOLD, ChatColor.STRIKETHROUGH, ChatColor.UNDERLINE,
+            ChatColor.ITALIC, ChatColor.RESET };
+        String codes = "0123456789abcdefklmnor";
+
+        COLORS = new HashMap<Character, String>();
+        for(int i = 0; i < colors.length; i++)
+        {
+            COLORS.put(codes.charAt(i), colors[i].toString());
+        }
+    }
+
+    private final Object[] tokens;
+    private final String doubleFormat;
+    private final int switchDecimals;
+
+    /**
+     * Constructor. Compiles a message.
+     * @param message The message string.
+     * @param config The messages configuration to look up words in.
+     * @param numDecimals The number of decimals to display numbers with.
+     */
+    public MessageTemplate(String message, ConfigurationSection config, int numDecimals)
+    {
+        this.doubleFormat = "%." + numDecimals + "f";
+        this.switchDecimals = config.getInt("display.numDecimals");
+        this.tokens = compile(message, config);
+    }
+
+    /**
+     * Class that represents a &word|dependent% switch.
+     */
+    private static final class Switch
+    {
+        private final String dependent;
+        private final Map<String, Object[]> cases;
+        private final Object[] other;
+        private final Object[] unresolved;
+
+        private Switch(String dependent, Map<String, Object[]> cases, Object[] other, Object[] unresolved)
+        {
+            this.dependent = dependent;
+            this.cases = cases;
+            this.other = other;
+            this.unresolved = unresolved;
+        }
+    }
+
+    /**
+     * Class that represents a %placeholder.
+     */
+    private static final class Placeholder
+    {
+        private final String name;
+
+        private Placeholder(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Compiles a message into tokens. Switches and words are only
+     * recognized in the message itself, not in the words they are
+     * replaced with.
+     * @param message The message string.
+     * @param config The messages configuration to look up words in.
+     * @return The tokens.
+     */
+    private static Object[] compile(String message, ConfigurationSection config)
+    {
+        List<Object> tokens = new ArrayList<Object>();
+
+        Matcher switchMatcher = SWITCH_PATTERN.matcher(message);
+        Matcher wordMatcher = WORD_PATTERN.matcher(message);
+        boolean switchFound = switchMatcher.find();
+        boolean wordFound = wordMatcher.find();
+
+        int position = 0;
+        while(switchFound || wordFound)
+        {
+            boolean isSwitch = switchFound && (!wordFound || switchMatcher.start() < wordMatcher.start());
+            Matcher matcher = isSwitch ? switchMatcher : wordMatcher;
+            String match = matcher.group();
+
+            tokenize(message.substring(position, matcher.start()), tokens);
+            position = matcher.end();
+
+            if(isSwitch)
+            {
+                String[] parts = match.substring(1, match.length()-1).split("\\|");
+
+                Map<String, Object[]> cases = new HashMap<String, Object[]>();
+                ConfigurationSection wordSection = config.getConfigurationSection("words." + parts[0]);
+                if(wordSection != null)
+                {
+                    for(String key : wordSection.getKeys(false))
+                    {
+                        String word = wordSection.getString(key);
+                        if(word != null)
+                        {
+                            cases.put(key, tokenize(word));
+                        }
+                    }
+                }
+
+                tokens.add(new Switch("%" + parts[1], cases, cases.get("other"), tokenize(match)));
+                switchFound = switchMatcher.find();
+            }
+            else
+            {
+                String word = config.getString("words." + match.substring(1, match.length()-1) + ".other");
+                tokenize(word != null ? word : match, tokens);
+                wordFound = wordMatcher.find();
+            }
+        }
+        tokenize(message.substring(position), tokens);
+
+        return tokens.toArray();
+    }
+
+    /**
+     * Splits text into literals with translated formatting codes and
+     * placeholders.
+     * @param text The text.
+     * @return The tokens.
+     */
+    private static Object[] tokenize(String text)
+    {
+        List<Object> tokens = new ArrayList<Object>();
+        tokenize(text, tokens);
+        return tokens.toArray();
+    }
+
+    /**
+     * Splits text into literals with translated formatting codes and
+     * placeholders.
+     * @param text The text.
+     * @param tokens The list to add the tokens to.
+     */
+    private static void tokenize(String text, List<Object> tokens)
+    {
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while(i < text.length())
+        {
+            char c = text.charAt(i);
+            if(c == '%')
+            {
+                int end = i + 1;
+                while(end < text.length() && isLetter(text.charAt(end)))
+                {
+                    end++;
+                }
+
+                if(end > i + 1)
+                {
+                    if(literal.length() > 0)
+                    {
+                        tokens.add(literal.toString());
+                        literal.setLength(0);
+                    }
+                    tokens.add(new Placeholder(text.substring(i + 1, end)));
+                    i = end;
+                    continue;
+                }
+            }
+
+            i = appendChar(text, i, literal);
+        }
+
+        if(literal.length() > 0)
+        {
+            tokens.add(literal.toString());
+        }
+    }
+
+    /**
+     * Renders the message.
+     * @param replacements An array of consecutive {String, Object} pairs, e.g. {"%value", 2.06}.
+     * @param out The builder to render into.
+     */
+    public void render(Object[] replacements, StringBuilder out)
+    {
+        render(tokens, replacements, out);
+    }
+
+    /**
+     * Renders tokens.
+     * @param tokens The tokens.
+     * @param replacements An array of consecutive {String, Object} pairs.
+     * @param out The builder to render into.
+     */
+    private void render(Object[] tokens, Object[] replacements, StringBuilder out)
+    {
+        for(Object token : tokens)
+        {
+            if(token instanceof String)
+            {
+                out.append((String) token);
+            }
+            else if(token instanceof Placeholder)
+            {
+                renderPlaceholder(((Placeholder) token).name, replacements, out);
+            }
+            else
+            {
+                Switch wordSwitch = (Switch) token;
+                Object[] word = wordSwitch.other;
+
+                int index = find(wordSwitch.dependent, replacements);
+                if(index >= 0)
+                {
+                    Object[] caseWord = wordSwitch.cases.get(caseOf(replacements[index + 1]));
+                    if(caseWord != null)
+                    {
+                        word = caseWord;
+                    }
+                }
+
+                render(word != null ? word : wordSwitch.unresolved, replacements, out);
+            }
+        }
+    }
+
+    /**
+     * Renders a placeholder. The longest replacement key that the
+     * placeholder starts with is replaced; the rest of the placeholder
+     * is kept as is.
+     * @param name The name of the placeholder, without the %.
+     * @param replacements An array of consecutive {String, Object} pairs.
+     * @param out The builder to render into.
+     */
+    private void renderPlaceholder(String name, Object[] replacements, StringBuilder out)
+    {
+        int best = -1;
+        int bestLength = 0;
+        for(int i = 0; i + 1 < replacements.length; i += 2)
+        {
+            String key = (String) replacements[i];
+            int length = key.length() - 1;
+            if(length > bestLength && key.charAt(0) == '%' && name.startsWith(key.substring(1)))
+            {
+                best = i;
+                bestLength = length;
+            }
+        }
+
+        if(best < 0)
+        {
+            out.append('%').append(name);
+            return;
+        }
+
+        // A key given more than once is replaced with its last value
+        best = find((String) replacements[best], replacements);
+
+        String value = format(replacements[best + 1]);
+        for(int i = 0; i < value.length();)
+        {
+            i = appendChar(value, i, out);
+        }
+        out.append(name, bestLength, name.length());
+    }
+
+    /**
+     * Gets the word case to use for the value of a dependent.
+     * @param value The value.
+     * @return The case.
+     */
+    private String caseOf(Object value)
+    {
+        if(value instanceof Integer)
+        {
+            return value.toString();
+        }
+        else if(value instanceof Double)
+        {
+            double val = Utils.round((Double) value, switchDecimals);
+            if((val == Math.floor(val)) && !Double.isInfinite(val))
+            {
+                return String.valueOf((int) Math.floor(val));
+            }
+            return null;
+        }
+
+        return value.toString();
+    }
+
+    /**
+     * Formats a replacement value.
+     * @param value The value.
+     * @return The formatted value.
+     */
+    private String format(Object value)
+    {
+        if(value instanceof Double)
+        {
+            return String.format(doubleFormat, (Double) value);
+        }
+
+        return value.toString();
+    }
+
+    /**
+     * Finds the last occurrence of a replacement key.
+     * @param key The key.
+     * @param replacements An array of consecutive {String, Object} pairs.
+     * @return The index of the key, or -1 if the key does not occur.
+     */
+    private static int find(String key, Object[] replacements)
+    {
+        for(int i = (replacements.length & ~1) - 2; i >= 0; i -= 2)
+        {
+            if(key.equals(replacements[i]))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a character of a text, translating a formatting code
+     * (e.g. "&6") starting at it.
+     * @param text The text.
+     * @param i The index of the character.
+     * @param out The builder to append to.
+     * @return The index of the next character.
+     */
+    private static int appendChar(String text, int i, StringBuilder out)
+    {
+        char c = text.charAt(i);
+        if(c == '&' && i + 1 < text.length())
+        {
+            String color = COLORS.get(text.charAt(i + 1));
+            if(color != null)
+            {
+                out.append(color);
+                return i + 2;
+            }
+        }
+
+        out.append(c);
+        return i + 1;
+    }
+
+    /**
+     * Checks whether a character is an ASCII letter.
+     * @param c The character.
+     * @return True if the character is an ASCII letter, false otherwise.
+     */
+    private static boolean isLetter(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
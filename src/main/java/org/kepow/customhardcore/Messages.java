@@ -0,0 +1,333 @@
+package org.kepow.customhardcore;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+/**
+ * Class that holds the compiled messages of messages.yml, or of a locale
+ * bundle such as messages_de.yml. All messages of a bundle are compiled
+ * when the bundle is first needed; messages that are not in the file
+ * are compiled when they are first rendered.
+ *
+ * Locale bundles are read from the plugin's data folder and take the
+ * messages they do not specify from messages.yml. A player is sent
+ * messages from the bundle of their client locale (e.g. "de_de", then
+ * "de"), or from messages.yml if there is no such bundle.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public final class Messages
+{
+    private static final Object[] NO_REPLACEMENTS = new Object[0];
+    private static final Pattern BUNDLE_PATTERN = Pattern.compile("messages_([a-zA-Z]+(?:_[a-zA-Z0-9]+)?)\\.yml");
+
+    // Player.spigot().getLocale() is only available on Spigot
+    private static final Method SPIGOT = findMethod(Player.class, "spigot");
+    private static final Method GET_LOCALE = SPIGOT != null ? findMethod(SPIGOT.getReturnType(), "getLocale") : null;
+
+    private static volatile Bundles bundles;
+
+    private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<StringBuilder>()
+    {
+        @Override
+        protected StringBuilder initialValue()
+        {
+            return new StringBuilder(128);
+        }
+    };
+
+    private final ConfigurationSection config;
+    private final int numDecimals;
+    private final ConcurrentHashMap<String, MessageTemplate> templates;
+
+    /**
+     * Constructor. Compiles all messages.
+     * @param config The messages configuration.
+     * @param numDecimals The number of decimals to display numbers with.
+     */
+    private Messages(ConfigurationSection config, int numDecimals)
+    {
+        this.config = config;
+        this.numDecimals = numDecimals;
+        this.templates = new ConcurrentHashMap<String, MessageTemplate>();
+
+        ConfigurationSection messages = config.getConfigurationSection("messages");
+        if(messages != null)
+        {
+            for(String key : messages.getKeys(true))
+            {
+                Object message = messages.get(key);
+                if(message instanceof String)
+                {
+                    templates.put(key, new MessageTemplate((String) message, config, numDecimals));
+                }
+            }
+        }
+    }
+
+    /**
+     * Class that holds the default bundle and the locale bundles.
+     */
+    private static final class Bundles
+    {
+        private final Messages defaults;
+        private final Map<String, File> files;
+        private final ConcurrentHashMap<String, Messages> locales;
+
+        private Bundles(Messages defaults, Map<String, File> files)
+        {
+            this.defaults = defaults;
+            this.files = files;
+            this.locales = new ConcurrentHashMap<String, Messages>();
+        }
+    }
+
+    /**
+     * Renders a message from messages.yml.
+     * @param message The message string key (without the "messages." prefix) to use.
+     * @param replacementsArray An array of consecutive {String, Object} pairs, e.g. {"%value", 2.06}.
+     * @return The rendered message.
+     */
+    public static String render(String message, Object... replacementsArray)
+    {
+        return getBundles().defaults.format(message, replacementsArray);
+    }
+
+    /**
+     * Renders a message in the locale of its recipient.
+     * @param recipient The recipient of the message.
+     * @param message The message string key (without the "messages." prefix) to use.
+     * @param replacementsArray An array of consecutive {String, Object} pairs, e.g. {"%value", 2.06}.
+     * @return The rendered message.
+     */
+    public static String render(CommandSender recipient, String message, Object... replacementsArray)
+    {
+        return forRecipient(recipient).format(message, replacementsArray);
+    }
+
+    /**
+     * Gets the default bundle, compiled from messages.yml.
+     * @return The default bundle.
+     */
+    public static Messages getDefaults()
+    {
+        return getBundles().defaults;
+    }
+
+    /**
+     * Gets the bundle of the locale of a recipient.
+     * @param recipient The recipient.
+     * @return The bundle of the recipient's locale, or the default bundle
+     * if there is none.
+     */
+    public static Messages forRecipient(CommandSender recipient)
+    {
+        Bundles bundles = getBundles();
+        if(bundles.files.isEmpty())
+        {
+            return bundles.defaults;
+        }
+
+        String locale = getLocale(recipient);
+        if(locale == null)
+        {
+            return bundles.defaults;
+        }
+
+        Messages messages = bundles.locales.get(locale);
+        if(messages == null)
+        {
+            messages = loadBundle(bundles, locale);
+            bundles.locales.put(locale, messages);
+        }
+        return messages;
+    }
+
+    /**
+     * Gets whether there are any locale bundles.
+     * @return True if there are locale bundles, false if all messages
+     * come from messages.yml.
+     */
+    public static boolean hasLocales()
+    {
+        return !getBundles().files.isEmpty();
+    }
+
+    /**
+     * Drops the compiled messages, such that the locale bundles are found
+     * and compiled again with the current configuration when they are
+     * next needed.
+     */
+    public static void invalidate()
+    {
+        bundles = null;
+    }
+
+    /**
+     * Renders a message from this bundle.
+     * @param message The message string key (without the "messages." prefix) to use.
+     * @param replacementsArray An array of consecutive {String, Object} pairs, e.g. {"%value", 2.06}.
+     * @return The rendered message.
+     */
+    public String format(String message, Object... replacementsArray)
+    {
+        if(replacementsArray.length % 2 != 0)
+        {
+            replacementsArray = NO_REPLACEMENTS;
+        }
+
+        StringBuilder out = BUILDER.get();
+        out.setLength(0);
+        getTemplate(message).render(replacementsArray, out);
+        return out.toString();
+    }
+
+    /**
+     * Gets the default bundle and the locale bundle files, finding them
+     * if they were invalidated.
+     * @return The bundles.
+     */
+    private static Bundles getBundles()
+    {
+        Bundles current = bundles;
+        if(current == null)
+        {
+            Messages defaults = new Messages(PluginState.getMessagesCustomConfig().getCustomConfig(),
+                PluginState.getPlugin().getConfig().getInt("display.numDecimals"));
+
+            Map<String, File> files = new HashMap<String, File>();
+            File[] dataFiles = PluginState.getPlugin().getDataFolder().listFiles();
+            if(dataFiles != null)
+            {
+                for(File file : dataFiles)
+                {
+                    Matcher matcher = BUNDLE_PATTERN.matcher(file.getName());
+                    if(matcher.matches())
+                    {
+                        files.put(matcher.group(1).toLowerCase(Locale.ENGLISH), file);
+                    }
+                }
+            }
+
+            current = new Bundles(defaults, Collections.unmodifiableMap(files));
+            bundles = current;
+        }
+
+        return current;
+    }
+
+    /**
+     * Loads the bundle of a locale: the bundle of the full locale, else
+     * the bundle of its language, else the default bundle.
+     * @param bundles The bundles.
+     * @param locale The locale, in lower case.
+     * @return The bundle.
+     */
+    private static Messages loadBundle(Bundles bundles, String locale)
+    {
+        File file = bundles.files.get(locale);
+        int separator = locale.indexOf('_');
+        if(file == null && separator > 0)
+        {
+            String language = locale.substring(0, separator);
+            Messages messages = bundles.locales.get(language);
+            if(messages != null)
+            {
+                return messages;
+            }
+
+            file = bundles.files.get(language);
+            locale = language;
+        }
+
+        if(file == null)
+        {
+            return bundles.defaults;
+        }
+
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
+        config.setDefaults(bundles.defaults.config.getRoot());
+
+        Messages messages = new Messages(config, bundles.defaults.numDecimals);
+        bundles.locales.put(locale, messages);
+        return messages;
+    }
+
+    /**
+     * Gets the client locale of a recipient.
+     * @param recipient The recipient.
+     * @return The locale in lower case (e.g. "de_de"), or null if it is
+     * not known.
+     */
+    private static String getLocale(CommandSender recipient)
+    {
+        if(GET_LOCALE == null || !(recipient instanceof Player))
+        {
+            return null;
+        }
+
+        try
+        {
+            Object locale = GET_LOCALE.invoke(SPIGOT.invoke(recipient));
+            return locale != null ? locale.toString().toLowerCase(Locale.ENGLISH) : null;
+        }
+        catch(Exception e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Finds a public method without parameters.
+     * @param type The class to find the method in.
+     * @param name The name of the method.
+     * @return The method, or null if the class has no such method.
+     */
+    private static Method findMethod(Class<?> type, String name)
+    {
+        try
+        {
+            return type.getMethod(name);
+        }
+        catch(NoSuchMethodException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the compiled message for a key.
+     * @param message The message string key (without the "messages." prefix).
+     * @return The compiled message.
+     */
+    private MessageTemplate getTemplate(String message)
+    {
+        MessageTemplate template = templates.get(message);
+        if(template == null)
+        {
+            String string = config.getString("messages." + message);
+            if(string == null)
+            {
+                string = "String not found: " + message;
+            }
+
+            template = new MessageTemplate(string, config, numDecimals);
+            templates.put(message, template);
+        }
+
+        return template;
+    }
+}
@@ -0,0 +1,359 @@
+package org.kepow.customhardcore;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Class that exposes the metrics of the plugin: a JMX MBean per world
+ * group and one for the saves, and a file in the Prometheus text format
+ * for the textfile collector of the node exporter. The metrics are
+ * sampled and the file is written every few seconds on a background
+ * thread, reusing its buffer; the main thread only publishes counts.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class MetricsExporter implements Runnable
+{
+    private static final int SAMPLE_SECONDS = 15;
+    private static final String DOMAIN = "org.kepow.customhardcore";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final SaveStatistics saveStatistics;
+    private final ConcurrentHashMap<String, WorldGroupMetrics> groups;
+    private final MBeanServer server;
+    private final ScheduledExecutorService executor;
+    private final StringBuilder text;
+    private volatile boolean writingFile;
+
+    /**
+     * Constructor. Does not export anything until {@link #start()} is called.
+     * @param file The file to write the metrics to.
+     * @param saveStatistics The statistics of the data saves.
+     */
+    public MetricsExporter(File file, SaveStatistics saveStatistics)
+    {
+        this.file = file;
+        this.saveStatistics = saveStatistics;
+        this.groups = new ConcurrentHashMap<String, WorldGroupMetrics>();
+        this.server = ManagementFactory.getPlatformMBeanServer();
+        this.text = new StringBuilder(4096);
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "CustomHardcore-Metrics");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Registers the MBean of the saves and starts sampling the metrics.
+     */
+    public void start()
+    {
+        register(name("Saves", null), saveStatistics);
+        executor.scheduleAtFixedRate(this, SAMPLE_SECONDS, SAMPLE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets whether the metrics are written to the file. The file is
+     * deleted when writing is turned off.
+     * @param writingFile Whether the metrics should be written to the file.
+     */
+    public void setWritingFile(boolean writingFile)
+    {
+        this.writingFile = writingFile;
+        if(!writingFile)
+        {
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    file.delete();
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets the metrics of a world group, registering their MBean when
+     * they are first asked for.
+     * @param worldGroup The world group.
+     * @return The metrics of the world group.
+     */
+    public WorldGroupMetrics getGroup(String worldGroup)
+    {
+        WorldGroupMetrics metrics = groups.get(worldGroup);
+        if(metrics == null)
+        {
+            metrics = new WorldGroupMetrics(worldGroup, 60 / SAMPLE_SECONDS);
+            WorldGroupMetrics existing = groups.putIfAbsent(worldGroup, metrics);
+            if(existing != null)
+            {
+                return existing;
+            }
+            register(name("WorldGroup", worldGroup), metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Records that the changes of a world group have been written. Does
+     * nothing if the world group has been removed since.
+     * @param worldGroup The world group.
+     * @param nanos How long writing the changes took, in nanoseconds.
+     * @param records The number of records written.
+     */
+    public void recordWrite(String worldGroup, long nanos, int records)
+    {
+        WorldGroupMetrics metrics = groups.get(worldGroup);
+        if(metrics != null)
+        {
+            metrics.recordWrite(nanos, records);
+        }
+    }
+
+    /**
+     * Drops the metrics of the world groups that no longer exist.
+     * @param worldGroups The world groups that exist.
+     */
+    public void retainGroups(Collection<String> worldGroups)
+    {
+        for(String worldGroup : groups.keySet())
+        {
+            if(!worldGroups.contains(worldGroup))
+            {
+                groups.remove(worldGroup);
+                unregister(name("WorldGroup", worldGroup));
+            }
+        }
+    }
+
+    /**
+     * Stops sampling the metrics, unregisters all MBeans and deletes the
+     * file.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+        try
+        {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        unregister(name("Saves", null));
+        for(String worldGroup : groups.keySet())
+        {
+            unregister(name("WorldGroup", worldGroup));
+        }
+        groups.clear();
+        file.delete();
+    }
+
+    /**
+     * Samples the metrics and writes them to the file.
+     */
+    public void run()
+    {
+        for(WorldGroupMetrics metrics : groups.values())
+        {
+            metrics.sample();
+        }
+
+        if(!writingFile)
+        {
+            return;
+        }
+
+        try
+        {
+            write();
+        }
+        catch(IOException e)
+        {
+            PluginState.getPlugin().getLogger().warning("Could not write " + file.getName() + ": " + e);
+        }
+    }
+
+    /**
+     * Writes the metrics to the file in the Prometheus text format. The
+     * file is replaced atomically, so it is never read half-written.
+     * @throws IOException
+     */
+    private void write() throws IOException
+    {
+        text.setLength(0);
+
+        header("customhardcore_tracked_players", "gauge", "Players whose state is held in memory.");
+        for(WorldGroupMetrics metrics : groups.values())
+        {
+            sample("customhardcore_tracked_players", metrics).append(metrics.getTrackedPlayers()).append('\n');
+        }
+        header("customhardcore_banished_players", "gauge", "Players that are banished.");
+        for(WorldGroupMetrics metrics : groups.values())
+        {
+            sample("customhardcore_banished_players", metrics).append(metrics.getBanishedPlayers()).append('\n');
+        }
+        header("customhardcore_deaths_total", "counter", "Deaths since the plugin was enabled.");
+        for(WorldGroupMetrics metrics : groups.values())
+        {
+            sample("customhardcore_deaths_total", metrics).append(metrics.getDeaths()).append('\n');
+        }
+        header("customhardcore_deaths_per_minute", "gauge", "Deaths in the last minute.");
+        for(WorldGroupMetrics metrics : groups.values())
+        {
+            sample("customhardcore_deaths_per_minute", metrics).append(metrics.getDeathsPerMinute()).append('\n');
+        }
+        header("customhardcore_group_save_seconds", "gauge", "Time spent writing the changes of the world group in the last save that had any.");
+        for(WorldGroupMetrics metrics : groups.values())
+        {
+            sample("customhardcore_group_save_seconds", metrics).append(metrics.getLastSaveMillis() / 1000.0).append('\n');
+        }
+        header("customhardcore_records_written_total", "counter", "Player records written since the plugin was enabled.");
+        for(WorldGroupMetrics metrics : groups.values())
+        {
+            sample("customhardcore_records_written_total", metrics).append(metrics.getRecordsWritten()).append('\n');
+        }
+
+        header("customhardcore_saves_total", "counter", "Saves that wrote data.");
+        text.append("customhardcore_saves_total ").append(saveStatistics.getSaves()).append('\n');
+        header("customhardcore_save_seconds", "gauge", "Time spent writing the last save.");
+        text.append("customhardcore_save_seconds ").append(saveStatistics.getLastSaveMillis() / 1000.0).append('\n');
+        header("customhardcore_bytes_written_total", "counter", "Bytes written by the storage since the plugin was enabled.");
+        text.append("customhardcore_bytes_written_total ").append(saveStatistics.getBytesWritten()).append('\n');
+
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(temp.toPath(), text.toString().getBytes(UTF8));
+        try
+        {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Appends the help and type lines of a metric.
+     * @param metric The name of the metric.
+     * @param type The type of the metric.
+     * @param help The description of the metric.
+     */
+    private void header(String metric, String type, String help)
+    {
+        text.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Appends the name and labels of a sample of a world group, up to its value.
+     * @param metric The name of the metric.
+     * @param metrics The metrics of the world group.
+     * @return The buffer, to append the value to.
+     */
+    private StringBuilder sample(String metric, WorldGroupMetrics metrics)
+    {
+        text.append(metric).append("{world_group=\"");
+        String worldGroup = metrics.getWorldGroup();
+        for(int i = 0; i < worldGroup.length(); i++)
+        {
+            char c = worldGroup.charAt(i);
+            if(c == '\\' || c == '"')
+            {
+                text.append('\\').append(c);
+            }
+            else if(c == '\n')
+            {
+                text.append("\\n");
+            }
+            else
+            {
+                text.append(c);
+            }
+        }
+        return text.append("\"} ");
+    }
+
+    /**
+     * Gets the JMX name of an MBean.
+     * @param type The type of the MBean.
+     * @param worldGroup The world group of the MBean, or null.
+     * @return The name.
+     */
+    private static ObjectName name(String type, String worldGroup)
+    {
+        try
+        {
+            return new ObjectName(DOMAIN + ":type=" + type + (worldGroup != null ? ",name=" + ObjectName.quote(worldGroup) : ""));
+        }
+        catch(JMException e)
+        {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Registers an MBean, replacing an MBean left registered under the
+     * same name by an earlier instance of the plugin.
+     * @param name The name of the MBean.
+     * @param mbean The MBean.
+     */
+    private void register(ObjectName name, Object mbean)
+    {
+        try
+        {
+            if(server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+        }
+        catch(JMException e)
+        {
+            PluginState.getPlugin().getLogger().warning("Could not register " + name + ": " + e);
+        }
+    }
+
+    /**
+     * Unregisters an MBean, if it is registered.
+     * @param name The name of the MBean.
+     */
+    private void unregister(ObjectName name)
+    {
+        try
+        {
+            if(server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+        }
+        catch(JMException e)
+        {
+            PluginState.getPlugin().getLogger().warning("Could not unregister " + name + ": " + e);
+        }
+    }
+}
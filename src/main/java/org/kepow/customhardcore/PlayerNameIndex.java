@@ -0,0 +1,327 @@
+package org.kepow.customhardcore;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.OfflinePlayer;
+
+/**
+ * Class that maps the names of players that have played on the server to
+ * their UUIDs, case-insensitively, without asking the server to enumerate
+ * its player data. The index is kept in memory and persisted in an
+ * append-only file, names.bin, which gets a record whenever a player
+ * joins with a name the index does not know them by. The file is
+ * rewritten without superseded records when it is opened and has grown
+ * to more than twice the size of the index.
+ *
+ * When the file does not exist yet, the index is built from the players
+ * the server knows. The names are also kept in a {@link PrefixTrie} for
+ * completing player names.
+ *
+ * File layout (big-endian): magic "CHCN" (int), version (int), and the
+ * records. Every record is the UUID (two longs), the name length (byte)
+ * and the name (UTF-8). The last record of a UUID holds its current name.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class PlayerNameIndex
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x4348434E; // "CHCN"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final ConcurrentHashMap<String, UUID> uuids;
+    private final ConcurrentHashMap<UUID, String> names;
+    private final PrefixTrie trie;
+    private DataOutputStream out;
+
+    /**
+     * Constructor. Loads the index file, or builds it if it does not
+     * exist yet, and opens it for appending.
+     * @param file The index file.
+     */
+    public PlayerNameIndex(File file)
+    {
+        this.file = file;
+        this.uuids = new ConcurrentHashMap<String, UUID>();
+        this.names = new ConcurrentHashMap<UUID, String>();
+        this.trie = new PrefixTrie();
+
+        try
+        {
+            if(file.exists())
+            {
+                if(load())
+                {
+                    write();
+                }
+            }
+            else
+            {
+                for(OfflinePlayer player : PluginState.getPlugin().getServer().getOfflinePlayers())
+                {
+                    if(player != null && player.getName() != null)
+                    {
+                        put(player.getUniqueId(), player.getName());
+                    }
+                }
+                write();
+                PluginState.getPlugin().getLogger().info("Indexed the names of " + names.size() + " players.");
+            }
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+        catch(IOException e)
+        {
+            PluginState.getPlugin().getLogger().severe("Could not open the player name index " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Finds the UUID of a player by their (last used) name.
+     * @param name The name of the player, in any case.
+     * @return The UUID of the player, or null if no player with the name
+     * has played on the server.
+     */
+    public UUID getUniqueId(String name)
+    {
+        return uuids.get(name.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Finds the (last used) name of a player by their UUID.
+     * @param uuid The UUID of the player.
+     * @return The name of the player, or null if the index does not know
+     * the player or another player has taken their name since.
+     */
+    public String getName(UUID uuid)
+    {
+        return names.get(uuid);
+    }
+
+    /**
+     * Gets the names of the players whose name starts with a prefix.
+     * @param prefix The prefix, in any case.
+     * @param limit The maximum number of names to get.
+     * @return The names, in alphabetical order.
+     */
+    public List<String> complete(String prefix, int limit)
+    {
+        return trie.complete(prefix, limit);
+    }
+
+    /**
+     * Records the name of a player. Does nothing if the index already
+     * knows the player by that name.
+     * @param uuid The UUID of the player.
+     * @param name The name of the player.
+     */
+    public void update(UUID uuid, String name)
+    {
+        if(name.equals(names.get(uuid)))
+        {
+            return;
+        }
+
+        put(uuid, name);
+        if(out != null)
+        {
+            try
+            {
+                writeRecord(out, uuid, name);
+            }
+            catch(IOException e)
+            {
+                PluginState.getPlugin().getLogger().severe("Could not write to the player name index: " + e);
+            }
+        }
+    }
+
+    /**
+     * Writes the records appended so far to the index file.
+     */
+    public void flush()
+    {
+        if(out != null)
+        {
+            try
+            {
+                out.flush();
+            }
+            catch(IOException e)
+            {
+                PluginState.getPlugin().getLogger().severe("Could not write to the player name index: " + e);
+            }
+        }
+    }
+
+    /**
+     * Writes the records appended so far and closes the index file.
+     */
+    public void close()
+    {
+        if(out != null)
+        {
+            try
+            {
+                out.close();
+            }
+            catch(IOException e)
+            {
+                PluginState.getPlugin().getLogger().severe("Could not close the player name index: " + e);
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Maps a name to a UUID, and drops the previous name of the UUID and
+     * the name of the player that had the name before.
+     * @param uuid The UUID of the player.
+     * @param name The name of the player.
+     */
+    private void put(UUID uuid, String name)
+    {
+        String previous = names.put(uuid, name);
+        if(previous != null && uuids.remove(previous.toLowerCase(Locale.ENGLISH), uuid))
+        {
+            trie.remove(previous, previous);
+        }
+        
+        UUID displaced = uuids.put(name.toLowerCase(Locale.ENGLISH), uuid);
+        if(displaced != null && !displaced.equals(uuid))
+        {   // Another player used to have the name; they are no longer known by it
+            String displacedName = names.remove(displaced);
+            if(displacedName != null)
+            {
+                trie.remove(displacedName, displacedName);
+            }
+        }
+        trie.add(name, name);
+    }
+
+    /**
+     * Loads the index file. Loading stops at a truncated record, which is
+     * what a crash in the middle of a write leaves behind.
+     * @return True if the file should be rewritten, because it ends in a
+     * truncated record or holds more than twice as many records as the
+     * index, false otherwise.
+     * @throws IOException
+     */
+    private boolean load() throws IOException
+    {
+        int count = 0;
+        boolean truncated = false;
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while(buffer.hasRemaining() && channel.read(buffer) != -1)
+            {
+            }
+            buffer.flip();
+
+            if(buffer.remaining() < 8 || buffer.getInt() != MAGIC)
+            {
+                throw new IOException(file + " is not a CustomHardcore name index.");
+            }
+            int version = buffer.getInt();
+            if(version != VERSION)
+            {
+                throw new IOException(file + " has unsupported version " + version + ".");
+            }
+
+            while(buffer.remaining() >= 17)
+            {
+                UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+                int length = buffer.get() & 0xFF;
+                if(length > buffer.remaining())
+                {
+                    truncated = true;
+                    break;
+                }
+
+                byte[] name = new byte[length];
+                buffer.get(name);
+                put(uuid, new String(name, UTF8));
+                count++;
+            }
+            truncated = truncated || buffer.hasRemaining();
+        }
+        finally
+        {
+            in.close();
+        }
+        return truncated || count > 2 * names.size();
+    }
+
+    /**
+     * Writes the whole index to the index file, through a temporary file
+     * that is moved over the index file.
+     * @throws IOException
+     */
+    private void write() throws IOException
+    {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        try
+        {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(stream));
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            for(Map.Entry<UUID, String> entry : names.entrySet())
+            {
+                writeRecord(data, entry.getKey(), entry.getValue());
+            }
+            data.flush();
+            stream.getChannel().force(false);
+        }
+        finally
+        {
+            stream.close();
+        }
+
+        try
+        {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes a record.
+     * @param data The stream to write to.
+     * @param uuid The UUID of the player.
+     * @param name The name of the player.
+     * @throws IOException
+     */
+    private static void writeRecord(DataOutputStream data, UUID uuid, String name) throws IOException
+    {
+        byte[] bytes = name.getBytes(UTF8);
+        data.writeLong(uuid.getMostSignificantBits());
+        data.writeLong(uuid.getLeastSignificantBits());
+        data.writeByte(Math.min(bytes.length, 255));
+        data.write(bytes, 0, Math.min(bytes.length, 255));
+    }
+}
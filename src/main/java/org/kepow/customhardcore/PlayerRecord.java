@@ -0,0 +1,83 @@
+package org.kepow.customhardcore;
+
+import java.util.UUID;
+
+/**
+ * Class that represents the stored state of a player in a world group.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public final class PlayerRecord
+{
+    /**
+     * The value of a time field that is not set.
+     */
+    public static final long NONE = -1;
+    
+    private final UUID uuid;
+    private final int deaths;
+    private final long banishedUntil;
+    private final long regenerationStartTime;
+    
+    /**
+     * Constructor.
+     * @param uuid The UUID of the player.
+     * @param deaths The number of deaths of the player.
+     * @param banishedUntil The time until which the player is banished, or NONE.
+     * @param regenerationStartTime The time the player started regenerating a life, or NONE.
+     */
+    public PlayerRecord(UUID uuid, int deaths, long banishedUntil, long regenerationStartTime)
+    {
+        this.uuid = uuid;
+        this.deaths = deaths;
+        this.banishedUntil = banishedUntil;
+        this.regenerationStartTime = regenerationStartTime;
+    }
+    
+    /**
+     * Gets the UUID of the player.
+     * @return The UUID of the player.
+     */
+    public UUID getUniqueId()
+    {
+        return this.uuid;
+    }
+    
+    /**
+     * Gets the number of deaths of the player.
+     * @return The number of deaths of the player.
+     */
+    public int getDeaths()
+    {
+        return this.deaths;
+    }
+    
+    /**
+     * Gets the time until which the player is banished.
+     * @return The time until which the player is banished, or NONE.
+     */
+    public long getBanishedUntil()
+    {
+        return this.banishedUntil;
+    }
+    
+    /**
+     * Gets the time the player started regenerating a life.
+     * @return The time the player started regenerating a life, or NONE.
+     */
+    public long getRegenerationStartTime()
+    {
+        return this.regenerationStartTime;
+    }
+    
+    /**
+     * Gets whether the record holds no state, in which case it does
+     * not have to be stored.
+     * @return True if the record holds no state, false otherwise.
+     */
+    public boolean isEmpty()
+    {
+        return this.deaths <= 0 && this.banishedUntil == NONE && this.regenerationStartTime == NONE;
+    }
+}
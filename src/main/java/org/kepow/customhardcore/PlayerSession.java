@@ -0,0 +1,74 @@
+package org.kepow.customhardcore;
+
+import java.util.Map;
+
+import org.bukkit.entity.Player;
+
+/**
+ * Class that holds the world group an online player is in and the world
+ * manager of that group, such that events of the player do not have to
+ * resolve them again. A session is updated when the player joins or
+ * changes worlds, and when the configuration is reloaded.
+ *
+ * The player's state is not held by the session: it is addressed by a
+ * slot of the world manager's player store, which moves whenever players
+ * are loaded or evicted.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public final class PlayerSession
+{
+    private final Player player;
+    private String worldGroup;
+    private WorldManager manager;
+
+    /**
+     * Constructor. Resolves the world group the player is in.
+     * @param player The player.
+     * @param worldManagers The world managers by world group.
+     */
+    public PlayerSession(Player player, Map<String, WorldManager> worldManagers)
+    {
+        this.player = player;
+        update(worldManagers);
+    }
+
+    /**
+     * Resolves the world group the player is in again, after the player
+     * changed worlds or the configuration was reloaded.
+     * @param worldManagers The world managers by world group.
+     */
+    public void update(Map<String, WorldManager> worldManagers)
+    {
+        this.worldGroup = PluginState.getWorldConfig().getGroupFromWorld(player.getWorld());
+        this.manager = worldManagers.get(this.worldGroup);
+    }
+
+    /**
+     * Gets the player.
+     * @return The player.
+     */
+    public Player getPlayer()
+    {
+        return this.player;
+    }
+
+    /**
+     * Gets the world group the player is in.
+     * @return The world group.
+     */
+    public String getWorldGroup()
+    {
+        return this.worldGroup;
+    }
+
+    /**
+     * Gets the world manager of the world group the player is in.
+     * @return The world manager.
+     */
+    public WorldManager getWorldManager()
+    {
+        return this.manager;
+    }
+}
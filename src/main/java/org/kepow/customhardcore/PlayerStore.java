@@ -0,0 +1,404 @@
+package org.kepow.customhardcore;
+
+import java.util.UUID;
+
+/**
+ * Class that holds the state of the players of a world group in memory.
+ * It is an open-addressing hash table with linear probing, keyed by the
+ * two longs of the players' UUIDs, that keeps the fields of all players
+ * in parallel primitive arrays. Players are addressed by their slot in
+ * the table. A slot stays valid until a player is inserted or removed.
+ *
+ * Absent banishment and regeneration times are stored as
+ * {@link PlayerRecord#NONE}, and absent deaths as 0.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class PlayerStore
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final byte OCCUPIED = 1;
+    private static final byte DIRTY = 2;
+
+    private long[] mostSignificantBits;
+    private long[] leastSignificantBits;
+    private int[] deaths;
+    private long[] banishedUntil;
+    private long[] regenerationStartTime;
+    private long[] lastUsed;
+    private byte[] flags;
+
+    private int size;
+    private int dirtyCount;
+
+    /**
+     * Constructor.
+     */
+    public PlayerStore()
+    {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Finds the slot of a player.
+     * @param uuid The UUID of the player.
+     * @return The slot of the player, or -1 if the player is not in the store.
+     */
+    public int find(UUID uuid)
+    {
+        return find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Finds the slot of a player.
+     * @param mostSignificantBits The most significant bits of the UUID of the player.
+     * @param leastSignificantBits The least significant bits of the UUID of the player.
+     * @return The slot of the player, or -1 if the player is not in the store.
+     */
+    public int find(long mostSignificantBits, long leastSignificantBits)
+    {
+        int mask = flags.length - 1;
+        int slot = hash(mostSignificantBits, leastSignificantBits) & mask;
+        while(flags[slot] != 0)
+        {
+            if(this.mostSignificantBits[slot] == mostSignificantBits
+                && this.leastSignificantBits[slot] == leastSignificantBits)
+            {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Inserts a player without any state. Does nothing if the player is
+     * already in the store. Invalidates all slots.
+     * @param uuid The UUID of the player.
+     * @return The slot of the player.
+     */
+    public int insert(UUID uuid)
+    {
+        int slot = find(uuid);
+        if(slot >= 0)
+        {
+            return slot;
+        }
+
+        if((size + 1) * 4 > flags.length * 3)
+        {   // Keep the load factor below 0.75
+            grow();
+        }
+
+        slot = emptySlot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        this.mostSignificantBits[slot] = uuid.getMostSignificantBits();
+        this.leastSignificantBits[slot] = uuid.getLeastSignificantBits();
+        this.deaths[slot] = 0;
+        this.banishedUntil[slot] = PlayerRecord.NONE;
+        this.regenerationStartTime[slot] = PlayerRecord.NONE;
+        this.lastUsed[slot] = 0;
+        this.flags[slot] = OCCUPIED;
+        size++;
+
+        return slot;
+    }
+
+    /**
+     * Removes the player in a slot. Invalidates all slots.
+     * @param slot The slot of the player.
+     */
+    public void remove(int slot)
+    {
+        if((flags[slot] & DIRTY) != 0)
+        {
+            dirtyCount--;
+        }
+        size--;
+
+        // Shift the players after the removed one back, such that no
+        // probe sequence passes an empty slot before reaching its player
+        int mask = flags.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while(flags[next] != 0)
+        {
+            int home = hash(mostSignificantBits[next], leastSignificantBits[next]) & mask;
+            if(((next - home) & mask) >= ((next - hole) & mask))
+            {
+                move(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        flags[hole] = 0;
+    }
+
+    /**
+     * Gets the number of players in the store.
+     * @return The number of players in the store.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Gets the number of slots. Slots range from 0 up to (but not
+     * including) the capacity.
+     * @return The number of slots.
+     */
+    public int capacity()
+    {
+        return this.flags.length;
+    }
+
+    /**
+     * Gets whether a slot holds a player.
+     * @param slot The slot.
+     * @return True if the slot holds a player, false otherwise.
+     */
+    public boolean isOccupied(int slot)
+    {
+        return (this.flags[slot] & OCCUPIED) != 0;
+    }
+
+    /**
+     * Gets the UUID of the player in a slot.
+     * @param slot The slot of the player.
+     * @return The UUID of the player.
+     */
+    public UUID getUniqueId(int slot)
+    {
+        return new UUID(this.mostSignificantBits[slot], this.leastSignificantBits[slot]);
+    }
+
+    /**
+     * Gets the most significant bits of the UUID of the player in a slot.
+     * @param slot The slot of the player.
+     * @return The most significant bits of the UUID of the player.
+     */
+    public long getMostSignificantBits(int slot)
+    {
+        return this.mostSignificantBits[slot];
+    }
+
+    /**
+     * Gets the least significant bits of the UUID of the player in a slot.
+     * @param slot The slot of the player.
+     * @return The least significant bits of the UUID of the player.
+     */
+    public long getLeastSignificantBits(int slot)
+    {
+        return this.leastSignificantBits[slot];
+    }
+
+    /**
+     * Gets the number of deaths of the player in a slot.
+     * @param slot The slot of the player.
+     * @return The number of deaths of the player.
+     */
+    public int getDeaths(int slot)
+    {
+        return this.deaths[slot];
+    }
+
+    /**
+     * Sets the number of deaths of the player in a slot.
+     * @param slot The slot of the player.
+     * @param deaths The number of deaths of the player.
+     */
+    public void setDeaths(int slot, int deaths)
+    {
+        this.deaths[slot] = deaths;
+    }
+
+    /**
+     * Gets the time until which the player in a slot is banished.
+     * @param slot The slot of the player.
+     * @return The time until which the player is banished, or
+     * {@link PlayerRecord#NONE} if the player is not banished.
+     */
+    public long getBanishedUntil(int slot)
+    {
+        return this.banishedUntil[slot];
+    }
+
+    /**
+     * Sets the time until which the player in a slot is banished.
+     * @param slot The slot of the player.
+     * @param banishedUntil The time until which the player is banished,
+     * or {@link PlayerRecord#NONE} if the player is not banished.
+     */
+    public void setBanishedUntil(int slot, long banishedUntil)
+    {
+        this.banishedUntil[slot] = banishedUntil;
+    }
+
+    /**
+     * Gets the time the player in a slot started regenerating a life.
+     * @param slot The slot of the player.
+     * @return The time the player started regenerating a life, or
+     * {@link PlayerRecord#NONE} if the player is not regenerating a life.
+     */
+    public long getRegenerationStartTime(int slot)
+    {
+        return this.regenerationStartTime[slot];
+    }
+
+    /**
+     * Sets the time the player in a slot started regenerating a life.
+     * @param slot The slot of the player.
+     * @param regenerationStartTime The time the player started regenerating
+     * a life, or {@link PlayerRecord#NONE} if the player is not regenerating a life.
+     */
+    public void setRegenerationStartTime(int slot, long regenerationStartTime)
+    {
+        this.regenerationStartTime[slot] = regenerationStartTime;
+    }
+
+    /**
+     * Gets the time the player in a slot was last used.
+     * @param slot The slot of the player.
+     * @return The time in milliseconds the player was last used.
+     */
+    public long getLastUsed(int slot)
+    {
+        return this.lastUsed[slot];
+    }
+
+    /**
+     * Sets the time the player in a slot was last used.
+     * @param slot The slot of the player.
+     * @param lastUsed The time in milliseconds the player was last used.
+     */
+    public void setLastUsed(int slot, long lastUsed)
+    {
+        this.lastUsed[slot] = lastUsed;
+    }
+
+    /**
+     * Gets whether the player in a slot has changed since the last save.
+     * @param slot The slot of the player.
+     * @return True if the player has changed, false otherwise.
+     */
+    public boolean isDirty(int slot)
+    {
+        return (this.flags[slot] & DIRTY) != 0;
+    }
+
+    /**
+     * Sets whether the player in a slot has changed since the last save.
+     * @param slot The slot of the player.
+     * @param dirty True if the player has changed, false otherwise.
+     */
+    public void setDirty(int slot, boolean dirty)
+    {
+        if(dirty != isDirty(slot))
+        {
+            this.flags[slot] ^= DIRTY;
+            this.dirtyCount += dirty ? 1 : -1;
+        }
+    }
+
+    /**
+     * Gets the number of players that have changed since the last save.
+     * @return The number of players that have changed.
+     */
+    public int getDirtyCount()
+    {
+        return this.dirtyCount;
+    }
+
+    /**
+     * Allocates empty arrays.
+     * @param capacity The number of slots, a power of two.
+     */
+    private void allocate(int capacity)
+    {
+        this.mostSignificantBits = new long[capacity];
+        this.leastSignificantBits = new long[capacity];
+        this.deaths = new int[capacity];
+        this.banishedUntil = new long[capacity];
+        this.regenerationStartTime = new long[capacity];
+        this.lastUsed = new long[capacity];
+        this.flags = new byte[capacity];
+    }
+
+    /**
+     * Doubles the number of slots and reinserts all players.
+     */
+    private void grow()
+    {
+        long[] mostSignificantBits = this.mostSignificantBits;
+        long[] leastSignificantBits = this.leastSignificantBits;
+        int[] deaths = this.deaths;
+        long[] banishedUntil = this.banishedUntil;
+        long[] regenerationStartTime = this.regenerationStartTime;
+        long[] lastUsed = this.lastUsed;
+        byte[] flags = this.flags;
+
+        allocate(flags.length * 2);
+        for(int i = 0; i < flags.length; i++)
+        {
+            if(flags[i] != 0)
+            {
+                int slot = emptySlot(mostSignificantBits[i], leastSignificantBits[i]);
+                this.mostSignificantBits[slot] = mostSignificantBits[i];
+                this.leastSignificantBits[slot] = leastSignificantBits[i];
+                this.deaths[slot] = deaths[i];
+                this.banishedUntil[slot] = banishedUntil[i];
+                this.regenerationStartTime[slot] = regenerationStartTime[i];
+                this.lastUsed[slot] = lastUsed[i];
+                this.flags[slot] = flags[i];
+            }
+        }
+    }
+
+    /**
+     * Finds the first empty slot on the probe sequence of a UUID.
+     * @param mostSignificantBits The most significant bits of the UUID.
+     * @param leastSignificantBits The least significant bits of the UUID.
+     * @return The empty slot.
+     */
+    private int emptySlot(long mostSignificantBits, long leastSignificantBits)
+    {
+        int mask = flags.length - 1;
+        int slot = hash(mostSignificantBits, leastSignificantBits) & mask;
+        while(flags[slot] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Moves the player in a slot to another slot.
+     * @param from The slot to move from.
+     * @param to The slot to move to.
+     */
+    private void move(int from, int to)
+    {
+        this.mostSignificantBits[to] = this.mostSignificantBits[from];
+        this.leastSignificantBits[to] = this.leastSignificantBits[from];
+        this.deaths[to] = this.deaths[from];
+        this.banishedUntil[to] = this.banishedUntil[from];
+        this.regenerationStartTime[to] = this.regenerationStartTime[from];
+        this.lastUsed[to] = this.lastUsed[from];
+        this.flags[to] = this.flags[from];
+    }
+
+    /**
+     * Hashes a UUID.
+     * @param mostSignificantBits The most significant bits of the UUID.
+     * @param leastSignificantBits The least significant bits of the UUID.
+     * @return The hash.
+     */
+    private static int hash(long mostSignificantBits, long leastSignificantBits)
+    {
+        long hash = (mostSignificantBits ^ leastSignificantBits) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
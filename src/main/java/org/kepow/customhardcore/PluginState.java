@@ -9,7 +9,11 @@ package org.kepow.customhardcore;
 public final class PluginState 
 {
     private static CustomHardcore plugin = null;
-    private static WorldConfig worldConfig = null;
+    private static volatile WorldConfig worldConfig = null;
+    private static Journal journal = null;
+    private static StorageBackend storage = null;
+    private static PlayerNameIndex nameIndex = null;
+    private static MetricsExporter metrics = null;
 
     private static CustomConfig data;
     private static CustomConfig messages;
@@ -55,4 +59,44 @@ public final class PluginState
     {
         return PluginState.worldConfig;
     }
+
+    public static void setJournal(Journal journal)
+    {
+        PluginState.journal = journal;
+    }
+
+    public static Journal getJournal()
+    {
+        return PluginState.journal;
+    }
+
+    public static void setStorage(StorageBackend storage)
+    {
+        PluginState.storage = storage;
+    }
+
+    public static StorageBackend getStorage()
+    {
+        return PluginState.storage;
+    }
+
+    public static void setNameIndex(PlayerNameIndex nameIndex)
+    {
+        PluginState.nameIndex = nameIndex;
+    }
+
+    public static PlayerNameIndex getNameIndex()
+    {
+        return PluginState.nameIndex;
+    }
+
+    public static void setMetrics(MetricsExporter metrics)
+    {
+        PluginState.metrics = metrics;
+    }
+
+    public static MetricsExporter getMetrics()
+    {
+        return PluginState.metrics;
+    }
 }
@@ -0,0 +1,319 @@
+package org.kepow.customhardcore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Class that maps case-insensitive keys to string values for completion
+ * by prefix. It is a radix trie: every edge is labelled with a string and
+ * nodes with a single child and no values are merged with their child, so
+ * the trie has at most twice as many nodes as it has keys. A key can have
+ * multiple values, and a value can be reached through multiple keys.
+ *
+ * Completing a prefix takes time linear in the length of the prefix and
+ * in the number of completions asked for, regardless of the size of the
+ * trie. All methods are thread-safe.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class PrefixTrie
+{
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final String[] NO_VALUES = new String[0];
+
+    private final Node root;
+
+    /**
+     * Constructor. Creates an empty trie.
+     */
+    public PrefixTrie()
+    {
+        this.root = new Node("");
+    }
+
+    /**
+     * Class that represents a node of the trie.
+     */
+    private static final class Node
+    {
+        private String label;
+        private Node[] children;
+        private String[] values;
+
+        private Node(String label)
+        {
+            this.label = label;
+            this.children = NO_CHILDREN;
+            this.values = NO_VALUES;
+        }
+    }
+
+    /**
+     * Adds a value under a key. Does nothing if the key already has the value.
+     * @param key The key.
+     * @param value The value.
+     */
+    public synchronized void add(String key, String value)
+    {
+        key = key.toLowerCase(Locale.ENGLISH);
+
+        Node node = root;
+        int i = 0;
+        while(i < key.length())
+        {
+            int index = childIndex(node, key.charAt(i));
+            if(index < 0)
+            {   // No edge shares a character with the rest of the key
+                Node leaf = new Node(key.substring(i));
+                leaf.values = new String[] { value };
+                insertChild(node, -index - 1, leaf);
+                return;
+            }
+
+            Node child = node.children[index];
+            int common = commonPrefix(child.label, key, i);
+            if(common < child.label.length())
+            {   // Split the edge where the key leaves it
+                Node split = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                split.children = new Node[] { child };
+                node.children[index] = split;
+                child = split;
+            }
+
+            node = child;
+            i += common;
+        }
+
+        for(String existing : node.values)
+        {
+            if(existing.equals(value))
+            {
+                return;
+            }
+        }
+        node.values = Arrays.copyOf(node.values, node.values.length + 1);
+        node.values[node.values.length - 1] = value;
+    }
+
+    /**
+     * Removes a value from a key. Does nothing if the key does not have the value.
+     * @param key The key.
+     * @param value The value.
+     */
+    public synchronized void remove(String key, String value)
+    {
+        key = key.toLowerCase(Locale.ENGLISH);
+
+        Node parent = null;
+        Node node = root;
+        int i = 0;
+        while(i < key.length())
+        {
+            int index = childIndex(node, key.charAt(i));
+            if(index < 0 || !key.startsWith(node.children[index].label, i))
+            {
+                return;
+            }
+
+            parent = node;
+            node = node.children[index];
+            i += node.label.length();
+        }
+
+        int position = -1;
+        for(int v = 0; v < node.values.length; v++)
+        {
+            if(node.values[v].equals(value))
+            {
+                position = v;
+            }
+        }
+        if(position < 0)
+        {
+            return;
+        }
+
+        String[] values = new String[node.values.length - 1];
+        System.arraycopy(node.values, 0, values, 0, position);
+        System.arraycopy(node.values, position + 1, values, position, values.length - position);
+        node.values = values;
+
+        if(parent == null || values.length > 0)
+        {
+            return;
+        }
+
+        // Keep the trie compressed
+        if(node.children.length == 0)
+        {
+            removeChild(parent, childIndex(parent, node.label.charAt(0)));
+            if(parent != root && parent.values.length == 0 && parent.children.length == 1)
+            {
+                merge(parent);
+            }
+        }
+        else if(node.children.length == 1)
+        {
+            merge(node);
+        }
+    }
+
+    /**
+     * Gets the values of the keys that start with a prefix, in the order of
+     * their keys.
+     * @param prefix The prefix.
+     * @param limit The maximum number of values to get.
+     * @return The values, without duplicates.
+     */
+    public synchronized List<String> complete(String prefix, int limit)
+    {
+        prefix = prefix.toLowerCase(Locale.ENGLISH);
+
+        Node node = root;
+        int i = 0;
+        while(i < prefix.length())
+        {
+            int index = childIndex(node, prefix.charAt(i));
+            if(index < 0)
+            {
+                return new ArrayList<String>();
+            }
+
+            node = node.children[index];
+            int common = commonPrefix(node.label, prefix, i);
+            if(i + common < prefix.length() && common < node.label.length())
+            {   // The prefix leaves the edge before it ends
+                return new ArrayList<String>();
+            }
+            i += common;
+        }
+
+        Set<String> values = new LinkedHashSet<String>();
+        collect(node, values, limit);
+        return new ArrayList<String>(values);
+    }
+
+    /**
+     * Collects the values of a node and its descendants in key order.
+     * @param node The node.
+     * @param values The set to add the values to.
+     * @param limit The maximum number of values to collect.
+     * @return True if the limit has been reached, false otherwise.
+     */
+    private static boolean collect(Node node, Set<String> values, int limit)
+    {
+        for(String value : node.values)
+        {
+            values.add(value);
+            if(values.size() >= limit)
+            {
+                return true;
+            }
+        }
+
+        for(Node child : node.children)
+        {
+            if(collect(child, values, limit))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges a node without values with its only child.
+     * @param node The node.
+     */
+    private static void merge(Node node)
+    {
+        Node child = node.children[0];
+        node.label = node.label + child.label;
+        node.children = child.children;
+        node.values = child.values;
+    }
+
+    /**
+     * Finds the child of a node whose edge starts with a character.
+     * @param node The node.
+     * @param c The character.
+     * @return The index of the child, or (-(insertion point) - 1) if
+     * there is no such child.
+     */
+    private static int childIndex(Node node, char c)
+    {
+        Node[] children = node.children;
+        int low = 0;
+        int high = children.length - 1;
+        while(low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            char midChar = children[mid].label.charAt(0);
+            if(midChar < c)
+            {
+                low = mid + 1;
+            }
+            else if(midChar > c)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Inserts a child into the children of a node.
+     * @param node The node.
+     * @param index The index to insert the child at.
+     * @param child The child.
+     */
+    private static void insertChild(Node node, int index, Node child)
+    {
+        Node[] children = new Node[node.children.length + 1];
+        System.arraycopy(node.children, 0, children, 0, index);
+        children[index] = child;
+        System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+        node.children = children;
+    }
+
+    /**
+     * Removes a child from the children of a node.
+     * @param node The node.
+     * @param index The index of the child.
+     */
+    private static void removeChild(Node node, int index)
+    {
+        Node[] children = node.children.length == 1 ? NO_CHILDREN : new Node[node.children.length - 1];
+        System.arraycopy(node.children, 0, children, 0, index);
+        System.arraycopy(node.children, index + 1, children, index, children.length - index);
+        node.children = children;
+    }
+
+    /**
+     * Gets the length of the common prefix of a label and the rest of a key.
+     * @param label The label.
+     * @param key The key.
+     * @param offset The index in the key the rest starts at.
+     * @return The length of the common prefix.
+     */
+    private static int commonPrefix(String label, String key, int offset)
+    {
+        int length = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while(i < length && label.charAt(i) == key.charAt(offset + i))
+        {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,164 @@
+package org.kepow.customhardcore;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that keeps count of what the data saves wrote. The counts of a
+ * save are recorded on the main thread when its changes are collected,
+ * and how long writing took and how many bytes were written are recorded
+ * on the save thread once it is written.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class SaveStatistics implements SaveStatisticsMBean
+{
+    private final AtomicLong saves = new AtomicLong();
+    private final AtomicLong skippedSaves = new AtomicLong();
+    private final AtomicLong groupsWritten = new AtomicLong();
+    private final AtomicLong groupsSkipped = new AtomicLong();
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private volatile int lastGroupsWritten;
+    private volatile int lastGroupsSkipped;
+    private volatile int lastRecordsWritten;
+    private volatile long lastWriteNanos;
+
+    /**
+     * Records a save.
+     * @param groupsWritten The number of world groups that had changes.
+     * @param groupsSkipped The number of world groups that were unchanged.
+     * @param recordsWritten The number of player records that were written.
+     */
+    public void recordSave(int groupsWritten, int groupsSkipped, int recordsWritten)
+    {
+        this.saves.incrementAndGet();
+        this.groupsWritten.addAndGet(groupsWritten);
+        this.groupsSkipped.addAndGet(groupsSkipped);
+        this.recordsWritten.addAndGet(recordsWritten);
+
+        this.lastGroupsWritten = groupsWritten;
+        this.lastGroupsSkipped = groupsSkipped;
+        this.lastRecordsWritten = recordsWritten;
+    }
+
+    /**
+     * Records a save that was skipped because nothing changed.
+     * @param groups The number of world groups.
+     */
+    public void recordSkippedSave(int groups)
+    {
+        this.skippedSaves.incrementAndGet();
+        this.groupsSkipped.addAndGet(groups);
+
+        this.lastGroupsWritten = 0;
+        this.lastGroupsSkipped = groups;
+        this.lastRecordsWritten = 0;
+    }
+
+    /**
+     * Records that a save has been written to the storage.
+     * @param nanos How long writing the save took, in nanoseconds.
+     * @param bytesWritten The number of bytes the storage wrote, or a
+     * negative number if it is not known.
+     */
+    public void recordWrite(long nanos, long bytesWritten)
+    {
+        this.lastWriteNanos = nanos;
+        if(bytesWritten > 0)
+        {
+            this.bytesWritten.addAndGet(bytesWritten);
+        }
+    }
+
+    /**
+     * Gets the number of saves that wrote data.
+     * @return The number of saves that wrote data.
+     */
+    public long getSaves()
+    {
+        return saves.get();
+    }
+
+    /**
+     * Gets the number of saves that were skipped because nothing changed.
+     * @return The number of skipped saves.
+     */
+    public long getSkippedSaves()
+    {
+        return skippedSaves.get();
+    }
+
+    /**
+     * Gets the total number of changed world groups written.
+     * @return The total number of changed world groups written.
+     */
+    public long getGroupsWritten()
+    {
+        return groupsWritten.get();
+    }
+
+    /**
+     * Gets the total number of unchanged world groups skipped.
+     * @return The total number of unchanged world groups skipped.
+     */
+    public long getGroupsSkipped()
+    {
+        return groupsSkipped.get();
+    }
+
+    /**
+     * Gets the total number of player records written.
+     * @return The total number of player records written.
+     */
+    public long getRecordsWritten()
+    {
+        return recordsWritten.get();
+    }
+
+    /**
+     * Gets the number of changed world groups the last save wrote.
+     * @return The number of changed world groups the last save wrote.
+     */
+    public int getLastGroupsWritten()
+    {
+        return lastGroupsWritten;
+    }
+
+    /**
+     * Gets the number of unchanged world groups the last save skipped.
+     * @return The number of unchanged world groups the last save skipped.
+     */
+    public int getLastGroupsSkipped()
+    {
+        return lastGroupsSkipped;
+    }
+
+    /**
+     * Gets the number of player records the last save wrote.
+     * @return The number of player records the last save wrote.
+     */
+    public int getLastRecordsWritten()
+    {
+        return lastRecordsWritten;
+    }
+
+    /**
+     * Gets how long writing the last save took.
+     * @return The duration in milliseconds.
+     */
+    public double getLastSaveMillis()
+    {
+        return lastWriteNanos / 1000000.0;
+    }
+
+    /**
+     * Gets the total number of bytes the storage wrote.
+     * @return The total number of bytes written.
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten.get();
+    }
+}
@@ -0,0 +1,40 @@
+package org.kepow.customhardcore;
+
+/**
+ * Management interface of the save statistics, as registered with JMX.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public interface SaveStatisticsMBean
+{
+    /**
+     * Gets the number of saves that wrote data.
+     * @return The number of saves that wrote data.
+     */
+    public long getSaves();
+
+    /**
+     * Gets the number of saves that were skipped because nothing changed.
+     * @return The number of skipped saves.
+     */
+    public long getSkippedSaves();
+
+    /**
+     * Gets the total number of player records written.
+     * @return The total number of player records written.
+     */
+    public long getRecordsWritten();
+
+    /**
+     * Gets how long writing the last save took.
+     * @return The duration in milliseconds.
+     */
+    public double getLastSaveMillis();
+
+    /**
+     * Gets the total number of bytes the storage wrote.
+     * @return The total number of bytes written.
+     */
+    public long getBytesWritten();
+}
@@ -0,0 +1,303 @@
+package org.kepow.customhardcore;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Storage backend that keeps player records in an embedded SQLite
+ * database, one row per player per world group. Only the rows that
+ * changed are written, with batched prepared statements in a single
+ * transaction per flush. The SQLite driver ships with the server.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class SqliteStorage implements StorageBackend
+{
+    private final Connection connection;
+
+    private final PreparedStatement select;
+    private final PreparedStatement upsert;
+    private final PreparedStatement delete;
+    private final PreparedStatement scan;
+
+    private long pendingBytes;
+    private long bytesWritten;
+
+    /**
+     * Constructor. Opens the database. If it does not exist yet, it is 
+     * created and the records of the YAML data file are migrated.
+     * @param databaseFile The database file.
+     * @param yamlFile The YAML data file to migrate from.
+     * @throws IOException
+     */
+    public SqliteStorage(File databaseFile, File yamlFile) throws IOException
+    {
+        boolean created = !databaseFile.exists();
+        try
+        {
+            Class.forName("org.sqlite.JDBC");
+            connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+
+            Statement statement = connection.createStatement();
+            try
+            {
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("CREATE TABLE IF NOT EXISTS players ("
+                    + "world_group VARCHAR(255) NOT NULL, "
+                    + "uuid CHAR(36) NOT NULL, "
+                    + "deaths INTEGER NOT NULL, "
+                    + "banished_until BIGINT NOT NULL, "
+                    + "regeneration_start BIGINT NOT NULL, "
+                    + "PRIMARY KEY (world_group, uuid))");
+            }
+            finally
+            {
+                statement.close();
+            }
+            connection.setAutoCommit(false);
+
+            select = connection.prepareStatement("SELECT deaths, banished_until, regeneration_start "
+                + "FROM players WHERE world_group = ? AND uuid = ?");
+            upsert = connection.prepareStatement("INSERT OR REPLACE INTO players "
+                + "(world_group, uuid, deaths, banished_until, regeneration_start) VALUES (?, ?, ?, ?, ?)");
+            delete = connection.prepareStatement("DELETE FROM players WHERE world_group = ? AND uuid = ?");
+            scan = connection.prepareStatement("SELECT uuid, deaths, banished_until, regeneration_start "
+                + "FROM players WHERE world_group = ?");
+        }
+        catch(ClassNotFoundException e)
+        {
+            throw new IOException("The SQLite driver is not available.", e);
+        }
+        catch(SQLException e)
+        {
+            throw new IOException("Could not open " + databaseFile, e);
+        }
+
+        if(created && yamlFile.exists())
+        {
+            try
+            {
+                migrate(new YamlStorage(yamlFile));
+            }
+            catch(IOException e)
+            {   // Migrate again on the next start rather than start empty
+                close();
+                new File(databaseFile.getPath() + "-wal").delete();
+                new File(databaseFile.getPath() + "-shm").delete();
+                databaseFile.delete();
+                throw e;
+            }
+            PluginState.getPlugin().getLogger().info("Migrated the player data to " + databaseFile.getName() + ".");
+        }
+    }
+
+    /**
+     * Imports all records of another storage and commits them to the
+     * database.
+     * @param from The storage to import from.
+     * @throws IOException
+     */
+    private void migrate(YamlStorage from) throws IOException
+    {
+        for(String worldGroup : from.getWorldGroups())
+        {
+            final List<PlayerRecord> records = new ArrayList<PlayerRecord>();
+            from.scan(worldGroup, new Visitor()
+            {
+                public void visit(PlayerRecord record)
+                {
+                    records.add(record);
+                }
+            });
+            upsertPlayers(worldGroup, records);
+        }
+        from.close();
+
+        flush();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#loadPlayer(java.lang.String, java.util.UUID)
+     */
+    public synchronized PlayerRecord loadPlayer(String worldGroup, UUID uuid) throws IOException
+    {
+        try
+        {
+            select.setString(1, worldGroup);
+            select.setString(2, uuid.toString());
+            ResultSet result = select.executeQuery();
+            try
+            {
+                if(!result.next())
+                {
+                    return null;
+                }
+                return new PlayerRecord(uuid, result.getInt(1), result.getLong(2), result.getLong(3));
+            }
+            finally
+            {
+                result.close();
+            }
+        }
+        catch(SQLException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#upsertPlayers(java.lang.String, java.util.Collection)
+     */
+    public synchronized void upsertPlayers(String worldGroup, Collection<PlayerRecord> records) throws IOException
+    {
+        if(records.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            for(PlayerRecord record : records)
+            {
+                upsert.setString(1, worldGroup);
+                upsert.setString(2, record.getUniqueId().toString());
+                upsert.setInt(3, record.getDeaths());
+                upsert.setLong(4, record.getBanishedUntil());
+                upsert.setLong(5, record.getRegenerationStartTime());
+                upsert.addBatch();
+                pendingBytes += rowSize(worldGroup) + 4 + 8 + 8;
+            }
+            upsert.executeBatch();
+        }
+        catch(SQLException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#deletePlayers(java.lang.String, java.util.Collection)
+     */
+    public synchronized void deletePlayers(String worldGroup, Collection<UUID> uuids) throws IOException
+    {
+        if(uuids.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            for(UUID uuid : uuids)
+            {
+                delete.setString(1, worldGroup);
+                delete.setString(2, uuid.toString());
+                delete.addBatch();
+                pendingBytes += rowSize(worldGroup);
+            }
+            delete.executeBatch();
+        }
+        catch(SQLException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#scan(java.lang.String, org.kepow.customhardcore.StorageBackend.Visitor)
+     */
+    public synchronized void scan(String worldGroup, Visitor visitor) throws IOException
+    {
+        try
+        {
+            scan.setString(1, worldGroup);
+            ResultSet result = scan.executeQuery();
+            try
+            {
+                while(result.next())
+                {
+                    visitor.visit(new PlayerRecord(UUID.fromString(result.getString(1)),
+                        result.getInt(2), result.getLong(3), result.getLong(4)));
+                }
+            }
+            finally
+            {
+                result.close();
+            }
+        }
+        catch(SQLException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#flush()
+     */
+    public synchronized void flush() throws IOException
+    {
+        try
+        {
+            connection.commit();
+            bytesWritten += pendingBytes;
+            pendingBytes = 0;
+        }
+        catch(SQLException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#getBytesWritten()
+     */
+    public synchronized long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#close()
+     */
+    public synchronized void close()
+    {
+        try
+        {
+            connection.rollback();
+            connection.close();
+        }
+        catch(SQLException e)
+        {
+            PluginState.getPlugin().getLogger().severe("Could not close the database: " + e);
+        }
+    }
+
+    /**
+     * Gets the size of the key of a row, as an estimate of the bytes the
+     * database writes for it. The pages SQLite writes are not exposed
+     * through JDBC.
+     * @param worldGroup The world group of the row.
+     * @return The length of the world group and UUID of the row.
+     */
+    private static int rowSize(String worldGroup)
+    {
+        return worldGroup.length() + 36;
+    }
+}
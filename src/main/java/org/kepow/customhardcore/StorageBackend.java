@@ -0,0 +1,77 @@
+package org.kepow.customhardcore;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Interface for the storage of player records. Implementations have to
+ * be safe to call from both the main thread and the save thread.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public interface StorageBackend
+{
+    /**
+     * Interface for receiving the records of a bulk scan.
+     */
+    public interface Visitor
+    {
+        /**
+         * Called for every record scanned.
+         * @param record The record.
+         */
+        public void visit(PlayerRecord record);
+    }
+    
+    /**
+     * Loads the record of a player in a world group.
+     * @param worldGroup The world group.
+     * @param uuid The UUID of the player.
+     * @return The record, or null if the player has no stored state.
+     * @throws IOException
+     */
+    public PlayerRecord loadPlayer(String worldGroup, UUID uuid) throws IOException;
+    
+    /**
+     * Inserts or replaces the records of players in a world group.
+     * @param worldGroup The world group.
+     * @param records The records.
+     * @throws IOException
+     */
+    public void upsertPlayers(String worldGroup, Collection<PlayerRecord> records) throws IOException;
+    
+    /**
+     * Deletes the records of players in a world group.
+     * @param worldGroup The world group.
+     * @param uuids The UUIDs of the players.
+     * @throws IOException
+     */
+    public void deletePlayers(String worldGroup, Collection<UUID> uuids) throws IOException;
+    
+    /**
+     * Scans all records of a world group.
+     * @param worldGroup The world group.
+     * @param visitor The visitor to receive the records.
+     * @throws IOException
+     */
+    public void scan(String worldGroup, Visitor visitor) throws IOException;
+    
+    /**
+     * Makes all upserts and deletes so far durable.
+     * @throws IOException
+     */
+    public void flush() throws IOException;
+    
+    /**
+     * Gets the number of bytes written to disk so far.
+     * @return The number of bytes written.
+     */
+    public long getBytesWritten();
+    
+    /**
+     * Closes the storage. Unflushed changes are discarded.
+     */
+    public void close();
+}
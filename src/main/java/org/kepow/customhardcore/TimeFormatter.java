@@ -0,0 +1,90 @@
+package org.kepow.customhardcore;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Class that formats times in the configured time zone. The time zone is
+ * resolved once and kept until the configuration is reloaded, and every
+ * thread reuses its own calendar, such that times can be formatted from
+ * any thread.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public final class TimeFormatter
+{
+    private static final String[] TWO_DIGITS;
+    
+    static
+    {
+        TWO_DIGITS = new String[100];
+        for(int i = 0; i < TWO_DIGITS.length; i++)
+        {
+            TWO_DIGITS[i] = (i < 10 ? "0" : "") + i;
+        }
+    }
+    
+    private static volatile TimeZone timeZone;
+    
+    private static final ThreadLocal<Calendar> CALENDAR = new ThreadLocal<Calendar>()
+    {
+        @Override
+        protected Calendar initialValue()
+        {
+            return new GregorianCalendar();
+        }
+    };
+    
+    /**
+     * Formats a time.
+     * @param t The unix time in seconds to format.
+     * @return The formatted time.
+     */
+    public static FormattedTime format(long t)
+    {
+        TimeZone timeZone = getTimeZone();
+        
+        Calendar calendar = CALENDAR.get();
+        if(calendar.getTimeZone() != timeZone)
+        {
+            calendar.setTimeZone(timeZone);
+        }
+        calendar.setTimeInMillis(t*1000L);
+        
+        return new FormattedTime(
+            String.valueOf(calendar.get(Calendar.YEAR)),
+            TWO_DIGITS[calendar.get(Calendar.MONTH)+1],
+            TWO_DIGITS[calendar.get(Calendar.DAY_OF_MONTH)],
+            TWO_DIGITS[calendar.get(Calendar.HOUR_OF_DAY)],
+            TWO_DIGITS[calendar.get(Calendar.MINUTE)],
+            TWO_DIGITS[calendar.get(Calendar.SECOND)]);
+    }
+    
+    /**
+     * Drops the resolved time zone, such that it is resolved again from
+     * the current configuration when it is next needed.
+     */
+    public static void invalidate()
+    {
+        timeZone = null;
+    }
+    
+    /**
+     * Gets the configured time zone.
+     * @return The configured time zone.
+     */
+    private static TimeZone getTimeZone()
+    {
+        TimeZone timeZone = TimeFormatter.timeZone;
+        if(timeZone == null)
+        {
+            String id = PluginState.getPlugin().getConfig().getString("timezone", (String) Default.VALUES.get("timezone"));
+            timeZone = TimeZone.getTimeZone(id);
+            TimeFormatter.timeZone = timeZone;
+        }
+        
+        return timeZone;
+    }
+}
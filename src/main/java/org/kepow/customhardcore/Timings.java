@@ -0,0 +1,210 @@
+package org.kepow.customhardcore;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class that times the hot paths of the plugin: the event handlers,
+ * saving, preparing messages and the commands. A timed section is
+ * written as
+ *
+ * <pre>
+ * long start = Timings.start();
+ * try { ... }
+ * finally { Timings.stop(Timings.SAVE, start); }
+ * </pre>
+ *
+ * While timings are disabled, {@link #start()} returns 0 without reading
+ * the clock and {@link #stop(LatencyHistogram, long)} returns right away,
+ * so a timed section costs a single field read. Timings are enabled with
+ * the "timings" option or the /chc perf command.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public final class Timings
+{
+    public static final LatencyHistogram PLAYER_DEATH = new LatencyHistogram();
+    public static final LatencyHistogram PLAYER_RESPAWN = new LatencyHistogram();
+    public static final LatencyHistogram PLAYER_CHANGED_WORLD = new LatencyHistogram();
+    public static final LatencyHistogram PLAYER_PRE_LOGIN = new LatencyHistogram();
+    public static final LatencyHistogram PLAYER_JOIN = new LatencyHistogram();
+    public static final LatencyHistogram PLAYER_QUIT = new LatencyHistogram();
+    public static final LatencyHistogram SAVE = new LatencyHistogram();
+    public static final LatencyHistogram PREPARE_MESSAGE = new LatencyHistogram();
+
+    private static final Map<String, LatencyHistogram> OPERATIONS;
+    private static final ConcurrentHashMap<String, LatencyHistogram> COMMANDS = new ConcurrentHashMap<String, LatencyHistogram>();
+
+    private static volatile boolean enabled;
+    private static volatile long since = System.currentTimeMillis();
+
+    static
+    {
+        Map<String, LatencyHistogram> operations = new LinkedHashMap<String, LatencyHistogram>();
+        operations.put("playerDeath", PLAYER_DEATH);
+        operations.put("playerRespawn", PLAYER_RESPAWN);
+        operations.put("playerChangedWorld", PLAYER_CHANGED_WORLD);
+        operations.put("playerPreLogin", PLAYER_PRE_LOGIN);
+        operations.put("playerJoin", PLAYER_JOIN);
+        operations.put("playerQuit", PLAYER_QUIT);
+        operations.put("save", SAVE);
+        operations.put("prepareMessage", PREPARE_MESSAGE);
+        OPERATIONS = operations;
+    }
+
+    private Timings()
+    {
+    }
+
+    /**
+     * Class that represents the timings of an operation.
+     */
+    public static final class Entry
+    {
+        private final String name;
+        private final LatencyHistogram histogram;
+
+        private Entry(String name, LatencyHistogram histogram)
+        {
+            this.name = name;
+            this.histogram = histogram;
+        }
+
+        /**
+         * Gets the name of the operation.
+         * @return The name of the operation.
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * Gets the latencies of the operation.
+         * @return The latencies of the operation.
+         */
+        public LatencyHistogram getHistogram()
+        {
+            return this.histogram;
+        }
+    }
+
+    /**
+     * Gets whether timings are enabled.
+     * @return True if timings are enabled, false otherwise.
+     */
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables timings. The timings recorded so far are kept.
+     * @param enabled Whether timings should be enabled.
+     */
+    public static void setEnabled(boolean enabled)
+    {
+        Timings.enabled = enabled;
+    }
+
+    /**
+     * Starts timing a section.
+     * @return The start time to pass to {@link #stop(LatencyHistogram, long)},
+     * or 0 if timings are disabled.
+     */
+    public static long start()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Stops timing a section and records its latency.
+     * @param histogram The histogram of the operation.
+     * @param start The start time returned by {@link #start()}.
+     */
+    public static void stop(LatencyHistogram histogram, long start)
+    {
+        if(start != 0)
+        {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Gets the histogram of a command.
+     * @param name The name of the (sub)command.
+     * @return The histogram of the command.
+     */
+    public static LatencyHistogram command(String name)
+    {
+        name = name.toLowerCase(Locale.ENGLISH);
+        LatencyHistogram histogram = COMMANDS.get(name);
+        if(histogram == null)
+        {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = COMMANDS.putIfAbsent(name, histogram);
+            if(existing != null)
+            {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Gets the timings of the operations that have been called since
+     * timings were last reset: first the fixed operations, then the
+     * commands by name.
+     * @return The timings.
+     */
+    public static List<Entry> getEntries()
+    {
+        List<Entry> entries = new ArrayList<Entry>();
+        for(Map.Entry<String, LatencyHistogram> operation : OPERATIONS.entrySet())
+        {
+            if(operation.getValue().getCount() > 0)
+            {
+                entries.add(new Entry(operation.getKey(), operation.getValue()));
+            }
+        }
+        for(Map.Entry<String, LatencyHistogram> command : new TreeMap<String, LatencyHistogram>(COMMANDS).entrySet())
+        {
+            if(command.getValue().getCount() > 0)
+            {
+                entries.add(new Entry("command " + command.getKey(), command.getValue()));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Gets the time timings were last reset, or the plugin was loaded.
+     * @return The time in milliseconds since the epoch.
+     */
+    public static long getSince()
+    {
+        return since;
+    }
+
+    /**
+     * Clears all timings.
+     */
+    public static void reset()
+    {
+        for(LatencyHistogram histogram : OPERATIONS.values())
+        {
+            histogram.reset();
+        }
+        for(LatencyHistogram histogram : COMMANDS.values())
+        {
+            histogram.reset();
+        }
+        since = System.currentTimeMillis();
+    }
+}
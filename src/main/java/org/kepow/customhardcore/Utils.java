@@ -1,16 +1,10 @@
 package org.kepow.customhardcore;
 
-import java.util.Arrays;
-import java.util.Calendar;
-import java.util.Comparator;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.UUID;
 
-import org.bukkit.ChatColor;
 import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.command.CommandSender;
 
 /**
  * Class containing some utility methods.
@@ -31,29 +25,21 @@ public class Utils
     
     /**
      * Find a player by their (last used) name, regardless of whether they are
-     * online or offline.
+     * online or offline. Players are looked up in the player name index.
      * @param name The name of the player.
      * @return The OfflinePlayer if they have been seen by the server, or null.
      */
     public static OfflinePlayer getPlayer(String name)
     {
-        OfflinePlayer[] players = PluginState.getPlugin().getServer().getOfflinePlayers();
-
-        OfflinePlayer ret = null;
-
-        for(OfflinePlayer player : players)
-        {
-            if(player != null && player.getName() != null)
-            {
-                if(player.getName().equalsIgnoreCase(name))
-                {
-                    ret = player;
-                    break;
-                }
-            }
+        Server server = PluginState.getPlugin().getServer();
+        
+        UUID uuid = PluginState.getNameIndex().getUniqueId(name);
+        if(uuid == null)
+        {   // The index misses players if names.bin could not be opened
+            return server.getPlayerExact(name);
         }
-
-        return ret;
+        
+        return server.getOfflinePlayer(uuid);
     }
     
     /**
@@ -69,241 +55,45 @@ public class Utils
     }
     
     /**
-     * Prepare time strings.
-     * @param t The unix time in seconds to set the strings to.
-     * @param year The year representing the time.
-     * @param month The month representing the time.
-     * @param day The day representing the time.
-     * @param hour The hour representing the time.
-     * @param minute The minute representing the time.
-     * @param second The second representing the time.
+     * Prepare a message string for outputting.
+     * @param message The message string key (without the "messages." prefix) to use.
+     * @param replacementsArray An array of consecutive {String, Object} pairs, e.g. {"%value", 2.06}.
+     * @return The prepared message string.
+     * @see Messages#render(String, Object...)
      */
-    public static void prepareTimeStrings(long t, StringBuilder year, StringBuilder month, StringBuilder day, 
-        StringBuilder hour, StringBuilder minute, StringBuilder second)
+    public static String prepareMessage(String message, Object... replacementsArray)
     {
-        Date date = new Date(t*1000L);
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeZone(TimeZone.getTimeZone(PluginState.getPlugin().getConfig().getString("timezone")));
-        calendar.setTime(date);
-        
-        int yearV = calendar.get(Calendar.YEAR);
-        int monthV = calendar.get(Calendar.MONTH)+1;
-        int dayV = calendar.get(Calendar.DAY_OF_MONTH);
-        int hourV = calendar.get(Calendar.HOUR_OF_DAY);
-        int minuteV = calendar.get(Calendar.MINUTE);
-        int secondV = calendar.get(Calendar.SECOND);
-        
-        year.append(yearV);
-        
-        if(monthV + 1 < 10)
+        long start = Timings.start();
+        try
         {
-            month.append("0");
+            return Messages.render(message, replacementsArray);
         }
-        month.append(monthV);
-        
-        if(dayV < 10)
+        finally
         {
-            day.append("0");
+            Timings.stop(Timings.PREPARE_MESSAGE, start);
         }
-        day.append(dayV);
-        
-        if(hourV < 10)
-        {
-            hour.append("0");
-        }
-        hour.append(hourV);
-        
-        if(minuteV < 10)
-        {
-            minute.append("0");
-        }
-        minute.append(minuteV);
-        
-        if(secondV < 10)
-        {
-            second.append("0");
-        }
-        second.append(secondV);
     }
     
-    
     /**
-     * Prepare a message string for outputting.
+     * Prepare a message string for outputting to a recipient, in the
+     * recipient's locale.
+     * @param recipient The recipient of the message.
      * @param message The message string key (without the "messages." prefix) to use.
      * @param replacementsArray An array of consecutive {String, Object} pairs, e.g. {"%value", 2.06}.
      * @return The prepared message string.
+     * @see Messages#render(CommandSender, String, Object...)
      */
-    public static String prepareMessage(String message, Object... replacementsArray)
+    public static String prepareMessage(CommandSender recipient, String message, Object... replacementsArray)
     {
-        HashMap<String, Object> replacements = new HashMap<String, Object>();
-
-        // Feed replacements and replaceWiths into the replacement map.
-        if(replacementsArray.length % 2 == 0)
+        long start = Timings.start();
+        try
         {
-            for(int i = 0; i < replacementsArray.length; i+=2)
-            {
-                String replace = (String) replacementsArray[i];
-                replacements.put(replace, replacementsArray[i+1]);
-            }
+            return Messages.render(recipient, message, replacementsArray);
         }
-
-        // Get placeholder message.
-        String placeholder = PluginState.getMessagesCustomConfig().getCustomConfig().getString("messages." + message);
-        if(placeholder == null)
+        finally
         {
-            placeholder = "String not found: " + message;
+            Timings.stop(Timings.PREPARE_MESSAGE, start);
         }
-
-        // First parse the message for any potential &word|dependent% occurrences.
-        // The words are replaced with the value the word codes for (in config.yml)
-        // with the given switch (e.g., "&currency|1%" could code for "%currencySingular"). 
-        String placeholderCopy = placeholder; 
-
-        // Find all &...|...% occurrences
-        Pattern pattern = Pattern.compile("&[a-zA-Z]+\\|[a-zA-Z]+%");
-        Matcher m = pattern.matcher(placeholder);
-
-        while(m.find())
-        {   // For every occurrence:
-            // Find the part of the string that matched
-            String match = m.group(0);
-
-            // Removed the first (&) and last (%) parts of the string and
-            // then split the string on |
-            String[] matches = match.substring(1, match.length()-1).split("\\|");
-
-            // The first part is the word we're finding the value for
-            String word = matches[0];
-            // The second part is the case of the word we want (e.g., case "1" of currency)
-            String dependent = matches[1];
-
-
-            if(replacements.containsKey("%" + dependent))
-            {   // We know the value of the case
-                Object obj = replacements.get("%" + dependent);
-                String replaceWith = null;
-
-                // Find the type of the case's value and generate the case value to use
-                if(obj instanceof Integer)
-                {
-                    int val = (Integer) obj;
-                    replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + "." + val);
-                } 
-                else if(obj instanceof Double)
-                {
-                    double val = Utils.round((Double) obj, PluginState.getMessagesCustomConfig().getCustomConfig().getInt("display.numDecimals"));
-
-                    if ((val == Math.floor(val)) && !Double.isInfinite(val)) {
-                        int floor = (int) Math.floor(val);
-                        replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + "." + floor);
-                    }
-                }
-                else
-                {
-                    String val = obj.toString();
-                    replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + "." + val);
-                }
-
-                // No (existing) case found, default to case "other"
-                if(replaceWith == null)
-                {
-                    replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + ".other");
-                }
-
-                placeholderCopy = placeholderCopy.replace(match, replaceWith);
-            }
-            else
-            {   // We don't know the value of the case, default to "other".
-                String replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + ".other");
-                if(replaceWith != null)
-                {
-                    placeholderCopy = placeholderCopy.replace(match, replaceWith);
-                }
-            }
-        }
-
-        // Find all &...% occurrences
-        pattern = Pattern.compile("&[a-zA-Z]+%");
-        m = pattern.matcher(placeholder);
-
-        while(m.find())
-        {   // For every occurrence:
-            // Find the part of the string that matched
-            String match = m.group(0);
-
-            // Removed the first (&) and last (%) parts of the string
-            String word = match.substring(1, match.length()-1);     
-
-            String replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + ".other");
-
-            placeholderCopy = placeholderCopy.replace(match, replaceWith);
-        }
-
-        placeholder = placeholderCopy;
-
-        // Sort the to-be-replaced strings by length in descending order to make sure that
-        // strings such as "%test" and "%te" won't interfere (if "%te" were to be evaluated 
-        // first, the result on "%test"would be "{%te}st").
-        String[] replacementKeys = replacements.keySet().toArray(new String[0]);
-        Arrays.sort(replacementKeys, new Comparator<String>()
-            {
-            public int compare(String s1, String s2)
-            {
-                return s2.length() - s1.length();
-            }
-            });
-
-        for(String replace : replacementKeys)
-        {   // For each to-be-replaced string
-
-            // Find the string value of the replacement...
-            Object obj = replacements.get(replace);
-            String replaceWith = null;
-            if(obj instanceof Integer)
-            {
-                replaceWith = ""+(Integer) obj;
-            } 
-            else if(obj instanceof Double)
-            {
-                replaceWith = String.format("%."+PluginState.getPlugin().getConfig().getInt("display.numDecimals")+"f", (Double) obj);
-            }
-            else
-            {
-                replaceWith = obj.toString();
-            }
-
-            // ... and replace.
-            placeholder = placeholder.replaceAll(replace, replaceWith);
-        }
-
-        // Replace string formatting codes
-        placeholder = placeholder.replaceAll("&0", ChatColor.BLACK.toString());
-        placeholder = placeholder.replaceAll("&1", ChatColor.DARK_BLUE.toString());
-        placeholder = placeholder.replaceAll("&2", ChatColor.DARK_GREEN.toString());
-        placeholder = placeholder.replaceAll("&3", ChatColor.DARK_AQUA.toString());
-        placeholder = placeholder.replaceAll("&4", ChatColor.DARK_RED.toString());
-        placeholder = placeholder.replaceAll("&5", ChatColor.DARK_PURPLE.toString());
-        placeholder = placeholder.replaceAll("&6", ChatColor.GOLD.toString());
-        placeholder = placeholder.replaceAll("&7", ChatColor.GRAY.toString());
-        placeholder = placeholder.replaceAll("&8", ChatColor.DARK_GRAY.toString());
-        placeholder = placeholder.replaceAll("&9", ChatColor.BLUE.toString());
-        placeholder = placeholder.replaceAll("&a", ChatColor.GREEN.toString());
-        placeholder = placeholder.replaceAll("&b", ChatColor.AQUA.toString());
-        placeholder = placeholder.replaceAll("&c", ChatColor.RED.toString());
-        placeholder = placeholder.replaceAll("&d", ChatColor.LIGHT_PURPLE.toString());
-        placeholder = placeholder.replaceAll("&e", ChatColor.YELLOW.toString());
-        placeholder = placeholder.replaceAll("&f", ChatColor.WHITE.toString());
-
-        placeholder = placeholder.replaceAll("&k", ChatColor.MAGIC.toString());
-        placeholder = placeholder.replaceAll("&l", ChatColor.BOLD.toString());
-        placeholder = placeholder.replaceAll("&m", ChatColor.STRIKETHROUGH.toString());
-        placeholder = placeholder.replaceAll("&n", ChatColor.UNDERLINE.toString());
-        placeholder = placeholder.replaceAll("&o", ChatColor.ITALIC.toString());
-        placeholder = placeholder.replaceAll("&r", ChatColor.RESET.toString());
-        
-        placeholder = placeholder.replaceAll("\\n", "\n");
-
-        return placeholder;
     }
 
 }
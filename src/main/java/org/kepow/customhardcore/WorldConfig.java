@@ -1,18 +1,25 @@
 package org.kepow.customhardcore;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.configuration.MemorySection;
 
 /**
  * Class that represents the World Configuration used in the plugin.
+ * The settings of all groups are resolved once, when it is constructed;
+ * a reload constructs a new WorldConfig rather than changing this one.
  * 
  * @author Thomas Churchman
  *
@@ -21,9 +28,15 @@ public class WorldConfig
 {
     private final String DEFAULT_GROUP = "default";
 
-    private Map<String, List<String>> worldGroups;
-    private Map<String, String> worldGroupsAliases;
-    private Map<String, Map<String, Object>> groupsConfig;
+    private final Map<String, List<String>> worldGroups;
+    private final Map<String, GroupSettings> groupSettings;
+    
+    private final Map<String, String> worldIndex;
+    private final List<Pattern> worldPatterns;
+    private final List<String> worldPatternGroups;
+    private final ConcurrentHashMap<String, String> worldNameCache;
+    private final ConcurrentHashMap<UUID, String> worldIdCache;
+    private final PrefixTrie groupNames;
 
     /**
      * Constructor.
@@ -31,9 +44,9 @@ public class WorldConfig
      */
     public WorldConfig(Map<String, Object> worldGroupsData)
     {
-        worldGroups = new HashMap<String, List<String>>();
-        worldGroupsAliases = new HashMap<String, String>();
-        groupsConfig = new HashMap<String, Map<String, Object>>();
+        worldGroups = new LinkedHashMap<String, List<String>>();
+        Map<String, String> worldGroupsAliases = new HashMap<String, String>();
+        Map<String, Map<String, Object>> groupsConfig = new HashMap<String, Map<String, Object>>();
 
         MemorySection groupsDataSection = (MemorySection)worldGroupsData.get("groups");
 
@@ -72,6 +85,122 @@ public class WorldConfig
                 worldGroups.put(key, new ArrayList<String>());
             }
         }
+        
+        // Compile the world lists into an index of world names, and a list
+        // of world name patterns that are tried in order if the index has 
+        // no match
+        Map<String, String> worldIndex = new HashMap<String, String>();
+        List<Pattern> worldPatterns = new ArrayList<Pattern>();
+        List<String> worldPatternGroups = new ArrayList<String>();
+        for(Map.Entry<String, List<String>> entry : worldGroups.entrySet())
+        {
+            for(String world : entry.getValue())
+            {
+                Pattern pattern = compileWorldPattern(world);
+                if(pattern != null)
+                {
+                    worldPatterns.add(pattern);
+                    worldPatternGroups.add(entry.getKey());
+                }
+                else if(!worldIndex.containsKey(world))
+                {
+                    worldIndex.put(world, entry.getKey());
+                }
+            }
+        }
+        this.worldIndex = Collections.unmodifiableMap(worldIndex);
+        
+        // Resolve the effective settings of every group once
+        Map<String, Object> defaultConfig = groupsConfig.get(DEFAULT_GROUP);
+        if(defaultConfig == null)
+        {
+            defaultConfig = new HashMap<String, Object>();
+        }
+        Map<String, GroupSettings> groupSettings = new HashMap<String, GroupSettings>();
+        for(String group : worldGroups.keySet())
+        {
+            Map<String, Object> config = groupsConfig.get(group);
+            Map<String, Object> banishLocation = parseLocation(get(config, defaultConfig, "banishLocation"));
+            groupSettings.put(group, new GroupSettings(group, 
+                worldGroupsAliases.get(group),
+                (Boolean) get(config, defaultConfig, "enabled"),
+                (Boolean) get(config, defaultConfig, "denyLogin"),
+                ((Number) get(config, defaultConfig, "lives")).intValue(),
+                ((Number) get(config, defaultConfig, "banishTime")).doubleValue(),
+                ((Number) get(config, defaultConfig, "lifeRegenerationTime")).doubleValue(),
+                (String) banishLocation.get("world"),
+                ((Number) banishLocation.get("x")).doubleValue(),
+                ((Number) banishLocation.get("y")).doubleValue(),
+                ((Number) banishLocation.get("z")).doubleValue()));
+        }
+        this.groupSettings = Collections.unmodifiableMap(groupSettings);
+        this.worldPatterns = Collections.unmodifiableList(worldPatterns);
+        this.worldPatternGroups = Collections.unmodifiableList(worldPatternGroups);
+        
+        worldNameCache = new ConcurrentHashMap<String, String>();
+        worldIdCache = new ConcurrentHashMap<UUID, String>();
+        
+        // Groups are completed by their name and by their alias
+        groupNames = new PrefixTrie();
+        for(String group : worldGroups.keySet())
+        {
+            groupNames.add(group, group);
+            String alias = worldGroupsAliases.get(group);
+            if(alias != null)
+            {
+                groupNames.add(alias, group);
+            }
+        }
+    }
+    
+    /**
+     * Compiles a world list entry into a pattern. Entries starting with
+     * "regex:" are regular expressions, entries containing * or ? are
+     * glob patterns, and all other entries are plain world names.
+     * @param world The world list entry.
+     * @return The pattern, or null if the entry is a plain world name.
+     */
+    private static Pattern compileWorldPattern(String world)
+    {
+        if(world.startsWith("regex:"))
+        {
+            try
+            {
+                return Pattern.compile(world.substring("regex:".length()));
+            }
+            catch(PatternSyntaxException e)
+            {
+                PluginState.getPlugin().getLogger().warning("Invalid world pattern " + world + ": " + e.getDescription());
+                return Pattern.compile(Pattern.quote(world));
+            }
+        }
+        
+        if(world.indexOf('*') < 0 && world.indexOf('?') < 0)
+        {
+            return null;
+        }
+        
+        StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for(int i = 0; i < world.length(); i++)
+        {
+            char c = world.charAt(i);
+            if(c == '*' || c == '?')
+            {
+                if(i > literalStart)
+                {
+                    regex.append(Pattern.quote(world.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if(literalStart < world.length())
+        {
+            regex.append(Pattern.quote(world.substring(literalStart)));
+        }
+        
+        return Pattern.compile(regex.toString());
     }
     
     /**
@@ -93,6 +222,18 @@ public class WorldConfig
         return null;
     }
 
+    /**
+     * Get the groups whose name or alias starts with a prefix. The prefix
+     * has its case ignored.
+     * @param prefix The prefix.
+     * @param limit The maximum number of groups to get.
+     * @return The group names of the groups.
+     */
+    public List<String> completeGroupName(String prefix, int limit)
+    {
+        return groupNames.complete(prefix, limit);
+    }
+
     /**
      * Get the group a world belongs to.
      * @param world The world to get the group for.
@@ -100,7 +241,14 @@ public class WorldConfig
      */
     public String getGroupFromWorld(World world)
     {
-        return getGroupFromWorld(world.getName());
+        String group = worldIdCache.get(world.getUID());
+        if(group == null)
+        {
+            group = getGroupFromWorld(world.getName());
+            worldIdCache.put(world.getUID(), group);
+        }
+        
+        return group;
     }
 
     /**
@@ -110,20 +258,46 @@ public class WorldConfig
      */
     public String getGroupFromWorld(String world)
     {
-        String group = DEFAULT_GROUP;
-
-        for(String grp : worldGroups.keySet())
+        String group = worldIndex.get(world);
+        if(group != null)
+        {
+            return group;
+        }
+        
+        if(worldPatterns.isEmpty())
+        {
+            return DEFAULT_GROUP;
+        }
+        
+        group = worldNameCache.get(world);
+        if(group == null)
         {
-            if(worldGroups.get(grp).contains(world))
+            group = DEFAULT_GROUP;
+            for(int i = 0; i < worldPatterns.size(); i++)
             {
-                group = grp;
-                break;
+                if(worldPatterns.get(i).matcher(world).matches())
+                {
+                    group = worldPatternGroups.get(i);
+                    break;
+                }
             }
+            worldNameCache.put(world, group);
         }
 
         return group;
     }
 
+    /**
+     * Forgets the cached group of a world, such that the lookup caches do
+     * not keep worlds that have been unloaded.
+     * @param world The world that is unloaded.
+     */
+    public void forgetWorld(World world)
+    {
+        worldIdCache.remove(world.getUID());
+        worldNameCache.remove(world.getName());
+    }
+
     /**
      * Get all world groups.
      * @return The set of world groups.
@@ -140,7 +314,18 @@ public class WorldConfig
      */
     public String getGroupAlias(String group)
     {
-        return this.worldGroupsAliases.get(group);
+        GroupSettings settings = this.groupSettings.get(group);
+        return settings == null ? null : settings.getAlias();
+    }
+    
+    /**
+     * Get the effective settings of a group.
+     * @param group The group to get the settings for.
+     * @return The settings of the group, or null if the group does not exist.
+     */
+    public GroupSettings getGroupSettings(String group)
+    {
+        return this.groupSettings.get(group);
     }
     
     /**
@@ -164,35 +349,46 @@ public class WorldConfig
     }
 
     /**
-     * Get the specified configuration option for the specified world group,
-     * or for the default group if the world group does not have the option
-     * specified.
-     * @param group The world group to get the configuration option for.
+     * Get the specified configuration option for a world group, or for 
+     * the default group if the world group does not have the option
+     * specified, or the hard-coded default if neither specifies it.
+     * @param config The configuration of the world group.
+     * @param defaultConfig The configuration of the default group.
      * @param option The option's option key to get the value for.
-     * @param defaults Map containing the default options that will be used
-     * if both the group in question and the default group do not specify the
-     * options explicitly. 
      * @return The value of the configuration option.
      */
-    private <T> T get(String group, String option, Map<String, Object> defaults)
+    private static Object get(Map<String, Object> config, Map<String, Object> defaultConfig, String option)
     {
-        if(groupsConfig.get(group).containsKey(option) || option == "alias")
+        if(config.containsKey(option))
         {
-            T ret = (T) groupsConfig.get(group).get(option);
-            if(ret == null)
-            {   // Alias is not set; return group name
-                return (T) group;
-            }
-            return (T) groupsConfig.get(group).get(option);    
+            return config.get(option);
         }
-        else if(groupsConfig.get(DEFAULT_GROUP).containsKey(option))
+        else if(defaultConfig.containsKey(option))
         {
             // Get default group setting
-            return (T) groupsConfig.get(DEFAULT_GROUP).get(option);
+            return defaultConfig.get(option);
         }
         else
         {
-            return (T) defaults.get(option);
+            return Default.VALUES.get(option);
+        }
+    }
+    
+    /**
+     * Parse a location configuration option. The world is not looked up,
+     * such that the configuration can be parsed off the main thread.
+     * @param locationObj The configuration section or map of the location.
+     * @return The world, x, y and z of the location by key.
+     */
+    private static Map<String, Object> parseLocation(Object locationObj)
+    {
+        if(locationObj instanceof MemorySection)
+        {
+            return ((MemorySection) locationObj).getValues(false);
+        }
+        else
+        {
+            return (Map<String, Object>) locationObj;
         }
     }
     
@@ -205,7 +401,19 @@ public class WorldConfig
      */
     public boolean getEnabled(String group)
     {
-        return this.get(group, "enabled", Default.VALUES);
+        return this.groupSettings.get(group).isEnabled();
+    }
+    
+    /**
+     * Get whether players banished from the group are denied logging in.
+     * @param group The group to get the option for.
+     * @return True if banished players are denied logging in, false if not, 
+     * or the same for the default group if the group has no option set, or the
+     * hard-coded default if the default group does not have the option specified. 
+     */
+    public boolean getDenyLogin(String group)
+    {
+        return this.groupSettings.get(group).isDenyingLogin();
     }
     
     /**
@@ -217,7 +425,7 @@ public class WorldConfig
      */
     public int getLives(String group)
     {
-        return ((Number) this.get(group, "lives", Default.VALUES)).intValue();
+        return this.groupSettings.get(group).getLives();
     }
 
     /**
@@ -229,7 +437,7 @@ public class WorldConfig
      */
     public double getBanishTime(String group)
     {
-        return ((Number) this.get(group, "banishTime", Default.VALUES)).doubleValue();
+        return this.groupSettings.get(group).getBanishTime();
     }
     
     /**
@@ -241,7 +449,7 @@ public class WorldConfig
      */
     public double getLifeRegenerationTime(String group)
     {
-        return ((Number) this.get(group, "lifeRegenerationTime", Default.VALUES)).doubleValue();
+        return this.groupSettings.get(group).getLifeRegenerationTime();
     }
     
     /**
@@ -253,31 +461,6 @@ public class WorldConfig
      */
     public Location getBanishLocation(String group)
     {
-        Object banishLocationObj = this.get(group, "banishLocation", Default.VALUES);
-        if(banishLocationObj instanceof MemorySection)
-        {
-            MemorySection banishLocationSection = (MemorySection) banishLocationObj;
-            Map<String, Object> banishLocation = banishLocationSection.getValues(false);
-            
-            String world = (String) banishLocation.get("world");
-            double x = ((Number) banishLocation.get("x")).doubleValue();
-            double y = ((Number) banishLocation.get("y")).doubleValue();
-            double z = ((Number) banishLocation.get("z")).doubleValue();
-            
-            return new Location(Bukkit.getWorld(world), x, y, z);
-        }
-        else
-        {
-            Map<String, Object> banishLocation = (Map<String, Object>) banishLocationObj;
-            
-            String world = (String) banishLocation.get("world");
-            double x = ((Number) banishLocation.get("x")).doubleValue();
-            double y = ((Number) banishLocation.get("y")).doubleValue();
-            double z = ((Number) banishLocation.get("z")).doubleValue();
-            
-            return new Location(Bukkit.getWorld(world), x, y, z);
-        }
+        return this.groupSettings.get(group).getBanishLocation();
     }
-
-    
 }
@@ -0,0 +1,67 @@
+package org.kepow.customhardcore;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Class that represents the player records of a world group that changed
+ * since they were last saved.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public final class WorldGroupChanges
+{
+    private final String worldGroup;
+    private final List<PlayerRecord> upserts;
+    private final List<UUID> deletes;
+    
+    /**
+     * Constructor.
+     * @param worldGroup The world group.
+     * @param upserts The records to insert or replace.
+     * @param deletes The UUIDs of the players whose records are to be deleted.
+     */
+    public WorldGroupChanges(String worldGroup, List<PlayerRecord> upserts, List<UUID> deletes)
+    {
+        this.worldGroup = worldGroup;
+        this.upserts = upserts;
+        this.deletes = deletes;
+    }
+    
+    /**
+     * Gets the world group.
+     * @return The world group.
+     */
+    public String getWorldGroup()
+    {
+        return this.worldGroup;
+    }
+    
+    /**
+     * Gets the records to insert or replace.
+     * @return The records to insert or replace.
+     */
+    public List<PlayerRecord> getUpserts()
+    {
+        return this.upserts;
+    }
+    
+    /**
+     * Gets the UUIDs of the players whose records are to be deleted.
+     * @return The UUIDs of the players whose records are to be deleted.
+     */
+    public List<UUID> getDeletes()
+    {
+        return this.deletes;
+    }
+    
+    /**
+     * Gets the number of records changed.
+     * @return The number of records changed.
+     */
+    public int size()
+    {
+        return this.upserts.size() + this.deletes.size();
+    }
+}
@@ -0,0 +1,139 @@
+package org.kepow.customhardcore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.bukkit.configuration.serialization.SerializableAs;
+
+/**
+ * Class that represents the player data of a world group as it is stored
+ * in data.yml, keyed by UUID string. It serializes under the alias the
+ * world managers used to be stored with, such that existing data files
+ * load as before.
+ *
+ * @author Thomas Churchman
+ *
+ */
+@SerializableAs("org.kepow.customhardcore.WorldManager")
+public class WorldGroupData implements ConfigurationSerializable
+{
+    private final String worldGroup;
+
+    private final Map<String, Long> banishedUntil;
+    private final Map<String, Long> regenerationStartTime;
+    private final Map<String, Integer> deaths;
+
+    /**
+     * Constructor.
+     * @param worldGroup The world group the data is of.
+     */
+    public WorldGroupData(String worldGroup)
+    {
+        this.worldGroup = worldGroup;
+        this.banishedUntil = new HashMap<String, Long>();
+        this.regenerationStartTime = new HashMap<String, Long>();
+        this.deaths = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Constructor. Copies the data of another WorldGroupData.
+     * @param other The data to copy.
+     */
+    public WorldGroupData(WorldGroupData other)
+    {
+        this.worldGroup = other.worldGroup;
+        this.banishedUntil = new HashMap<String, Long>(other.banishedUntil);
+        this.regenerationStartTime = new HashMap<String, Long>(other.regenerationStartTime);
+        this.deaths = new HashMap<String, Integer>(other.deaths);
+    }
+
+    /**
+     * Constructor.
+     * @param mapO A configuration map to construct the WorldGroupData out of.
+     */
+    public WorldGroupData(Map<String, Object> mapO)
+    {
+        this((String) mapO.get("worldGroup"));
+
+        Map<String, Object> banishedUntil = (Map<String, Object>) mapO.get("banishedUntil");
+        Map<String, Object> regenerationStartTime = (Map<String, Object>) mapO.get("regenerationStartTime");
+        Map<String, Object> deaths = (Map<String, Object>) mapO.get("deaths");
+
+        if(banishedUntil != null)
+        {
+            for(Map.Entry<String, Object> entry : banishedUntil.entrySet())
+            {
+                this.banishedUntil.put(entry.getKey(), ((Number) entry.getValue()).longValue());
+            }
+        }
+
+        if(regenerationStartTime != null)
+        {
+            for(Map.Entry<String, Object> entry : regenerationStartTime.entrySet())
+            {
+                this.regenerationStartTime.put(entry.getKey(), ((Number) entry.getValue()).longValue());
+            }
+        }
+
+        if(deaths != null)
+        {
+            for(Map.Entry<String, Object> entry : deaths.entrySet())
+            {
+                this.deaths.put(entry.getKey(), ((Number) entry.getValue()).intValue());
+            }
+        }
+    }
+
+    /**
+     * Gets the world group the data is of.
+     * @return The world group the data is of.
+     */
+    public String getWorldGroup()
+    {
+        return this.worldGroup;
+    }
+
+    /**
+     * Gets the banishment end times by player UUID.
+     * @return The banishment end times by player UUID.
+     */
+    public Map<String, Long> getBanishedUntil()
+    {
+        return this.banishedUntil;
+    }
+
+    /**
+     * Gets the life regeneration start times by player UUID.
+     * @return The life regeneration start times by player UUID.
+     */
+    public Map<String, Long> getRegenerationStartTime()
+    {
+        return this.regenerationStartTime;
+    }
+
+    /**
+     * Gets the deaths by player UUID.
+     * @return The deaths by player UUID.
+     */
+    public Map<String, Integer> getDeaths()
+    {
+        return this.deaths;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.bukkit.configuration.serialization.ConfigurationSerializable#serialize()
+     */
+    public Map<String, Object> serialize()
+    {
+        Map<String, Object> map = new HashMap<String, Object>();
+
+        map.put("worldGroup", worldGroup);
+        map.put("banishedUntil", banishedUntil);
+        map.put("regenerationStartTime", regenerationStartTime);
+        map.put("deaths", deaths);
+
+        return map;
+    }
+}
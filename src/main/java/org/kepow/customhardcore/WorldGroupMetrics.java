@@ -0,0 +1,150 @@
+package org.kepow.customhardcore;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that holds the metrics of a world group. The world manager
+ * publishes its counts into it on the main thread, the data saver records
+ * its writes on the save thread, and the metrics exporter reads it on its
+ * own thread; no thread waits for another.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class WorldGroupMetrics implements WorldGroupMetricsMBean
+{
+    private final String worldGroup;
+
+    private final AtomicLong deaths = new AtomicLong();
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private volatile int trackedPlayers;
+    private volatile int banishedPlayers;
+    private volatile long lastSaveNanos;
+    private volatile double deathsPerMinute;
+
+    // Only touched by the thread that samples the metrics
+    private final long[] deathSamples;
+    private int samples;
+
+    /**
+     * Constructor.
+     * @param worldGroup The world group.
+     * @param samplesPerMinute The number of times per minute {@link #sample()} is called.
+     */
+    public WorldGroupMetrics(String worldGroup, int samplesPerMinute)
+    {
+        this.worldGroup = worldGroup;
+        this.deathSamples = new long[samplesPerMinute + 1];
+    }
+
+    /**
+     * Records the death of a player.
+     */
+    public void recordDeath()
+    {
+        deaths.incrementAndGet();
+    }
+
+    /**
+     * Publishes the number of tracked and banished players.
+     * @param trackedPlayers The number of players whose state is held in memory.
+     * @param banishedPlayers The number of players that are banished.
+     */
+    public void update(int trackedPlayers, int banishedPlayers)
+    {
+        this.trackedPlayers = trackedPlayers;
+        this.banishedPlayers = banishedPlayers;
+    }
+
+    /**
+     * Records that the changes of the world group have been written.
+     * @param nanos How long writing the changes took, in nanoseconds.
+     * @param records The number of records written.
+     */
+    public void recordWrite(long nanos, int records)
+    {
+        this.lastSaveNanos = nanos;
+        this.recordsWritten.addAndGet(records);
+    }
+
+    /**
+     * Takes a sample of the number of deaths to compute the deaths per
+     * minute from. Must always be called from the same thread.
+     */
+    public void sample()
+    {
+        long current = deaths.get();
+        int window = Math.min(samples, deathSamples.length - 1);
+        long oldest = deathSamples[(samples - window) % deathSamples.length];
+
+        deathSamples[samples % deathSamples.length] = current;
+        samples++;
+        if(window > 0)
+        {   // Scale up while there is less than a minute of samples
+            deathsPerMinute = (current - oldest) * (deathSamples.length - 1) / (double) window;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.WorldGroupMetricsMBean#getWorldGroup()
+     */
+    public String getWorldGroup()
+    {
+        return worldGroup;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.WorldGroupMetricsMBean#getTrackedPlayers()
+     */
+    public int getTrackedPlayers()
+    {
+        return trackedPlayers;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.WorldGroupMetricsMBean#getBanishedPlayers()
+     */
+    public int getBanishedPlayers()
+    {
+        return banishedPlayers;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.WorldGroupMetricsMBean#getDeaths()
+     */
+    public long getDeaths()
+    {
+        return deaths.get();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.WorldGroupMetricsMBean#getDeathsPerMinute()
+     */
+    public double getDeathsPerMinute()
+    {
+        return deathsPerMinute;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.WorldGroupMetricsMBean#getLastSaveMillis()
+     */
+    public double getLastSaveMillis()
+    {
+        return lastSaveNanos / 1000000.0;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.WorldGroupMetricsMBean#getRecordsWritten()
+     */
+    public long getRecordsWritten()
+    {
+        return recordsWritten.get();
+    }
+}
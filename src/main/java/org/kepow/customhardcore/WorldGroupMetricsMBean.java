@@ -0,0 +1,56 @@
+package org.kepow.customhardcore;
+
+/**
+ * Management interface of the metrics of a world group, as registered
+ * with JMX.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public interface WorldGroupMetricsMBean
+{
+    /**
+     * Gets the name of the world group.
+     * @return The name of the world group.
+     */
+    public String getWorldGroup();
+
+    /**
+     * Gets the number of players whose state is held in memory.
+     * @return The number of tracked players.
+     */
+    public int getTrackedPlayers();
+
+    /**
+     * Gets the number of players that are banished, including those
+     * whose state is not held in memory.
+     * @return The number of banished players.
+     */
+    public int getBanishedPlayers();
+
+    /**
+     * Gets the number of deaths since the plugin was enabled.
+     * @return The number of deaths.
+     */
+    public long getDeaths();
+
+    /**
+     * Gets the number of deaths in the last minute.
+     * @return The number of deaths per minute.
+     */
+    public double getDeathsPerMinute();
+
+    /**
+     * Gets how long writing the changes of the world group took in the
+     * last save that had any.
+     * @return The duration in milliseconds.
+     */
+    public double getLastSaveMillis();
+
+    /**
+     * Gets the number of player records written since the plugin was
+     * enabled.
+     * @return The number of records written.
+     */
+    public long getRecordsWritten();
+}
@@ -1,13 +1,17 @@
 package org.kepow.customhardcore;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.bukkit.Location;
-import org.bukkit.OfflinePlayer;
-import org.bukkit.World;
-import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
 import org.bukkit.event.entity.PlayerDeathEvent;
 import org.bukkit.event.player.PlayerRespawnEvent;
@@ -18,90 +22,132 @@ import org.bukkit.event.player.PlayerRespawnEvent;
  * @author Thomas Churchman
  *
  */
-public class WorldManager implements ConfigurationSerializable
+public class WorldManager
 {
+    private static final long LOGIN_TIME = 60 * 1000L;
+    
     private final String worldGroup;
     
-    private final boolean enabled;
-    private final boolean regeneration;
-    private final int numLives;
-    private final double banishTime;
-    private final double regenerationTime;
-    private final Location banishLocation;
+    private volatile GroupSettings settings;
     
-    private final Map<OfflinePlayer, Long> banishedUntil;
-    private final Map<OfflinePlayer, Long> regenerationStartTime;
-    private final Map<OfflinePlayer, Integer> deaths;
-
+    private final PlayerStore players;
+    private final ConcurrentHashMap<UUID, Prefetched> prefetched;
+    private final PriorityQueue<Deadline> deadlines;
+    private final BanIndex banishments;
+    private final WorldGroupMetrics metrics;
+    private List<PlayerRecord> journalBatch;
     
     /**
-     * Constructor.
+     * Constructor. Indexes the stored banishments of the world group on 
+     * the calling thread.
      * @param worldGroup The world group this manager is for.
      */
     public WorldManager(String worldGroup)
+    {
+        this(worldGroup, indexBanishments(worldGroup));
+    }
+    
+    /**
+     * Constructor.
+     * @param worldGroup The world group this manager is for.
+     * @param banishments The stored banishments of the world group, as 
+     * indexed by {@link #indexBanishments(String)}. The manager takes over
+     * the index.
+     */
+    public WorldManager(String worldGroup, BanIndex banishments)
     {
         this.worldGroup = worldGroup;
         
-        enabled = PluginState.getWorldConfig().getEnabled(worldGroup);
-        numLives = PluginState.getWorldConfig().getLives(worldGroup);
-        banishTime = PluginState.getWorldConfig().getBanishTime(worldGroup);
-        banishLocation = PluginState.getWorldConfig().getBanishLocation(worldGroup);
-        regenerationTime = PluginState.getWorldConfig().getLifeRegenerationTime(worldGroup);
-        regeneration = (regenerationTime > 0);
+        settings = PluginState.getWorldConfig().getGroupSettings(worldGroup);
         
-        deaths = new HashMap<OfflinePlayer, Integer>();
-        banishedUntil = new HashMap<OfflinePlayer, Long>();
-        regenerationStartTime = new HashMap<OfflinePlayer, Long>();
+        players = new PlayerStore();
+        prefetched = new ConcurrentHashMap<UUID, Prefetched>();
+        deadlines = new PriorityQueue<Deadline>();
+        this.banishments = banishments;
+        metrics = PluginState.getMetrics().getGroup(worldGroup);
     }
     
     /**
-     * Constructor.
-     * @param mapO A configuration map to construct the WorldSimulator out of.
+     * Indexes the stored banishments of all players of a world group, 
+     * including those whose state is not loaded. This scans the storage,
+     * and is safe to call off the main thread.
+     * @param worldGroup The world group.
+     * @return The banishment index.
      */
-    public WorldManager(Map<String, Object> mapO)
+    public static BanIndex indexBanishments(final String worldGroup)
     {
-        this.worldGroup = (String) mapO.get("worldGroup");
-        
-        enabled = PluginState.getWorldConfig().getEnabled(worldGroup);
-        numLives = PluginState.getWorldConfig().getLives(worldGroup);
-        banishTime = PluginState.getWorldConfig().getBanishTime(worldGroup);
-        banishLocation = PluginState.getWorldConfig().getBanishLocation(worldGroup);
-        regenerationTime = PluginState.getWorldConfig().getLifeRegenerationTime(worldGroup);
-        regeneration = (regenerationTime > 0);
+        BanIndex banishments = new BanIndex();
+        StorageBackend storage = PluginState.getStorage();
+        if(storage == null)
+        {
+            return banishments;
+        }
         
-        this.banishedUntil = new HashMap<OfflinePlayer, Long>();
-        this.regenerationStartTime = new HashMap<OfflinePlayer, Long>();
-        this.deaths = new HashMap<OfflinePlayer, Integer>();
+        final long now = Utils.getCurrentTime();
+        final List<PlayerRecord> banished = new ArrayList<PlayerRecord>();
+        try
+        {
+            storage.scan(worldGroup, new StorageBackend.Visitor()
+            {
+                public void visit(PlayerRecord record)
+                {
+                    if(record.getBanishedUntil() != PlayerRecord.NONE && record.getBanishedUntil() >= now)
+                    {
+                        banished.add(record);
+                    }
+                }
+            });
+        }
+        catch(IOException e)
+        {
+            PluginState.getPlugin().getLogger().severe("Could not index the banishments of world group " 
+                + worldGroup + ": " + e);
+        }
         
-        Map<String, Long> banishedUntil = (Map<String, Long>) mapO.get("banishedUntil");
-        Map<String, Long> regenerationStartTime = (Map<String, Long>) mapO.get("regenerationStartTime");
-        Map<String, Integer> deaths = (Map<String, Integer>) mapO.get("deaths");
+        banishments.addAll(banished);
+        return banishments;
+    }
+    
+    /**
+     * Class that represents the time at which a banishment of a player
+     * expires or a life of a player regenerates. Deadlines are not removed
+     * when the state they were scheduled for changes; instead, they are 
+     * checked against the state when they are due.
+     */
+    private static final class Deadline implements Comparable<Deadline>
+    {
+        private final long time;
+        private final long mostSignificantBits;
+        private final long leastSignificantBits;
+        private final boolean banishment;
         
-        if(banishedUntil != null)
+        private Deadline(long time, long mostSignificantBits, long leastSignificantBits, boolean banishment)
         {
-            for(String uuid : banishedUntil.keySet())
-            {
-                UUID u = UUID.fromString(uuid);
-                this.banishedUntil.put(PluginState.getPlugin().getServer().getOfflinePlayer(u), ((Number) banishedUntil.get(uuid)).longValue());
-            }
+            this.time = time;
+            this.mostSignificantBits = mostSignificantBits;
+            this.leastSignificantBits = leastSignificantBits;
+            this.banishment = banishment;
         }
         
-        if(deaths != null)
+        public int compareTo(Deadline other)
         {
-            for(String uuid : deaths.keySet())
-            {
-                UUID u = UUID.fromString(uuid);
-                this.deaths.put(PluginState.getPlugin().getServer().getOfflinePlayer(u), deaths.get(uuid));
-            }
+            return this.time < other.time ? -1 : (this.time == other.time ? 0 : 1);
         }
+    }
+    
+    /**
+     * Class that holds the state of a player loaded ahead of their use,
+     * with the time it was loaded.
+     */
+    private static final class Prefetched
+    {
+        private final PlayerRecord record;
+        private final long time;
         
-        if(regenerationStartTime != null)
+        private Prefetched(PlayerRecord record, long time)
         {
-            for(String uuid : regenerationStartTime.keySet())
-            {
-                UUID u = UUID.fromString(uuid);
-                this.regenerationStartTime.put(PluginState.getPlugin().getServer().getOfflinePlayer(u), ((Number) regenerationStartTime.get(uuid)).longValue());
-            }
+            this.record = record;
+            this.time = time;
         }
     }
     
@@ -111,7 +157,7 @@ public class WorldManager implements ConfigurationSerializable
      */
     public void handleWorldJoin(Player player)
     {
-        if(enabled && isBanished(player))
+        if(settings.isEnabled() && isBanished(player))
         {
             enforceBanishment(player);
         }
@@ -125,7 +171,7 @@ public class WorldManager implements ConfigurationSerializable
      */
     public void handleRespawn(Player player, PlayerRespawnEvent event)
     {
-        if(enabled && isBanished(player))
+        if(settings.isEnabled() && isBanished(player))
         {
             enforceBanishment(player, event);
         }
@@ -137,17 +183,15 @@ public class WorldManager implements ConfigurationSerializable
      */
     public void handleDeath(Player player, PlayerDeathEvent event)
     {
-        if(!enabled)
+        if(!settings.isEnabled())
         {
             return;
         }
+        metrics.recordDeath();
         
         int livesLeft = this.getLivesLeft(player);
-        if(!deaths.containsKey(player))
-        {
-            deaths.put(player, 0);
-        }
-        int deaths = this.deaths.get(player) + 1;
+        int slot = load(player);
+        int deaths = this.players.getDeaths(slot) + 1;
         --livesLeft;
         
         if(livesLeft <= 0)
@@ -158,52 +202,96 @@ public class WorldManager implements ConfigurationSerializable
             player.getWorld().strikeLightningEffect(player.getLocation());
             
             // Message
-            StringBuilder year = new StringBuilder();
-            StringBuilder month = new StringBuilder();
-            StringBuilder day = new StringBuilder();
-            StringBuilder hour = new StringBuilder();
-            StringBuilder minute = new StringBuilder();
-            StringBuilder second = new StringBuilder();
-            Utils.prepareTimeStrings(this.banishedUntil(player), year, month, day, hour, minute, second);
+            FormattedTime time = TimeFormatter.format(this.banishedUntil(player));
             
-            String message = event.getDeathMessage() + "\n" + Utils.prepareMessage("broadcasts.banished", 
+            broadcastDeath(event, "broadcasts.banished", 
                 "%worldGroup", this.getWorldGroup(),
                 "%worldGroupAlias", this.getWorldGroupAlias(),
                 "%player", player.getName(),
-                "%days", banishTime,
-                "%year", year,
-                "%month", month,
-                "%day", day,
-                "%hours", hour,
-                "%minutes", minute,
-                "%seconds", second);
-            event.setDeathMessage(message);
+                "%days", settings.getBanishTime(),
+                "%year", time.getYear(),
+                "%month", time.getMonth(),
+                "%day", time.getDay(),
+                "%hours", time.getHours(),
+                "%minutes", time.getMinutes(),
+                "%seconds", time.getSeconds());
         }
         else
         {
-            this.deaths.put(player, deaths);
+            this.players.setDeaths(slot, deaths);
             
-            if(!this.regenerationStartTime.containsKey(player))
+            if(this.players.getRegenerationStartTime(slot) == PlayerRecord.NONE)
             {   // The player is not currently regenerating a life, start regenerating the life just lost.
-                this.regenerationStartTime.put(player, Utils.getCurrentTime());
+                setRegenerationStartTime(slot, Utils.getCurrentTime());
             }
+            journal(slot);
             
-            String message = event.getDeathMessage() + "\n" + Utils.prepareMessage("broadcasts.died", 
+            broadcastDeath(event, "broadcasts.died", 
                 "%worldGroup", this.getWorldGroup(),
                 "%worldGroupAlias", this.getWorldGroupAlias(),
                 "%player", player.getName(),
                 "%lives", getLivesLeft(player));
-            event.setDeathMessage(message);
         }
     }
     
+    /**
+     * Appends a message to the death message of a death event. If there
+     * are locale bundles, the death message is instead sent to every
+     * online player with the message in their locale; the message is
+     * rendered once per distinct locale. The console logs the message of
+     * the default bundle, as sent to players without a locale bundle.
+     * @param event The death event.
+     * @param message The message string key (without the "messages." prefix) to append.
+     * @param replacements An array of consecutive {String, Object} pairs.
+     */
+    private void broadcastDeath(PlayerDeathEvent event, String message, Object... replacements)
+    {
+        String deathMessage = event.getDeathMessage();
+        if(!Messages.hasLocales())
+        {
+            event.setDeathMessage(deathMessage + "\n" + Utils.prepareMessage(message, replacements));
+            return;
+        }
+        
+        String prefix = deathMessage != null && !deathMessage.isEmpty() ? deathMessage + "\n" : "";
+        event.setDeathMessage(null);
+        
+        Messages defaults = Messages.getDefaults();
+        String logged = prefix + defaults.format(message, replacements);
+        
+        Map<Messages, String> rendered = new HashMap<Messages, String>();
+        rendered.put(defaults, logged);
+        for(Player recipient : PluginState.getPlugin().getServer().getOnlinePlayers())
+        {
+            Messages bundle = Messages.forRecipient(recipient);
+            String text = rendered.get(bundle);
+            if(text == null)
+            {
+                text = prefix + bundle.format(message, replacements);
+                rendered.put(bundle, text);
+            }
+            recipient.sendMessage(text);
+        }
+        PluginState.getPlugin().getLogger().info(ChatColor.stripColor(logged));
+    }
+    
     /**
      * Banishes a player for the default banish duration. 
      * @param player The player to banish.
      */
     public void banish(Player player)
     {
-        banish(player, banishTime);
+        banish(player.getUniqueId(), settings.getBanishTime());
+    }
+    
+    /**
+     * Banishes a player for the default banish duration. Banishment is 
+     * enforced if the player is online.
+     * @param uuid The UUID of the player to banish.
+     */
+    public void banish(UUID uuid)
+    {
+        banish(uuid, settings.getBanishTime());
     }
     
     /**
@@ -213,20 +301,35 @@ public class WorldManager implements ConfigurationSerializable
      */
     public void banish(Player player, double banishTime)
     {
+        banish(player.getUniqueId(), banishTime);
+    }
+    
+    /**
+     * Banishes a player. Banishment is enforced if the player is online.
+     * @param uuid The UUID of the player to banish.
+     * @param banishTime The banish duration.
+     */
+    public void banish(UUID uuid, double banishTime)
+    {
+        int slot = load(uuid);
+        
         final long secondsPerDay = 60*60*24; // 60 seconds per minute, 60 minutes per hour, 24 hours per day
         
         long banishUntil = (long) (Utils.getCurrentTime() + secondsPerDay * banishTime);
         
         // Set banished
-        this.banishedUntil.put(player, banishUntil);
+        setBanishedUntil(slot, banishUntil);
         
         // Reset deaths
-        this.deaths.remove(player);
+        this.players.setDeaths(slot, 0);
         
         // Reset life regeneration
-        this.regenerationStartTime.remove(player);
+        this.players.setRegenerationStartTime(slot, PlayerRecord.NONE);
         
-        if(!player.isDead())
+        journal(slot);
+        
+        Player player = getOnlinePlayer(slot);
+        if(player != null && !player.isDead())
         {
             enforceBanishment(player);
         }
@@ -238,12 +341,99 @@ public class WorldManager implements ConfigurationSerializable
      */
     public void debanish(Player player)
     {
-        if(this.banishedUntil.containsKey(player))
+        debanish(player.getUniqueId());
+    }
+    
+    /**
+     * Debanishes a player.
+     * @param uuid The UUID of the player to debanish.
+     */
+    public void debanish(UUID uuid)
+    {
+        int slot = load(uuid);
+        
+        if(this.players.getBanishedUntil(slot) != PlayerRecord.NONE)
         {
-            this.banishedUntil.remove(player);
+            setBanishedUntil(slot, PlayerRecord.NONE);
+            journal(slot);
         }
     }
     
+    /**
+     * Resets a player as part of a bulk operation: their deaths, banishment
+     * and life regeneration are cleared.
+     * @param uuid The UUID of the player.
+     */
+    public void resetPlayer(UUID uuid)
+    {
+        int slot = load(uuid);
+        
+        this.players.setDeaths(slot, 0);
+        setBanishedUntil(slot, PlayerRecord.NONE);
+        this.players.setRegenerationStartTime(slot, PlayerRecord.NONE);
+        journal(slot);
+    }
+    
+    /**
+     * Gives a player back lives they lost, as part of a bulk operation. A
+     * player never has more lives than the world group gives.
+     * @param uuid The UUID of the player.
+     * @param lives The number of lives to give.
+     */
+    public void grantLives(UUID uuid, int lives)
+    {
+        int slot = load(uuid);
+        
+        int deaths = this.players.getDeaths(slot);
+        int remaining = Math.max(deaths - lives, 0);
+        if(remaining != deaths)
+        {
+            this.players.setDeaths(slot, remaining);
+            if(remaining == 0)
+            {
+                this.players.setRegenerationStartTime(slot, PlayerRecord.NONE);
+            }
+            journal(slot);
+        }
+    }
+    
+    /**
+     * Gets the players whose state is in memory.
+     * @return The UUIDs of the players.
+     */
+    public List<UUID> getResidentPlayers()
+    {
+        List<UUID> uuids = new ArrayList<UUID>(this.players.size());
+        for(int slot = 0; slot < this.players.capacity(); slot++)
+        {
+            if(this.players.isOccupied(slot))
+            {
+                uuids.add(this.players.getUniqueId(slot));
+            }
+        }
+        return uuids;
+    }
+    
+    /**
+     * Gets the players that have stored state in the world group. Safe to 
+     * call off the main thread. Changes that have not been saved yet are 
+     * not reflected; combine with {@link #getResidentPlayers()}.
+     * @return The UUIDs of the players.
+     * @throws IOException
+     */
+    public List<UUID> getStoredPlayers() throws IOException
+    {
+        final List<UUID> uuids = new ArrayList<UUID>();
+        PluginState.getStorage().scan(worldGroup, new StorageBackend.Visitor()
+        {
+            public void visit(PlayerRecord record)
+            {
+                uuids.add(record.getUniqueId());
+            }
+        });
+        return uuids;
+    }
+    
     /**
      * Checks whether a player is banished.
      * @param player The player to check banish status of.
@@ -251,13 +441,25 @@ public class WorldManager implements ConfigurationSerializable
      */
     public boolean isBanished(Player player)
     {
-        if(banishedUntil.containsKey(player))
+        return isBanished(player.getUniqueId());
+    }
+    
+    /**
+     * Checks whether a player is banished.
+     * @param uuid The UUID of the player to check banish status of.
+     * @return True if the player is banished, false otherwise.
+     */
+    public boolean isBanished(UUID uuid)
+    {
+        int slot = load(uuid);
+        
+        long banishedUntil = this.players.getBanishedUntil(slot);
+        if(banishedUntil != PlayerRecord.NONE)
         {
-            long banishedUntil = this.banishedUntil.get(player);
-            
             if(banishedUntil < Utils.getCurrentTime())
             {
-                this.banishedUntil.remove(player);
+                setBanishedUntil(slot, PlayerRecord.NONE);
+                this.players.setDirty(slot, true);
                 return false;
             }
             else
@@ -279,13 +481,26 @@ public class WorldManager implements ConfigurationSerializable
      */
     public long banishedUntil(Player player)
     {
-        if(banishedUntil.containsKey(player))
+        return banishedUntil(player.getUniqueId());
+    }
+    
+    /**
+     * Returns the time until which a player is banished.
+     * @param uuid The UUID of the player to get the time for.
+     * @return The time until which the player is banished, 
+     * or -1 if the player is not banished.
+     */
+    public long banishedUntil(UUID uuid)
+    {
+        int slot = load(uuid);
+        
+        long banishedUntil = this.players.getBanishedUntil(slot);
+        if(banishedUntil != PlayerRecord.NONE)
         {
-            long banishedUntil = this.banishedUntil.get(player);
-            
             if(banishedUntil < Utils.getCurrentTime())
             {
-                this.banishedUntil.remove(player);
+                setBanishedUntil(slot, PlayerRecord.NONE);
+                this.players.setDirty(slot, true);
                 return -1;
             }
             else
@@ -316,28 +531,19 @@ public class WorldManager implements ConfigurationSerializable
      */
     private void enforceBanishment(Player player, PlayerRespawnEvent event)
     {
-        World world = player.getWorld();
-        String worldGroup = PluginState.getWorldConfig().getGroupFromWorld(world);
-        
-        if(worldGroup.equals(this.worldGroup))
+        if(PluginState.getPlugin().getSession(player).getWorldManager() == this)
         {
-            StringBuilder year = new StringBuilder();
-            StringBuilder month = new StringBuilder();
-            StringBuilder day = new StringBuilder();
-            StringBuilder hour = new StringBuilder();
-            StringBuilder minute = new StringBuilder();
-            StringBuilder second = new StringBuilder();
-            Utils.prepareTimeStrings(this.banishedUntil(player), year, month, day, hour, minute, second);
+            FormattedTime time = TimeFormatter.format(this.banishedUntil(player));
             
-            player.sendMessage(Utils.prepareMessage("whispers.banished", 
+            player.sendMessage(Utils.prepareMessage(player, "whispers.banished", 
                 "%worldGroup", this.getWorldGroup(),
                 "%worldGroupAlias", this.getWorldGroupAlias(),
-                "%year", year,
-                "%month", month,
-                "%day", day,
-                "%hours", hour,
-                "%minutes", minute,
-                "%seconds", second));
+                "%year", time.getYear(),
+                "%month", time.getMonth(),
+                "%day", time.getDay(),
+                "%hours", time.getHours(),
+                "%minutes", time.getMinutes(),
+                "%seconds", time.getSeconds()));
             
             if(event == null)
             {
@@ -345,7 +551,7 @@ public class WorldManager implements ConfigurationSerializable
             }
             else
             {
-                event.setRespawnLocation(this.banishLocation);
+                event.setRespawnLocation(settings.getBanishLocation());
             }
         }
     }
@@ -357,7 +563,7 @@ public class WorldManager implements ConfigurationSerializable
      */
     private void teleport(Player player)
     {
-        player.teleport(banishLocation);
+        player.teleport(settings.getBanishLocation());
     }
 
     /**
@@ -378,6 +584,30 @@ public class WorldManager implements ConfigurationSerializable
         return PluginState.getWorldConfig().getGroupAlias(this.worldGroup);
     }
     
+    /**
+     * Replaces the settings of the world group, keeping the state of all 
+     * players. If the life regeneration time changed, the regenerations
+     * of the players in memory are rescheduled.
+     * @param settings The new settings.
+     */
+    public void applySettings(GroupSettings settings)
+    {
+        GroupSettings old = this.settings;
+        this.settings = settings;
+        
+        if(old.getLifeRegenerationTime() != settings.getLifeRegenerationTime())
+        {
+            for(int slot = 0; slot < this.players.capacity(); slot++)
+            {
+                if(this.players.isOccupied(slot) 
+                    && this.players.getRegenerationStartTime(slot) != PlayerRecord.NONE)
+                {
+                    setRegenerationStartTime(slot, this.players.getRegenerationStartTime(slot));
+                }
+            }
+        }
+    }
+    
     /**
      * Gets whether the world manager is enabled (i.e., whether the
      * world group is in hardcore mode).
@@ -385,7 +615,18 @@ public class WorldManager implements ConfigurationSerializable
      */
     public boolean isEnabled()
     {
-        return this.enabled;
+        return this.settings.isEnabled();
+    }
+    
+    /**
+     * Gets whether players banished from this world group are denied
+     * logging in to the server.
+     * @return True if banished players are denied logging in, false otherwise.
+     */
+    public boolean isDenyingLogin()
+    {
+        GroupSettings settings = this.settings;
+        return settings.isEnabled() && settings.isDenyingLogin();
     }
     
     /**
@@ -395,7 +636,7 @@ public class WorldManager implements ConfigurationSerializable
      */
     public boolean isRegenerationEnabled()
     {
-        return this.regeneration;
+        return this.settings.getLifeRegenerationTime() > 0;
     }
     
     /**
@@ -404,7 +645,7 @@ public class WorldManager implements ConfigurationSerializable
      */
     public int numLives()
     {
-        return this.numLives;
+        return this.settings.getLives();
     }
     
     /**
@@ -413,7 +654,7 @@ public class WorldManager implements ConfigurationSerializable
      */
     public double banishTime()
     {
-        return this.banishTime;
+        return this.settings.getBanishTime();
     }
     
     /**
@@ -423,59 +664,121 @@ public class WorldManager implements ConfigurationSerializable
      */
     public int getLivesLeft(Player player)
     {
-        this.regeneration(player);
+        return getLivesLeft(player.getUniqueId());
+    }
+    
+    /**
+     * Get the number of lives a player has left.
+     * @param uuid The UUID of the player to get the number of lives for.
+     * @return The number of lives the player has left. 
+     */
+    public int getLivesLeft(UUID uuid)
+    {
+        int slot = load(uuid);
+        regenerate(slot);
         
-        int deaths = 0;
-        if(this.deaths.containsKey(player))
-        {
-            deaths = this.deaths.get(player);
+        return this.settings.getLives()-this.players.getDeaths(slot);
+    }
+    
+    /**
+     * Handle life regeneration, and journal the regenerated lives.
+     * @param slot The slot of the player to handle life regeneration for.
+     * @return True if lives were regenerated, false otherwise.
+     */
+    private boolean regenerate(int slot)
+    {
+        int deathsBefore = this.players.getDeaths(slot);
+        this.regeneration(slot);
+        if(deathsBefore != this.players.getDeaths(slot))
+        {   // Lives were regenerated
+            journal(slot);
+            return true;
         }
-        
-        return this.numLives-deaths;
+        return false;
     }
     
     /**
      * Handle life regeneration.
-     * @param player The player to handle life regeneration for.
+     * @param slot The slot of the player to handle life regeneration for.
      */
-    private void regeneration(Player player)
+    private void regeneration(int slot)
     {
-        if(!this.regeneration)
+        if(!isRegenerationEnabled())
         {   // Life regeneration is disabled.
             return;
         }
         
-        if(!this.deaths.containsKey(player) || this.deaths.get(player) <= 0)
+        int deaths = this.players.getDeaths(slot);
+        if(deaths <= 0)
         {   // The player has not died, and thus has no lives to regenerate.
-            this.regenerationStartTime.remove(player);
+            if(this.players.getRegenerationStartTime(slot) != PlayerRecord.NONE)
+            {
+                this.players.setRegenerationStartTime(slot, PlayerRecord.NONE);
+                this.players.setDirty(slot, true);
+            }
             return;
         }
         
         final long secondsPerDay = 60*60*24; // 60 seconds per minute, 60 minutes per hour, 24 hours per day
-        long regenerationTime = (long) (this.regenerationTime * secondsPerDay);
+        long regenerationTime = (long) (this.settings.getLifeRegenerationTime() * secondsPerDay);
         
-        if(this.regenerationStartTime.containsKey(player))
-        {   // The player has a life to regenerate.
-            long regenerationStartTime = this.regenerationStartTime.get(player);
-            
-            if(regenerationStartTime + regenerationTime <= Utils.getCurrentTime())
-            {   // The player should regenerate a life now.
-                
-                this.deaths.put(player, this.deaths.get(player)-1);
-                if(this.deaths.get(player) > 0)
-                {   // The player has another live to regenerate, even after the regeneration that just finished.
-                    this.regenerationStartTime.put(player, regenerationStartTime + regenerationTime);
-                    
-                    this.regeneration(player);
-                }
-                else
-                {   // The player has no more lives to regenerate.
-                    this.regenerationStartTime.remove(player);
-                }
-            }
+        long regenerationStartTime = this.players.getRegenerationStartTime(slot);
+        if(regenerationStartTime == PlayerRecord.NONE)
+        {   // The player has no life to regenerate.
+            return;
+        }
+        
+        long regenerated = livesRegenerated(deaths, regenerationStartTime, regenerationTime, Utils.getCurrentTime());
+        if(regenerated == 0)
+        {   // The player has not finished regenerating a life yet.
+            return;
+        }
+        
+        if(regenerated < deaths)
+        {   // The player has another life to regenerate.
+            this.players.setDeaths(slot, deaths - (int) regenerated);
+            setRegenerationStartTime(slot, regenerationStartTime + regenerated * regenerationTime);
+        }
+        else
+        {   // The player has no more lives to regenerate.
+            this.players.setDeaths(slot, 0);
+            this.players.setRegenerationStartTime(slot, PlayerRecord.NONE);
         }
     }
     
+    /**
+     * Gets the number of lives a player has regenerated at a time. Every 
+     * life starts regenerating when the previous one finished, so once n
+     * lives are regenerated, the next life started regenerating at the
+     * start time plus n regeneration times.
+     * @param deaths The number of lives the player has lost.
+     * @param regenerationStartTime The time the player started regenerating a life.
+     * @param regenerationTime The time it takes to regenerate a life, in seconds.
+     * @param now The current time.
+     * @return The number of lives regenerated, from 0 up to the number of deaths.
+     */
+    static long livesRegenerated(int deaths, long regenerationStartTime, long regenerationTime, long now)
+    {
+        long elapsed = now - regenerationStartTime;
+        if(elapsed < regenerationTime)
+        {
+            return 0;
+        }
+        return regenerationTime > 0 ? Math.min(elapsed / regenerationTime, deaths) : deaths;
+    }
+    
+    /**
+     * Get the time a life that started regenerating at the given time
+     * finishes regenerating.
+     * @param regenerationStartTime The time the life started regenerating.
+     * @return The time the life finishes regenerating.
+     */
+    private long regenerationAt(long regenerationStartTime)
+    {
+        final long secondsPerDay = 60*60*24; // 60 seconds per minute, 60 minutes per hour, 24 hours per day
+        return regenerationStartTime + (long) (this.settings.getLifeRegenerationTime() * secondsPerDay);
+    }
+    
     /**
      * Get the time a player will finish regenerating a life at, or -1 
      * if the player is not currently regenerating a life.
@@ -485,50 +788,565 @@ public class WorldManager implements ConfigurationSerializable
      */
     public long regenerationAt(Player player)
     {
-        if(this.regenerationStartTime.containsKey(player))
+        return regenerationAt(player.getUniqueId());
+    }
+    
+    /**
+     * Get the time a player will finish regenerating a life at, or -1 
+     * if the player is not currently regenerating a life.
+     * @param uuid The UUID of the player to get the regeneration time for.
+     * @return The time the player will finish regenerating a life at,
+     * or -1 if the player is not currently regenerating a life.
+     */
+    public long regenerationAt(UUID uuid)
+    {
+        int slot = load(uuid);
+        
+        long regenerationStartTime = this.players.getRegenerationStartTime(slot);
+        if(regenerationStartTime != PlayerRecord.NONE)
         {   // The player has a life to regenerate.
-            final long secondsPerDay = 60*60*24; // 60 seconds per minute, 60 minutes per hour, 24 hours per day
-            long regenerationTime = (long) (this.regenerationTime * secondsPerDay);
-            
-            return this.regenerationStartTime.get(player) + regenerationTime;
+            return regenerationAt(regenerationStartTime);
         }
         
         return -1;
     }
     
-    /*
-     * (non-Javadoc)
-     * @see org.bukkit.configuration.serialization.ConfigurationSerializable#serialize()
+    /**
+     * Marks a player as changed and writes the current state of the 
+     * player to the journal, or to the current journal batch. If the 
+     * journal has failed, a save is requested instead.
+     * @param slot The slot of the player to write the state of.
+     */
+    private void journal(int slot)
+    {
+        this.players.setDirty(slot, true);
+        
+        if(this.journalBatch != null)
+        {
+            this.journalBatch.add(toRecord(slot));
+            return;
+        }
+        
+        Journal journal = PluginState.getJournal();
+        if(journal != null && !journal.append(worldGroup, toRecord(slot)))
+        {
+            PluginState.getPlugin().requestSave();
+        }
+    }
+    
+    /**
+     * Starts collecting the changes to players, such that they are 
+     * journaled together by {@link #endJournalBatch()} rather than one 
+     * by one.
+     */
+    public void startJournalBatch()
+    {
+        this.journalBatch = new ArrayList<PlayerRecord>();
+    }
+    
+    /**
+     * Journals the changes collected since {@link #startJournalBatch()}
+     * as a single record, and stops collecting changes.
+     */
+    public void endJournalBatch()
+    {
+        List<PlayerRecord> batch = this.journalBatch;
+        this.journalBatch = null;
+        if(batch == null || batch.isEmpty())
+        {
+            return;
+        }
+        
+        Journal journal = PluginState.getJournal();
+        if(journal != null && !journal.append(worldGroup, batch))
+        {
+            PluginState.getPlugin().requestSave();
+        }
+    }
+    
+    /**
+     * Gets the current state of a player as a record.
+     * @param slot The slot of the player to get the state of.
+     * @return The record of the player.
+     */
+    private PlayerRecord toRecord(int slot)
+    {
+        return new PlayerRecord(this.players.getUniqueId(slot), 
+            this.players.getDeaths(slot), 
+            this.players.getBanishedUntil(slot), 
+            this.players.getRegenerationStartTime(slot));
+    }
+    
+    /**
+     * Makes sure the state of a player is in memory, loading it from the
+     * storage if it is not, and marks the player as recently used.
+     * @param player The player to load.
+     * @return The slot of the player.
+     */
+    private int load(Player player)
+    {
+        return load(player.getUniqueId());
+    }
+    
+    /**
+     * Loads the state of a player into memory if it is not in memory yet,
+     * and marks the player as used.
+     * @param uuid The UUID of the player to load.
+     * @return The slot of the player.
+     */
+    private int load(UUID uuid)
+    {
+        int slot = this.players.find(uuid);
+        if(slot < 0)
+        {
+            Prefetched prefetched = this.prefetched.remove(uuid);
+            PlayerRecord record = prefetched != null ? prefetched.record : loadRecord(uuid);
+            
+            slot = this.players.insert(uuid);
+            if(record != null)
+            {
+                setState(slot, record);
+            }
+        }
+        
+        this.players.setLastUsed(slot, System.currentTimeMillis());
+        return slot;
+    }
+    
+    /**
+     * Loads the stored state of a player from the storage.
+     * @param uuid The UUID of the player to load.
+     * @return The record of the player, or null if the player has no 
+     * stored state or it could not be loaded.
+     */
+    private PlayerRecord loadRecord(UUID uuid)
+    {
+        StorageBackend storage = PluginState.getStorage();
+        if(storage == null)
+        {
+            return null;
+        }
+        
+        try
+        {
+            return storage.loadPlayer(worldGroup, uuid);
+        }
+        catch(IOException e)
+        {
+            PluginState.getPlugin().getLogger().severe("Could not load " + uuid 
+                + " in world group " + worldGroup + ": " + e);
+            return null;
+        }
+    }
+    
+    /**
+     * Loads the stored state of a player ahead of their use, such that 
+     * using them later does not have to wait for the storage. Safe to call
+     * off the main thread. If the player is in memory by the time they are
+     * used, the prefetched state is ignored.
+     * @param uuid The UUID of the player to prefetch.
+     * @return The prefetched state of the player.
+     * @throws IOException
      */
-    public Map<String, Object> serialize()
+    public PlayerRecord prefetch(UUID uuid) throws IOException
     {
-        Map<String, Object> map = new HashMap<String, Object>();
+        PlayerRecord record = loadStored(uuid);
+        this.prefetched.put(uuid, new Prefetched(record, System.currentTimeMillis()));
+        return record;
+    }
+    
+    /**
+     * Loads the stored state of a player without keeping it. Safe to call 
+     * off the main thread.
+     * @param uuid The UUID of the player to load.
+     * @return The stored state of the player, or a record without deaths,
+     * banishment and life regeneration if the player has no stored state.
+     * @throws IOException
+     */
+    public PlayerRecord loadStored(UUID uuid) throws IOException
+    {
+        PlayerRecord record = PluginState.getStorage().loadPlayer(worldGroup, uuid);
+        if(record == null)
+        {
+            record = new PlayerRecord(uuid, 0, PlayerRecord.NONE, PlayerRecord.NONE);
+        }
+        return record;
+    }
+    
+    /**
+     * Hands the stored state of a player, as loaded by 
+     * {@link #loadStored(UUID)}, to the manager for their next use. Ignored
+     * if the player is in memory.
+     * @param record The stored state of the player.
+     */
+    public void offerStored(PlayerRecord record)
+    {
+        if(this.players.find(record.getUniqueId()) < 0)
+        {
+            this.prefetched.put(record.getUniqueId(), new Prefetched(record, System.currentTimeMillis()));
+        }
+    }
+    
+    /**
+     * Gets the time until which a player is banished, including changes
+     * that have not been saved yet. Safe to call off the main thread. 
+     * Unlike {@link #banishedUntil(UUID)}, does not load the player and 
+     * does not check whether the banishment has expired.
+     * @param uuid The UUID of the player.
+     * @return The time until which the player is banished, or
+     * {@link PlayerRecord#NONE} if the player is not banished.
+     */
+    public long lookupBanishment(UUID uuid)
+    {
+        return this.banishments.getBanishedUntil(uuid);
+    }
+    
+    /**
+     * Drops prefetched state that has not been used: that of players who
+     * are offline, once they have had the time to log in, and that of 
+     * online players who have not entered the world group within the idle
+     * time.
+     * @param idleTime The time in milliseconds after which prefetched state is dropped.
+     * @return The number of players whose prefetched state was dropped.
+     */
+    public int evictPrefetched(long idleTime)
+    {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        for(Iterator<Map.Entry<UUID, Prefetched>> it = this.prefetched.entrySet().iterator(); it.hasNext();)
+        {
+            Map.Entry<UUID, Prefetched> entry = it.next();
+            long age = now - entry.getValue().time;
+            if(age >= idleTime 
+                || (age >= LOGIN_TIME && PluginState.getPlugin().getServer().getPlayer(entry.getKey()) == null))
+            {
+                it.remove();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+    
+    /**
+     * Replaces the state of a player with the state in a record.
+     * @param slot The slot of the player.
+     * @param record The record.
+     */
+    private void setState(int slot, PlayerRecord record)
+    {
+        this.players.setDeaths(slot, Math.max(record.getDeaths(), 0));
+        
+        setBanishedUntil(slot, record.getBanishedUntil());
+        
+        if(record.getRegenerationStartTime() != PlayerRecord.NONE)
+        {
+            setRegenerationStartTime(slot, record.getRegenerationStartTime());
+        }
+        else
+        {
+            this.players.setRegenerationStartTime(slot, PlayerRecord.NONE);
+        }
+    }
+    
+    /**
+     * Applies a journal record, replacing the state of the player with
+     * the state in the record. The player is marked as changed, such that
+     * the next save writes the record to storage.
+     * @param record The record to apply.
+     */
+    public void applyJournalRecord(PlayerRecord record)
+    {
+        int slot = this.players.insert(record.getUniqueId());
+        this.players.setLastUsed(slot, System.currentTimeMillis());
+        setState(slot, record);
+        this.players.setDirty(slot, true);
+    }
+    
+    /**
+     * Evicts the state of offline players from memory. Players that have
+     * not been used for the idle time are evicted, as are the least recently
+     * used players while more players than the maximum are in memory. 
+     * Players with unsaved changes are never evicted.
+     * @param idleTime The time in milliseconds after which unused players are evicted.
+     * @param maxPlayers The maximum number of players to keep in memory.
+     * @return The number of players evicted.
+     */
+    public int evictIdlePlayers(long idleTime, int maxPlayers)
+    {
+        long now = System.currentTimeMillis();
+        
+        // Collect the players that may be evicted
+        List<UUID> candidates = new ArrayList<UUID>();
+        long[] lastUsed = new long[this.players.size()];
+        int idle = 0;
+        for(int slot = 0; slot < this.players.capacity(); slot++)
+        {
+            if(!this.players.isOccupied(slot) || this.players.isDirty(slot))
+            {
+                continue;
+            }
+            
+            UUID uuid = this.players.getUniqueId(slot);
+            if(PluginState.getPlugin().getServer().getPlayer(uuid) != null)
+            {   // Online
+                continue;
+            }
+            
+            lastUsed[candidates.size()] = this.players.getLastUsed(slot);
+            candidates.add(uuid);
+            if(now - this.players.getLastUsed(slot) >= idleTime)
+            {
+                idle++;
+            }
+        }
         
-        Map<String, Long> banishedUntil = new HashMap<String, Long>();
-        Map<String, Long> regenerationStartTime = new HashMap<String, Long>();
-        Map<String, Integer> deaths = new HashMap<String, Integer>();
+        // Evict the idle players, and more of the least recently used 
+        // players if there are still too many
+        int toEvict = Math.min(candidates.size(), Math.max(idle, this.players.size() - maxPlayers));
+        if(toEvict <= 0)
+        {
+            return 0;
+        }
         
+        long[] sorted = Arrays.copyOf(lastUsed, candidates.size());
+        Arrays.sort(sorted);
+        long cutoff = sorted[toEvict - 1];
+        int atCutoff = 0;
+        for(int i = toEvict - 1; i >= 0 && sorted[i] == cutoff; i--)
+        {
+            atCutoff++;
+        }
         
-        for(OfflinePlayer key : this.banishedUntil.keySet())
+        int evicted = 0;
+        for(int i = 0; i < candidates.size(); i++)
         {
-            banishedUntil.put(key.getUniqueId().toString(), this.banishedUntil.get(key));
+            if(lastUsed[i] > cutoff)
+            {
+                continue;
+            }
+            if(lastUsed[i] == cutoff)
+            {
+                if(atCutoff == 0)
+                {
+                    continue;
+                }
+                atCutoff--;
+            }
+            
+            this.players.remove(this.players.find(candidates.get(i)));
+            evicted++;
+        }
+        
+        if(this.deadlines.size() > 2 * this.players.size() + 1024)
+        {   // Most deadlines are of evicted players; drop them instead of 
+            // waiting for them to become due
+            List<Deadline> live = new ArrayList<Deadline>();
+            for(Deadline deadline : this.deadlines)
+            {
+                if(this.players.find(deadline.mostSignificantBits, deadline.leastSignificantBits) >= 0)
+                {
+                    live.add(deadline);
+                }
+            }
+            this.deadlines.clear();
+            this.deadlines.addAll(live);
+        }
+        
+        return evicted;
+    }
+    
+    /**
+     * Sets the time until which a player is banished, updates the 
+     * banishment index, and schedules the expiry of the banishment.
+     * @param slot The slot of the player.
+     * @param banishedUntil The time until which the player is banished,
+     * or {@link PlayerRecord#NONE} if the player is not banished.
+     */
+    private void setBanishedUntil(int slot, long banishedUntil)
+    {
+        this.players.setBanishedUntil(slot, banishedUntil);
+        this.banishments.set(this.players.getUniqueId(slot), banishedUntil);
+        
+        if(banishedUntil != PlayerRecord.NONE)
+        {   // A banishment has expired once the current time is past it
+            this.deadlines.add(new Deadline(banishedUntil + 1, 
+                this.players.getMostSignificantBits(slot), this.players.getLeastSignificantBits(slot), true));
         }
+    }
+    
+    /**
+     * Sets the time a player started regenerating a life, and schedules
+     * the regeneration of the life.
+     * @param slot The slot of the player.
+     * @param regenerationStartTime The time the player started regenerating a life.
+     */
+    private void setRegenerationStartTime(int slot, long regenerationStartTime)
+    {
+        this.players.setRegenerationStartTime(slot, regenerationStartTime);
         
-        for(OfflinePlayer key : this.regenerationStartTime.keySet())
+        if(isRegenerationEnabled())
         {
-            regenerationStartTime.put(key.getUniqueId().toString(), this.regenerationStartTime.get(key));
+            this.deadlines.add(new Deadline(regenerationAt(regenerationStartTime), 
+                this.players.getMostSignificantBits(slot), this.players.getLeastSignificantBits(slot), false));
         }
+    }
+    
+    /**
+     * Processes the banishments and life regenerations that are due. 
+     * Expired banishments are removed and regenerated lives are returned. 
+     * @param now The current time.
+     * @param max The maximum number of deadlines to process.
+     * @param notify Whether to notify online players.
+     * @return The number of deadlines processed.
+     */
+    public int processDeadlines(long now, int max, boolean notify)
+    {
+        // Banishments of players not in memory expire without a deadline
+        this.banishments.removeExpired(now);
         
-        for(OfflinePlayer key : this.deaths.keySet())
+        int processed = 0;
+        while(processed < max && !this.deadlines.isEmpty() && this.deadlines.peek().time <= now)
         {
-            deaths.put(key.getUniqueId().toString(), this.deaths.get(key));
+            Deadline deadline = this.deadlines.poll();
+            processed++;
+            
+            int slot = this.players.find(deadline.mostSignificantBits, deadline.leastSignificantBits);
+            if(slot < 0)
+            {   // The player has been evicted
+                continue;
+            }
+            
+            if(deadline.banishment)
+            {
+                long banishedUntil = this.players.getBanishedUntil(slot);
+                if(banishedUntil == PlayerRecord.NONE || banishedUntil + 1 != deadline.time)
+                {   // The banishment has changed since
+                    continue;
+                }
+                
+                setBanishedUntil(slot, PlayerRecord.NONE);
+                journal(slot);
+                
+                Player player = notify ? getOnlinePlayer(slot) : null;
+                if(player != null)
+                {
+                    player.sendMessage(Utils.prepareMessage(player, "whispers.unbanished", 
+                        "%worldGroup", this.getWorldGroup(),
+                        "%worldGroupAlias", this.getWorldGroupAlias()));
+                }
+            }
+            else
+            {
+                long regenerationStartTime = this.players.getRegenerationStartTime(slot);
+                if(regenerationStartTime == PlayerRecord.NONE || regenerationAt(regenerationStartTime) != deadline.time)
+                {   // The regeneration has changed since
+                    continue;
+                }
+                
+                Player player = regenerate(slot) && notify ? getOnlinePlayer(slot) : null;
+                if(player != null)
+                {
+                    player.sendMessage(Utils.prepareMessage(player, "whispers.lifeRegenerated", 
+                        "%worldGroup", this.getWorldGroup(),
+                        "%worldGroupAlias", this.getWorldGroupAlias(),
+                        "%lives", this.settings.getLives() - this.players.getDeaths(slot)));
+                }
+            }
         }
         
-        map.put("worldGroup", worldGroup);
-        map.put("banishedUntil", banishedUntil);
-        map.put("regenerationStartTime", regenerationStartTime);
-        map.put("deaths", deaths);
+        return processed;
+    }
+    
+    /**
+     * Gets the number of players that are currently banished, including 
+     * those whose state is not in memory.
+     * @return The number of banished players.
+     */
+    public int getBanishedCount()
+    {
+        return this.banishments.count(Utils.getCurrentTime());
+    }
+    
+    /**
+     * Gets the players that are currently banished, in the order in which 
+     * their banishments expire, such that the first players are the next
+     * to be unbanished. Includes players whose state is not in memory.
+     * @param offset The number of banished players to skip.
+     * @param limit The maximum number of banished players to get.
+     * @return The banishments of the players.
+     */
+    public List<BanIndex.Entry> getBanishedPlayers(int offset, int limit)
+    {
+        return this.banishments.get(Utils.getCurrentTime(), offset, limit);
+    }
+    
+    /**
+     * Gets the player in a slot if they are online.
+     * @param slot The slot of the player.
+     * @return The player, or null if the player is offline.
+     */
+    private Player getOnlinePlayer(int slot)
+    {
+        return PluginState.getPlugin().getServer().getPlayer(this.players.getUniqueId(slot));
+    }
+    
+    /**
+     * Publishes the number of players whose state is in memory and the
+     * number of banished players to the metrics of the world group.
+     * @param now The current time.
+     */
+    public void updateMetrics(long now)
+    {
+        metrics.update(this.players.size(), this.banishments.count(now));
+    }
+    
+    /**
+     * Gets the number of players whose state is in memory.
+     * @return The number of players whose state is in memory.
+     */
+    public int getResidentCount()
+    {
+        return this.players.size();
+    }
+    
+    /**
+     * Gets whether player data has changed since the last save.
+     * @return True if player data has changed, false otherwise.
+     */
+    public boolean isDirty()
+    {
+        return this.players.getDirtyCount() > 0;
+    }
+    
+    /**
+     * Collects the records of the players that changed since the last
+     * call, and marks all players as unchanged.
+     * @return The changed records.
+     */
+    public WorldGroupChanges collectChanges()
+    {
+        List<PlayerRecord> upserts = new ArrayList<PlayerRecord>();
+        List<UUID> deletes = new ArrayList<UUID>();
+        
+        for(int slot = 0; slot < this.players.capacity() && this.players.getDirtyCount() > 0; slot++)
+        {
+            if(!this.players.isOccupied(slot) || !this.players.isDirty(slot))
+            {
+                continue;
+            }
+            
+            PlayerRecord record = toRecord(slot);
+            if(record.isEmpty())
+            {
+                deletes.add(record.getUniqueId());
+            }
+            else
+            {
+                upserts.add(record);
+            }
+            this.players.setDirty(slot, false);
+        }
         
-        return map;
+        return new WorldGroupChanges(worldGroup, upserts, deletes);
     }
 }
@@ -0,0 +1,338 @@
+package org.kepow.customhardcore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+/**
+ * Storage backend that keeps all player records in data.yml. The file is
+ * held in memory and rewritten as a whole on every flush that follows a
+ * change. It is written to a temporary file first and then moved over the
+ * data file, such that a crash during a flush never leaves a half-written
+ * data file behind.
+ *
+ * A flush copies the data while holding the lock of the storage, and
+ * serializes and writes the copy after releasing it, such that loading a
+ * player never waits for data.yml to be written.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class YamlStorage implements StorageBackend
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File dataFile;
+    private final Map<String, WorldGroupData> groups;
+    private final Object flushLock;
+    private boolean modified;
+    private long bytesWritten;
+
+    /**
+     * Constructor. Loads the data file.
+     * @param dataFile The data file.
+     */
+    public YamlStorage(File dataFile)
+    {
+        this.dataFile = dataFile;
+        this.groups = new HashMap<String, WorldGroupData>();
+        this.flushLock = new Object();
+        this.modified = false;
+
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(dataFile);
+        List<?> list = yaml.getList("worldManagers");
+        if(list != null)
+        {
+            for(Object obj : list)
+            {
+                WorldGroupData data;
+                if(obj instanceof WorldGroupData)
+                {
+                    data = (WorldGroupData) obj;
+                }
+                else
+                {
+                    data = new WorldGroupData((Map<String, Object>) obj);
+                }
+                groups.put(data.getWorldGroup(), data);
+            }
+        }
+    }
+
+    /**
+     * Gets the world groups that have data stored.
+     * @return The world groups that have data stored.
+     */
+    public synchronized Set<String> getWorldGroups()
+    {
+        return new HashSet<String>(groups.keySet());
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#loadPlayer(java.lang.String, java.util.UUID)
+     */
+    public synchronized PlayerRecord loadPlayer(String worldGroup, UUID uuid)
+    {
+        WorldGroupData data = groups.get(worldGroup);
+        if(data == null)
+        {
+            return null;
+        }
+
+        return toRecord(data, uuid, uuid.toString());
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#upsertPlayers(java.lang.String, java.util.Collection)
+     */
+    public synchronized void upsertPlayers(String worldGroup, Collection<PlayerRecord> records)
+    {
+        if(records.isEmpty())
+        {
+            return;
+        }
+
+        WorldGroupData data = groups.get(worldGroup);
+        if(data == null)
+        {
+            data = new WorldGroupData(worldGroup);
+            groups.put(worldGroup, data);
+        }
+
+        for(PlayerRecord record : records)
+        {
+            String key = record.getUniqueId().toString();
+
+            if(record.getDeaths() > 0)
+            {
+                data.getDeaths().put(key, record.getDeaths());
+            }
+            else
+            {
+                data.getDeaths().remove(key);
+            }
+
+            if(record.getBanishedUntil() != PlayerRecord.NONE)
+            {
+                data.getBanishedUntil().put(key, record.getBanishedUntil());
+            }
+            else
+            {
+                data.getBanishedUntil().remove(key);
+            }
+
+            if(record.getRegenerationStartTime() != PlayerRecord.NONE)
+            {
+                data.getRegenerationStartTime().put(key, record.getRegenerationStartTime());
+            }
+            else
+            {
+                data.getRegenerationStartTime().remove(key);
+            }
+        }
+        modified = true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#deletePlayers(java.lang.String, java.util.Collection)
+     */
+    public synchronized void deletePlayers(String worldGroup, Collection<UUID> uuids)
+    {
+        WorldGroupData data = groups.get(worldGroup);
+        if(data == null || uuids.isEmpty())
+        {
+            return;
+        }
+
+        for(UUID uuid : uuids)
+        {
+            String key = uuid.toString();
+            data.getDeaths().remove(key);
+            data.getBanishedUntil().remove(key);
+            data.getRegenerationStartTime().remove(key);
+        }
+        modified = true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#scan(java.lang.String, org.kepow.customhardcore.StorageBackend.Visitor)
+     */
+    public void scan(String worldGroup, Visitor visitor)
+    {
+        List<PlayerRecord> records;
+        synchronized(this)
+        {
+            WorldGroupData data = groups.get(worldGroup);
+            if(data == null)
+            {
+                return;
+            }
+
+            Map<String, UUID> keys = new HashMap<String, UUID>();
+            collectKeys(data.getDeaths().keySet(), keys);
+            collectKeys(data.getBanishedUntil().keySet(), keys);
+            collectKeys(data.getRegenerationStartTime().keySet(), keys);
+
+            records = new ArrayList<PlayerRecord>(keys.size());
+            for(Map.Entry<String, UUID> entry : keys.entrySet())
+            {
+                records.add(toRecord(data, entry.getValue(), entry.getKey()));
+            }
+        }
+
+        // Visit outside the lock, such that loads are not held up by the visitor
+        for(PlayerRecord record : records)
+        {
+            visitor.visit(record);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#flush()
+     */
+    public void flush() throws IOException
+    {
+        // Flushes are written one at a time, such that an older copy never
+        // replaces a newer one
+        synchronized(flushLock)
+        {
+            List<WorldGroupData> snapshot;
+            synchronized(this)
+            {
+                if(!modified)
+                {
+                    return;
+                }
+
+                snapshot = new ArrayList<WorldGroupData>(groups.size());
+                for(WorldGroupData data : groups.values())
+                {
+                    snapshot.add(new WorldGroupData(data));
+                }
+                modified = false;
+            }
+
+            long written;
+            try
+            {
+                written = write(snapshot);
+            }
+            catch(IOException e)
+            {
+                synchronized(this)
+                {
+                    modified = true;
+                }
+                throw e;
+            }
+
+            synchronized(this)
+            {
+                bytesWritten += written;
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#getBytesWritten()
+     */
+    public synchronized long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.customhardcore.StorageBackend#close()
+     */
+    public synchronized void close()
+    {
+        groups.clear();
+    }
+
+    /**
+     * Writes the data of the world groups to the data file.
+     * @param snapshot The data of the world groups.
+     * @return The number of bytes written.
+     * @throws IOException
+     */
+    private long write(List<WorldGroupData> snapshot) throws IOException
+    {
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("worldManagers", snapshot);
+
+        Path target = dataFile.toPath();
+        Path temp = new File(dataFile.getParentFile(), dataFile.getName() + ".tmp").toPath();
+        byte[] bytes = yaml.saveToString().getBytes(UTF8);
+        Files.write(temp, bytes);
+        try
+        {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return bytes.length;
+    }
+
+    /**
+     * Builds the record of a player from the group data.
+     * @param data The group data.
+     * @param uuid The UUID of the player.
+     * @param key The UUID string of the player.
+     * @return The record, or null if the player has no stored state.
+     */
+    private static PlayerRecord toRecord(WorldGroupData data, UUID uuid, String key)
+    {
+        Integer deaths = data.getDeaths().get(key);
+        Long banishedUntil = data.getBanishedUntil().get(key);
+        Long regenerationStartTime = data.getRegenerationStartTime().get(key);
+
+        if(deaths == null && banishedUntil == null && regenerationStartTime == null)
+        {
+            return null;
+        }
+
+        return new PlayerRecord(uuid,
+            deaths == null ? 0 : deaths,
+            banishedUntil == null ? PlayerRecord.NONE : banishedUntil,
+            regenerationStartTime == null ? PlayerRecord.NONE : regenerationStartTime);
+    }
+
+    /**
+     * Parses UUID strings into the map, skipping strings already parsed.
+     * @param strings The UUID strings.
+     * @param keys The map of UUID strings to UUIDs.
+     */
+    private static void collectKeys(Collection<String> strings, Map<String, UUID> keys)
+    {
+        for(String string : strings)
+        {
+            if(!keys.containsKey(string))
+            {
+                keys.put(string, UUID.fromString(string));
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.kepow.customhardcore;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that regenerating lives in closed form gives the same state as
+ * regenerating them one by one, as the plugin did before.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class LifeRegenerationTest
+{
+    private static final int RUNS = 100000;
+
+    /**
+     * Class that represents the regeneration state of a player.
+     */
+    private static final class State
+    {
+        private final int deaths;
+        private final long regenerationStartTime;
+
+        private State(int deaths, long regenerationStartTime)
+        {
+            this.deaths = deaths;
+            this.regenerationStartTime = regenerationStartTime;
+        }
+    }
+
+    /**
+     * Regenerates lives one by one, recursing once per life, like the
+     * plugin did before regeneration was computed in closed form.
+     */
+    private static State regenerateRecursively(int deaths, long regenerationStartTime, long regenerationTime, long now)
+    {
+        if(regenerationStartTime + regenerationTime <= now)
+        {
+            deaths--;
+            if(deaths > 0)
+            {
+                return regenerateRecursively(deaths, regenerationStartTime + regenerationTime, regenerationTime, now);
+            }
+            return new State(0, PlayerRecord.NONE);
+        }
+        return new State(deaths, regenerationStartTime);
+    }
+
+    /**
+     * Regenerates lives the way the world manager does.
+     */
+    private static State regenerate(int deaths, long regenerationStartTime, long regenerationTime, long now)
+    {
+        long regenerated = WorldManager.livesRegenerated(deaths, regenerationStartTime, regenerationTime, now);
+        if(regenerated < deaths)
+        {
+            return new State(deaths - (int) regenerated, regenerationStartTime + regenerated * regenerationTime);
+        }
+        return new State(0, PlayerRecord.NONE);
+    }
+
+    private static void assertSameState(int deaths, long regenerationStartTime, long regenerationTime, long now)
+    {
+        State expected = regenerateRecursively(deaths, regenerationStartTime, regenerationTime, now);
+        State actual = regenerate(deaths, regenerationStartTime, regenerationTime, now);
+
+        String inputs = "deaths " + deaths + ", start " + regenerationStartTime
+            + ", regeneration time " + regenerationTime + ", now " + now;
+        assertEquals("Deaths for " + inputs, expected.deaths, actual.deaths);
+        assertEquals("Start time for " + inputs, expected.regenerationStartTime, actual.regenerationStartTime);
+    }
+
+    @Test
+    public void matchesRecursiveRegenerationForRandomStates()
+    {
+        Random random = new Random(20141103L);
+        for(int i = 0; i < RUNS; i++)
+        {
+            int deaths = 1 + random.nextInt(20);
+            long regenerationTime = 1 + random.nextInt(7 * 24 * 60 * 60);
+            long regenerationStartTime = 1400000000L + random.nextInt(1000000000);
+            // Cover times before the start, within the first life, and past all lives
+            long now = regenerationStartTime - regenerationTime
+                + (long) (random.nextDouble() * (deaths + 3) * regenerationTime);
+
+            assertSameState(deaths, regenerationStartTime, regenerationTime, now);
+        }
+    }
+
+    @Test
+    public void matchesRecursiveRegenerationAtLifeBoundaries()
+    {
+        long regenerationStartTime = 1400000000L;
+        long regenerationTime = 3600;
+        for(int deaths = 1; deaths <= 5; deaths++)
+        {
+            for(int lives = 0; lives <= deaths + 1; lives++)
+            {
+                long boundary = regenerationStartTime + lives * regenerationTime;
+                assertSameState(deaths, regenerationStartTime, regenerationTime, boundary - 1);
+                assertSameState(deaths, regenerationStartTime, regenerationTime, boundary);
+                assertSameState(deaths, regenerationStartTime, regenerationTime, boundary + 1);
+            }
+        }
+    }
+
+    @Test
+    public void regeneratesAllLivesAtOnceWithoutRegenerationTime()
+    {
+        for(int deaths = 1; deaths <= 5; deaths++)
+        {
+            assertSameState(deaths, 1400000000L, 0, 1400000000L);
+            assertSameState(deaths, 1400000000L, 0, 1400000000L - 1);
+        }
+    }
+}
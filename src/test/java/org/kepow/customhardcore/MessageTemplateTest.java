@@ -0,0 +1,90 @@
+package org.kepow.customhardcore;
+
+import static org.junit.Assert.assertEquals;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests rendering compiled messages: placeholders, formatting codes, and
+ * &word|dependent% switches, including switches that cannot be resolved.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class MessageTemplateTest
+{
+    private YamlConfiguration config;
+
+    @Before
+    public void setUp()
+    {
+        config = new YamlConfiguration();
+        config.set("display.numDecimals", 2);
+        config.set("words.hour.1", "hour");
+        config.set("words.hour.other", "hours");
+        config.set("words.year.1", "year");
+    }
+
+    private String render(String message, Object... replacements)
+    {
+        StringBuilder out = new StringBuilder();
+        new MessageTemplate(message, config, 2).render(replacements, out);
+        return out.toString();
+    }
+
+    @Test
+    public void rendersSwitchCases()
+    {
+        assertEquals("1 hour left", render("%hours &hour|hours% left", "%hours", 1));
+        assertEquals("2 hours left", render("%hours &hour|hours% left", "%hours", 2));
+        assertEquals("1.00 hour left", render("%hours &hour|hours% left", "%hours", 1.0));
+        assertEquals("1.50 hours left", render("%hours &hour|hours% left", "%hours", 1.5));
+    }
+
+    @Test
+    public void rendersTheOtherCaseWithoutDependent()
+    {
+        assertEquals("hours left", render("&hour|hours% left"));
+    }
+
+    @Test
+    public void rendersUnresolvedSwitchAsIs()
+    {
+        // No case for the value and no "other" case: the old renderer threw
+        assertEquals("2 &year|years% left", render("%years &year|years% left", "%years", 2));
+        // No word at all
+        assertEquals("2 &week|weeks% left", render("%weeks &week|weeks% left", "%weeks", 2));
+    }
+
+    @Test
+    public void rendersWordsAsTheirOtherCase()
+    {
+        assertEquals("hours", render("&hour%"));
+        assertEquals("&week%", render("&week%"));
+    }
+
+    @Test
+    public void replacesTheLongestMatchingPlaceholder()
+    {
+        assertEquals("Alias in group", render("%worldGroupAlias in %worldGroup",
+            "%worldGroup", "group", "%worldGroupAlias", "Alias"));
+        assertEquals("groupSuffix %missing", render("%worldGroupSuffix %missing", "%worldGroup", "group"));
+    }
+
+    @Test
+    public void replacesKeysGivenTwiceWithTheLastValue()
+    {
+        assertEquals("second", render("%value", "%value", "first", "%value", "second"));
+    }
+
+    @Test
+    public void translatesFormattingCodes()
+    {
+        assertEquals(ChatColor.GOLD + "gold " + ChatColor.RED + "red",
+            render("&6gold %name", "%name", "&cred"));
+        assertEquals("&z", render("&z"));
+    }
+}
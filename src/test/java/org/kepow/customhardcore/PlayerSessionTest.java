@@ -0,0 +1,169 @@
+package org.kepow.customhardcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.inventory.ItemStack;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that the session of a player follows the player through the event
+ * handlers: into other world groups when changing worlds, and when
+ * respawning into a world of another world group.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class PlayerSessionTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubServer server;
+    private CustomHardcore plugin;
+    private World world;
+    private World hardcore;
+    private World hardcoreNether;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = StubServer.get();
+        server.reset();
+        world = server.world("world");
+        hardcore = server.world("hardcore");
+        hardcoreNether = server.world("hardcore_nether");
+
+        File dataFolder = folder.newFolder("CustomHardcore");
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("metricsFile", false);
+        config.set("worldConfig.groups.default.alias", "Default");
+        config.set("worldConfig.groups.hardcore.worlds", Arrays.asList("hardcore", "hardcore_nether"));
+        config.set("worldConfig.groups.hardcore.config.enabled", true);
+        config.set("worldConfig.groups.hardcore.config.lives", 2);
+        config.save(new File(dataFolder, "config.yml"));
+
+        plugin = server.startPlugin(dataFolder);
+    }
+
+    @After
+    public void tearDown()
+    {
+        plugin.onDisable();
+    }
+
+    private Player join(String name, World world)
+    {
+        Player player = server.join(name, UUID.randomUUID(), world);
+        plugin.onPlayerJoinEvent(new PlayerJoinEvent(player, null));
+        return player;
+    }
+
+    /**
+     * Moves a player to another world, like the server does when teleporting
+     * or respawning the player.
+     */
+    private void moveTo(Player player, World world)
+    {
+        World from = player.getWorld();
+        player.teleport(new Location(world, 0, 65, 0));
+        plugin.onPlayerChangedWorldEvent(new PlayerChangedWorldEvent(player, from));
+    }
+
+    private void die(Player player)
+    {
+        plugin.onPlayerDeath(new PlayerDeathEvent(player, new ArrayList<ItemStack>(), 0, player.getName() + " died"));
+    }
+
+    private PlayerRespawnEvent respawn(Player player, World world)
+    {
+        PlayerRespawnEvent event = new PlayerRespawnEvent(player, new Location(world, 0, 65, 0), world != player.getWorld());
+        plugin.onPlayerRespawnEvent(event);
+        moveTo(player, event.getRespawnLocation().getWorld());
+        return event;
+    }
+
+    private void assertSession(PlayerSession session, String worldGroup)
+    {
+        assertEquals(worldGroup, session.getWorldGroup());
+        assertSame(plugin.getWorldManagers().get(worldGroup), session.getWorldManager());
+    }
+
+    @Test
+    public void followsPlayersChangingWorlds()
+    {
+        Player player = join("Alice", world);
+        PlayerSession session = plugin.getSession(player);
+        assertSession(session, "default");
+
+        moveTo(player, hardcore);
+        assertSession(session, "hardcore");
+
+        moveTo(player, hardcoreNether);
+        assertSession(session, "hardcore");
+
+        moveTo(player, world);
+        assertSession(session, "default");
+        assertSame(session, plugin.getSession(player));
+    }
+
+    @Test
+    public void followsPlayersRespawningIntoAnotherWorldGroup()
+    {
+        Player player = join("Bob", hardcore);
+        WorldManager manager = plugin.getWorldManagers().get("hardcore");
+
+        die(player);
+        assertEquals(1, manager.getLivesLeft(player));
+
+        // Respawn at a bed in another world group
+        respawn(player, world);
+        assertSession(plugin.getSession(player), "default");
+
+        // Dying there does not cost a hardcore life
+        die(player);
+        respawn(player, world);
+        assertEquals(1, manager.getLivesLeft(player));
+
+        moveTo(player, hardcore);
+        die(player);
+        assertTrue(manager.isBanished(player));
+    }
+
+    @Test
+    public void followsBanishedPlayersToTheBanishLocation()
+    {
+        Player player = join("Carol", hardcore);
+        WorldManager manager = plugin.getWorldManagers().get("hardcore");
+
+        die(player);
+        respawn(player, hardcore);
+        assertSession(plugin.getSession(player), "hardcore");
+        die(player);
+        assertTrue(manager.isBanished(player));
+
+        // The banished player is sent to the banish location in "world"
+        PlayerRespawnEvent event = respawn(player, hardcore);
+        assertSame(world, event.getRespawnLocation().getWorld());
+        assertSame(world, player.getWorld());
+        assertSession(plugin.getSession(player), "default");
+    }
+}
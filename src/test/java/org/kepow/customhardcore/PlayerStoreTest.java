@@ -0,0 +1,246 @@
+package org.kepow.customhardcore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+
+/**
+ * Tests the open-addressing table of the player store: inserting,
+ * removing with backward-shift deletion, probe sequences that wrap around
+ * the end of the table, and slots moving when players are removed.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class PlayerStoreTest
+{
+    /**
+     * Finds UUIDs whose probe sequence starts at a slot, by inserting
+     * random UUIDs into an empty store of the same capacity.
+     */
+    private static List<UUID> uuidsHomedAt(int home, int count, Random random)
+    {
+        List<UUID> uuids = new ArrayList<UUID>();
+        while(uuids.size() < count)
+        {
+            PlayerStore store = new PlayerStore();
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            if(store.insert(uuid) == home)
+            {
+                uuids.add(uuid);
+            }
+        }
+        return uuids;
+    }
+
+    /**
+     * Stores a distinct state for a player, derived from their UUID.
+     */
+    private static void setState(PlayerStore store, int slot)
+    {
+        long key = store.getLeastSignificantBits(slot);
+        store.setDeaths(slot, (int) (key & 0xFF));
+        store.setBanishedUntil(slot, key);
+        store.setRegenerationStartTime(slot, ~key);
+        store.setLastUsed(slot, key >>> 1);
+    }
+
+    private static void assertState(PlayerStore store, UUID uuid)
+    {
+        int slot = store.find(uuid);
+        assertTrue(uuid + " is in the store", slot >= 0);
+        assertEquals(uuid, store.getUniqueId(slot));
+
+        long key = uuid.getLeastSignificantBits();
+        assertEquals((int) (key & 0xFF), store.getDeaths(slot));
+        assertEquals(key, store.getBanishedUntil(slot));
+        assertEquals(~key, store.getRegenerationStartTime(slot));
+        assertEquals(key >>> 1, store.getLastUsed(slot));
+    }
+
+    @Test
+    public void insertsPlayersWithoutState()
+    {
+        PlayerStore store = new PlayerStore();
+        UUID uuid = UUID.randomUUID();
+
+        int slot = store.insert(uuid);
+        assertEquals(1, store.size());
+        assertEquals(slot, store.find(uuid));
+        assertTrue(store.isOccupied(slot));
+        assertFalse(store.isDirty(slot));
+        assertEquals(0, store.getDeaths(slot));
+        assertEquals(PlayerRecord.NONE, store.getBanishedUntil(slot));
+        assertEquals(PlayerRecord.NONE, store.getRegenerationStartTime(slot));
+
+        assertEquals(slot, store.insert(uuid));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void keepsStateWhenGrowing()
+    {
+        Random random = new Random(1);
+        PlayerStore store = new PlayerStore();
+        int initialCapacity = store.capacity();
+
+        List<UUID> uuids = new ArrayList<UUID>();
+        for(int i = 0; i < initialCapacity * 4; i++)
+        {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            uuids.add(uuid);
+            setState(store, store.insert(uuid));
+            store.setDirty(store.find(uuid), i % 3 == 0);
+        }
+
+        assertTrue(store.capacity() > initialCapacity);
+        assertTrue(store.size() * 4 <= store.capacity() * 3);
+        for(int i = 0; i < uuids.size(); i++)
+        {
+            assertState(store, uuids.get(i));
+            assertEquals(i % 3 == 0, store.isDirty(store.find(uuids.get(i))));
+        }
+        assertEquals((uuids.size() + 2) / 3, store.getDirtyCount());
+    }
+
+    @Test
+    public void wrapsAroundTheEndOfTheTable()
+    {
+        PlayerStore store = new PlayerStore();
+        int last = store.capacity() - 1;
+        List<UUID> uuids = uuidsHomedAt(last, 3, new Random(2));
+
+        assertEquals(last, store.insert(uuids.get(0)));
+        assertEquals(0, store.insert(uuids.get(1)));
+        assertEquals(1, store.insert(uuids.get(2)));
+        for(int i = 0; i < uuids.size(); i++)
+        {
+            setState(store, store.find(uuids.get(i)));
+        }
+
+        for(UUID uuid : uuids)
+        {
+            assertState(store, uuid);
+        }
+    }
+
+    @Test
+    public void shiftsBackAcrossTheEndOfTheTableOnRemove()
+    {
+        PlayerStore store = new PlayerStore();
+        int last = store.capacity() - 1;
+        List<UUID> uuids = uuidsHomedAt(last, 3, new Random(3));
+        for(UUID uuid : uuids)
+        {
+            setState(store, store.insert(uuid));
+        }
+        store.setDirty(store.find(uuids.get(2)), true);
+
+        store.remove(store.find(uuids.get(0)));
+
+        // The players after the removed one move back one slot each,
+        // keeping their state; the slot they left is empty
+        assertEquals(-1, store.find(uuids.get(0)));
+        assertEquals(last, store.find(uuids.get(1)));
+        assertEquals(0, store.find(uuids.get(2)));
+        assertFalse(store.isOccupied(1));
+        assertState(store, uuids.get(1));
+        assertState(store, uuids.get(2));
+        assertTrue(store.isDirty(0));
+        assertEquals(1, store.getDirtyCount());
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void doesNotShiftPlayersThatAreAtTheirHome()
+    {
+        PlayerStore store = new PlayerStore();
+        Random random = new Random(4);
+        UUID first = uuidsHomedAt(10, 1, random).get(0);
+        UUID second = uuidsHomedAt(11, 1, random).get(0);
+        store.insert(first);
+        store.insert(second);
+
+        store.remove(store.find(first));
+
+        assertEquals(-1, store.find(first));
+        assertEquals(11, store.find(second));
+        assertFalse(store.isOccupied(10));
+    }
+
+    @Test
+    public void removesTheDirtyCountOfRemovedPlayers()
+    {
+        PlayerStore store = new PlayerStore();
+        int slot = store.insert(UUID.randomUUID());
+        store.setDirty(slot, true);
+        store.setDirty(slot, true);
+        assertEquals(1, store.getDirtyCount());
+
+        store.remove(slot);
+        assertEquals(0, store.getDirtyCount());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void matchesAMapUnderRandomInsertsAndRemoves()
+    {
+        Random random = new Random(5);
+        PlayerStore store = new PlayerStore();
+        Map<UUID, Boolean> model = new HashMap<UUID, Boolean>();
+        List<UUID> uuids = new ArrayList<UUID>();
+        for(int i = 0; i < 2000; i++)
+        {
+            uuids.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+
+        for(int i = 0; i < 50000; i++)
+        {
+            UUID uuid = uuids.get(random.nextInt(uuids.size()));
+            if(random.nextInt(3) == 0)
+            {
+                int slot = store.find(uuid);
+                assertEquals(model.containsKey(uuid), slot >= 0);
+                if(slot >= 0)
+                {
+                    store.remove(slot);
+                    model.remove(uuid);
+                }
+            }
+            else
+            {
+                boolean dirty = random.nextBoolean();
+                int slot = store.insert(uuid);
+                setState(store, slot);
+                store.setDirty(slot, dirty);
+                model.put(uuid, dirty);
+            }
+        }
+
+        assertEquals(model.size(), store.size());
+        int dirty = 0;
+        for(Map.Entry<UUID, Boolean> entry : model.entrySet())
+        {
+            assertState(store, entry.getKey());
+            assertEquals(entry.getValue(), store.isDirty(store.find(entry.getKey())));
+            dirty += entry.getValue() ? 1 : 0;
+        }
+        assertEquals(dirty, store.getDirtyCount());
+
+        int occupied = 0;
+        for(int slot = 0; slot < store.capacity(); slot++)
+        {
+            occupied += store.isOccupied(slot) ? 1 : 0;
+        }
+        assertEquals(model.size(), occupied);
+    }
+}
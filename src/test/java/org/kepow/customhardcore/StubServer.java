@@ -0,0 +1,575 @@
+package org.kepow.customhardcore;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Class that stubs the parts of the server the plugin uses, such that the
+ * plugin runs headless: in the tests, the benchmarks and the event
+ * simulator. The server, its worlds, players and scheduler are proxies;
+ * methods the stub does not implement do nothing and return null, false,
+ * 0 or an empty array.
+ *
+ * Synchronous tasks run when {@link #tick()} is called, on the calling
+ * thread, which acts as the main thread. Asynchronous tasks run on a pool
+ * of background threads.
+ *
+ * As Bukkit holds a single server, there is a single stub server, which
+ * is cleared by {@link #reset()}.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public final class StubServer
+{
+    private static StubServer instance;
+
+    private final Server server;
+    private final Logger logger;
+    private final Map<String, World> worlds = new ConcurrentHashMap<String, World>();
+    private final Map<UUID, Player> players = new ConcurrentHashMap<UUID, Player>();
+    private final Set<UUID> dead = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+    private final List<Task> tasks = new ArrayList<Task>();
+    private final ExecutorService async;
+    private int nextTaskId = 1;
+    private long currentTick;
+
+    private StubServer()
+    {
+        logger = Logger.getLogger("StubServer");
+        async = Executors.newCachedThreadPool(new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "StubServer-Async");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        final BukkitScheduler scheduler = proxy(BukkitScheduler.class, new Handler()
+        {
+            @Override
+            Object invoke(String method, Object[] args)
+            {
+                return schedule(method, args);
+            }
+        });
+
+        final PluginManager pluginManager = proxy(PluginManager.class, new Handler()
+        {
+            @Override
+            Object invoke(String method, Object[] args)
+            {
+                return null;
+            }
+        });
+
+        server = proxy(Server.class, new Handler()
+        {
+            @Override
+            Object invoke(String method, Object[] args)
+            {
+                if(method.equals("getLogger"))
+                {
+                    return logger;
+                }
+                else if(method.equals("getName"))
+                {
+                    return "StubServer";
+                }
+                else if(method.equals("getScheduler"))
+                {
+                    return scheduler;
+                }
+                else if(method.equals("getPluginManager"))
+                {
+                    return pluginManager;
+                }
+                else if(method.equals("getWorld") && args[0] instanceof String)
+                {
+                    return worlds.get(args[0]);
+                }
+                else if(method.equals("getWorlds"))
+                {
+                    return new ArrayList<World>(worlds.values());
+                }
+                else if(method.equals("getPlayer") && args[0] instanceof UUID)
+                {
+                    return players.get(args[0]);
+                }
+                else if(method.equals("getOnlinePlayers"))
+                {
+                    return new ArrayList<Player>(players.values());
+                }
+                else if(method.equals("getOfflinePlayer") && args[0] instanceof UUID)
+                {
+                    return offlinePlayer((UUID) args[0]);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Gets the stub server.
+     * @return The stub server.
+     */
+    public static synchronized StubServer get()
+    {
+        if(instance == null)
+        {
+            instance = new StubServer();
+            Bukkit.setServer(instance.server);
+        }
+        return instance;
+    }
+
+    /**
+     * Clears the stub server: removes all worlds, players and tasks.
+     */
+    public void reset()
+    {
+        worlds.clear();
+        players.clear();
+        dead.clear();
+        synchronized(tasks)
+        {
+            tasks.clear();
+        }
+        currentTick = 0;
+    }
+
+    /**
+     * Gets the logger of the server, which the plugin logs to.
+     * @return The logger.
+     */
+    public Logger getLogger()
+    {
+        return logger;
+    }
+
+    /**
+     * Starts the plugin on the stub server, the way the server enables it
+     * but without registering events or commands. The repeating tasks of
+     * the plugin are scheduled, and run as the server ticks.
+     * @param dataFolder The folder to keep the plugin data in.
+     * @return The plugin.
+     */
+    @SuppressWarnings("deprecation")
+    public CustomHardcore startPlugin(File dataFolder)
+    {
+        CustomHardcore plugin = new CustomHardcore(new JavaPluginLoader(server),
+            new PluginDescriptionFile("CustomHardcore", "test", CustomHardcore.class.getName()),
+            dataFolder, new File(dataFolder.getParentFile(), "CustomHardcore.jar"));
+        if(!plugin.start())
+        {
+            throw new IllegalStateException("The plugin did not start");
+        }
+        plugin.scheduleTasks();
+        return plugin;
+    }
+
+    /**
+     * Gets a world, creating it if it does not exist.
+     * @param name The name of the world.
+     * @return The world.
+     */
+    public World world(final String name)
+    {
+        World world = worlds.get(name);
+        if(world == null)
+        {
+            final UUID uid = UUID.nameUUIDFromBytes(name.getBytes());
+            world = proxy(World.class, new Handler()
+            {
+                @Override
+                Object invoke(String method, Object[] args)
+                {
+                    if(method.equals("getName") || method.equals("toString"))
+                    {
+                        return name;
+                    }
+                    else if(method.equals("getUID"))
+                    {
+                        return uid;
+                    }
+                    return null;
+                }
+            });
+            worlds.put(name, world);
+        }
+        return world;
+    }
+
+    /**
+     * Puts a player online. No events are called.
+     * @param name The name of the player.
+     * @param uuid The UUID of the player.
+     * @param world The world the player is in.
+     * @return The player.
+     */
+    public Player join(final String name, final UUID uuid, World world)
+    {
+        final World[] location = { world };
+        Player player = proxy(Player.class, new Handler()
+        {
+            @Override
+            Object invoke(String method, Object[] args)
+            {
+                if(method.equals("getName") || method.equals("toString"))
+                {
+                    return name;
+                }
+                else if(method.equals("getUniqueId"))
+                {
+                    return uuid;
+                }
+                else if(method.equals("getWorld"))
+                {
+                    return location[0];
+                }
+                else if(method.equals("getLocation"))
+                {
+                    return new Location(location[0], 0, 65, 0);
+                }
+                else if(method.equals("teleport") && args[0] instanceof Location)
+                {
+                    location[0] = ((Location) args[0]).getWorld();
+                    return true;
+                }
+                else if(method.equals("isOnline"))
+                {
+                    return players.containsKey(uuid);
+                }
+                else if(method.equals("isDead"))
+                {
+                    return dead.contains(uuid);
+                }
+                return null;
+            }
+        });
+        players.put(uuid, player);
+        return player;
+    }
+
+    /**
+     * Takes a player offline. No events are called.
+     * @param player The player.
+     */
+    public void quit(Player player)
+    {
+        players.remove(player.getUniqueId());
+        dead.remove(player.getUniqueId());
+    }
+
+    /**
+     * Sets whether a player is dead, as a player is from dying until
+     * respawning. No events are called.
+     * @param player The player.
+     * @param isDead Whether the player is dead.
+     */
+    public void setDead(Player player, boolean isDead)
+    {
+        if(isDead)
+        {
+            dead.add(player.getUniqueId());
+        }
+        else
+        {
+            dead.remove(player.getUniqueId());
+        }
+    }
+
+    /**
+     * Gets the number of online players.
+     * @return The number of online players.
+     */
+    public int getOnlineCount()
+    {
+        return players.size();
+    }
+
+    /**
+     * Gets a player that is not necessarily online.
+     * @param uuid The UUID of the player.
+     * @return The player.
+     */
+    private OfflinePlayer offlinePlayer(final UUID uuid)
+    {
+        Player online = players.get(uuid);
+        if(online != null)
+        {
+            return online;
+        }
+        return proxy(OfflinePlayer.class, new Handler()
+        {
+            @Override
+            Object invoke(String method, Object[] args)
+            {
+                if(method.equals("getUniqueId"))
+                {
+                    return uuid;
+                }
+                else if(method.equals("getName") || method.equals("toString"))
+                {
+                    return uuid.toString();
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Gets the number of ticks the server has run.
+     * @return The current tick.
+     */
+    public long getCurrentTick()
+    {
+        return currentTick;
+    }
+
+    /**
+     * Runs a server tick: the synchronous tasks that are due.
+     */
+    public void tick()
+    {
+        currentTick++;
+
+        List<Task> due = new ArrayList<Task>();
+        synchronized(tasks)
+        {
+            Iterator<Task> iterator = tasks.iterator();
+            while(iterator.hasNext())
+            {
+                Task task = iterator.next();
+                if(task.cancelled)
+                {
+                    iterator.remove();
+                }
+                else if(task.nextTick <= currentTick)
+                {
+                    due.add(task);
+                    if(task.period > 0)
+                    {
+                        task.nextTick = currentTick + task.period;
+                    }
+                    else
+                    {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+
+        for(Task task : due)
+        {
+            task.runnable.run();
+        }
+    }
+
+    /**
+     * Stops running asynchronous tasks.
+     */
+    public void shutdown()
+    {
+        async.shutdown();
+    }
+
+    /**
+     * Class that represents a synchronous task.
+     */
+    private static final class Task
+    {
+        private final int id;
+        private final Runnable runnable;
+        private final long period;
+        private long nextTick;
+        private volatile boolean cancelled;
+
+        private Task(int id, Runnable runnable, long nextTick, long period)
+        {
+            this.id = id;
+            this.runnable = runnable;
+            this.nextTick = nextTick;
+            this.period = period;
+        }
+    }
+
+    /**
+     * Handles a call to the scheduler. Tasks are scheduled by the methods
+     * named runTask, runTaskLater, runTaskTimer and scheduleSync..., and
+     * their asynchronous variants.
+     * @param method The name of the method.
+     * @param args The arguments.
+     * @return The result of the call.
+     */
+    private Object schedule(String method, Object[] args)
+    {
+        if(method.equals("cancelTask"))
+        {
+            int id = (Integer) args[0];
+            synchronized(tasks)
+            {
+                for(Task task : tasks)
+                {
+                    if(task.id == id)
+                    {
+                        task.cancelled = true;
+                    }
+                }
+            }
+            return null;
+        }
+        if(args == null || args.length < 2 || !(args[1] instanceof Runnable))
+        {
+            return null;
+        }
+
+        final Runnable runnable = (Runnable) args[1];
+        if(method.contains("Async"))
+        {
+            async.execute(runnable);
+            return method.startsWith("schedule") ? (Object) (-1) : taskHandle(-1, null);
+        }
+
+        long delay = args.length > 2 ? (Long) args[2] : 0;
+        long period = args.length > 3 ? (Long) args[3] : 0;
+        final Task task;
+        synchronized(tasks)
+        {
+            task = new Task(nextTaskId++, runnable, currentTick + Math.max(delay, 1), period);
+            tasks.add(task);
+        }
+        return method.startsWith("schedule") ? (Object) task.id : taskHandle(task.id, task);
+    }
+
+    private BukkitTask taskHandle(final int id, final Task task)
+    {
+        return proxy(BukkitTask.class, new Handler()
+        {
+            @Override
+            Object invoke(String method, Object[] args)
+            {
+                if(method.equals("getTaskId"))
+                {
+                    return id;
+                }
+                else if(method.equals("cancel") && task != null)
+                {
+                    task.cancelled = true;
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Class that handles the calls to a stub. Object methods are handled
+     * by identity.
+     */
+    private abstract static class Handler implements InvocationHandler
+    {
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            String name = method.getName();
+            if(name.equals("equals") && method.getParameterTypes().length == 1)
+            {
+                return proxy == args[0];
+            }
+            else if(name.equals("hashCode") && method.getParameterTypes().length == 0)
+            {
+                return System.identityHashCode(proxy);
+            }
+
+            Object result = invoke(name, args);
+            Class<?> type = method.getReturnType();
+            if(result == null && type.isPrimitive())
+            {
+                return defaultValue(type);
+            }
+            else if(result == null && type.isArray())
+            {
+                return Array.newInstance(type.getComponentType(), 0);
+            }
+            return result;
+        }
+
+        /**
+         * Handles a call to the stub.
+         * @param method The name of the method.
+         * @param args The arguments, or null if there are none.
+         * @return The result, or null for the default result.
+         */
+        abstract Object invoke(String method, Object[] args);
+    }
+
+    private static Object defaultValue(Class<?> type)
+    {
+        if(type == boolean.class)
+        {
+            return false;
+        }
+        else if(type == long.class)
+        {
+            return 0L;
+        }
+        else if(type == double.class)
+        {
+            return 0.0;
+        }
+        else if(type == float.class)
+        {
+            return 0.0f;
+        }
+        else if(type == short.class)
+        {
+            return (short) 0;
+        }
+        else if(type == byte.class)
+        {
+            return (byte) 0;
+        }
+        else if(type == char.class)
+        {
+            return '\0';
+        }
+        else if(type == void.class)
+        {
+            return null;
+        }
+        return 0;
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler)
+    {
+        return type.cast(Proxy.newProxyInstance(StubServer.class.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+}